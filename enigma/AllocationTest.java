@@ -0,0 +1,154 @@
+package enigma;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.util.Scanner;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** Checks that the steady-state conversion path allocates nothing per
+ *  message line, using the per-thread allocation counters of the HotSpot
+ *  ThreadMXBean.  Each check warms its code up first, then measures a
+ *  number of lines against a fixed budget.
+ *  @author Oumar Balde
+ */
+public class AllocationTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** Number of lines measured. */
+    static final int LINES = 10000;
+
+    /** Allocation allowed per line, in bytes. */
+    static final long LINE_BUDGET = 0;
+
+    /** Allocation allowed per measurement regardless of its length, to
+     *  absorb one-time costs, in bytes. */
+    static final long SLACK = 4096;
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The allocation counters, or null if they are unavailable. */
+    private static final com.sun.management.ThreadMXBean THREADS =
+        threads();
+
+    /** Return the HotSpot ThreadMXBean with allocation counting enabled,
+     *  or null if there is none. */
+    private static com.sun.management.ThreadMXBean threads() {
+        if (!(ManagementFactory.getThreadMXBean()
+              instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean)
+            ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            return null;
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+
+    /** Return the number of bytes allocated by this thread in running
+     *  WORK. */
+    private static long allocated(Runnable work) {
+        long before = THREADS.getCurrentThreadAllocatedBytes();
+        work.run();
+        return THREADS.getCurrentThreadAllocatedBytes() - before;
+    }
+
+    /** Check that WORK, which processes LINES lines, stays within budget
+     *  once warmed up.  TESTID identifies the check. */
+    private static void checkBudget(String testId, Runnable work) {
+        if (THREADS == null) {
+            return;
+        }
+        for (int i = 0; i < 5; i += 1) {
+            work.run();
+        }
+        long bytes = allocated(work);
+        assertTrue(msg(testId, "%d bytes for %d lines", bytes, LINES),
+                   bytes <= LINE_BUDGET * LINES + SLACK);
+    }
+
+    /** The setting of the machines measured. */
+    private static final String SETTING = "* B Beta I II III AAAA (TD)";
+
+    /** A message line. */
+    private static final String LINE = "FROM HIS SHOULDER HIAWATHA";
+
+    /** Return the input for Main consisting of a setting line and
+     *  N copies of LINE. */
+    private static String input(int n) {
+        StringBuilder result = new StringBuilder("* B Beta I II III AAAA\n");
+        for (int i = 0; i < n; i += 1) {
+            result.append(LINE).append('\n');
+        }
+        return result.toString();
+    }
+
+    /** Return the bytes allocated by a Main run on INPUT. */
+    private static long mainAllocation(String input) {
+        Main main = new Main(new Scanner(navalConfig()),
+                             new Lexer(new StringReader(input)),
+                             new PrintStream(OutputStream.nullOutputStream()));
+        return allocated(main::process);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testMachineConvert() {
+        Machine mach = navalMachine(SETTING);
+        char[] buf = LINE.replace(" ", "").toCharArray();
+        checkBudget("Machine.convert", () -> {
+            for (int i = 0; i < LINES; i += 1) {
+                mach.convert(buf, 0, buf.length);
+            }
+        });
+    }
+
+    @Test
+    public void testConverters() {
+        Alphabet alpha = UPPER;
+        char[] buf = LINE.replace(" ", "").toCharArray();
+        Converter[] converters = {
+            MachineCompiler.interpreted(navalMachine(SETTING)),
+            MachineCompiler.compile(navalMachine(SETTING)),
+        };
+        for (Converter conv : converters) {
+            checkBudget(conv.getClass().getName(), () -> {
+                for (int i = 0; i < LINES; i += 1) {
+                    conv.convert(alpha, buf, 0, buf.length);
+                }
+            });
+        }
+    }
+
+    @Test
+    public void testMainLines() {
+        if (THREADS == null) {
+            return;
+        }
+        String shortInput = input(LINES), longInput = input(2 * LINES);
+        for (int i = 0; i < 5; i += 1) {
+            mainAllocation(shortInput);
+            mainAllocation(longInput);
+        }
+        long perLines = mainAllocation(longInput)
+            - mainAllocation(shortInput);
+        assertTrue(msg("Main.process", "%d bytes for %d lines", perLines,
+                       LINES),
+                   perLines <= LINE_BUDGET * LINES + SLACK);
+    }
+
+}
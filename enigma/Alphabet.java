@@ -1,5 +1,7 @@
 package enigma;
 
+import java.util.Arrays;
+
 /** An alphabet of encodable characters.  Provides a mapping from characters
  *  to and from indices into the alphabet.
  *  @author Oumar Balde
@@ -11,8 +13,15 @@ class Alphabet {
     Alphabet(String chars) {
         _chars = chars;
         _alphabet = new char[chars.length()];
+        int max = 0;
         for (int i = 0; i < _alphabet.length; i++) {
             _alphabet[i] = chars.charAt(i);
+            max = Math.max(max, _alphabet[i]);
+        }
+        _index = new int[max + 1];
+        Arrays.fill(_index, -1);
+        for (int i = _alphabet.length - 1; i >= 0; i--) {
+            _index[_alphabet[i]] = i;
         }
     }
 
@@ -26,12 +35,14 @@ class Alphabet {
         return _alphabet.length;
     }
 
+    /** Returns the characters of this alphabet, in order. */
+    String chars() {
+        return _chars;
+    }
+
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        if (_chars.indexOf(ch) == -1) {
-            return false;
-        }
-        return true;
+        return toInt(ch) != -1;
     }
 
     /** Returns character number INDEX in the alphabet, where
@@ -43,7 +54,7 @@ class Alphabet {
     /** Returns the index of character CH which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        return _chars.indexOf(ch);
+        return ch < _index.length ? _index[ch] : -1;
     }
 
     /**
@@ -54,5 +65,10 @@ class Alphabet {
      * String representation of this alphabet.
      */
     private String _chars;
+    /**
+     * Entry C is the index of character C, or -1 if C is not in this
+     * alphabet; characters beyond its end are not in it.
+     */
+    private int[] _index;
 
 }
@@ -0,0 +1,514 @@
+package enigma;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** Statistics of a corpus of ciphertext, one message per line, over the
+ *  alphabet of a configuration: letter frequencies, indices of
+ *  coincidence of the whole corpus, of each message and of each column
+ *  (letter position) across messages, the commonest bigrams and trigrams
+ *  within messages, and optionally, when the lines alternate plaintext and
+ *  ciphertext, the positions at which a letter encrypts to itself, which
+ *  no Enigma can do.  Characters not in the alphabet, such as the blanks
+ *  between groups, are skipped, so letter positions count letters only.
+ *
+ *  The input is memory-mapped and read as ISO-8859-1 bytes, in chunks of
+ *  whole lines that are counted in parallel by a fork-join pool.  Each
+ *  chunk counts into arrays of its own, which are added together as the
+ *  chunks are joined, so no counter is shared between threads.
+ *  @author Oumar Balde
+ */
+public class Analytics {
+
+    /** Default size in bytes of the chunks of input counted by one task. */
+    static final long CHUNK = 1 << 26;
+
+    /** Default number of columns counted. */
+    static final int DEFAULT_COLUMNS = 32;
+
+    /** Largest alphabet for which trigrams are counted. */
+    static final int MAX_TRIGRAM_ALPHABET = 64;
+
+    /** Number of bigrams and trigrams reported. */
+    static final int TOP = 10;
+
+    /** Print the statistics of a corpus as specified by ARGS, which are
+     *      [--threads=N] [--columns=K] [--pairs] CONFIG INPUT
+     *  where CONFIG names a configuration file, whose alphabet is used,
+     *  INPUT names the corpus, K is the number of columns counted, and
+     *  --pairs treats the lines as pairs of plaintext and ciphertext.
+     *  Exits with code 1 on errors. */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--threads=(\\d+) --columns=(\\d+) --pairs "
+                                + "--=(.*){2}", args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.Analytics [--threads=N] "
+                            + "[--columns=K] [--pairs] CONFIG INPUT");
+            }
+            List<String> files = options.get("--");
+            Machine machine;
+            try (Scanner config = Main.getInput(files.get(0))) {
+                machine = Main.readConfig(config);
+            }
+            int threads = options.contains("--threads")
+                ? Integer.parseInt(options.getFirst("--threads"))
+                : Runtime.getRuntime().availableProcessors();
+            int columns = options.contains("--columns")
+                ? Integer.parseInt(options.getFirst("--columns"))
+                : DEFAULT_COLUMNS;
+            Analytics analytics =
+                new Analytics(machine.alphabet(), columns,
+                              options.contains("--pairs"));
+            Counts counts =
+                analytics.analyze(new File(files.get(1)), threads, CHUNK);
+            PrintWriter output = new PrintWriter(
+                new BufferedWriter(new OutputStreamWriter(System.out),
+                                   CompressedStreams.BUFFER_SIZE));
+            analytics.report(counts, output);
+            output.flush();
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Analytics of texts in ALPHA, counting letters in the first COLUMNS
+     *  columns, with lines in pairs of plaintext and ciphertext iff
+     *  PAIRS. */
+    Analytics(Alphabet alpha, int columns, boolean pairs) {
+        _alphabet = alpha;
+        _columns = columns;
+        _pairs = pairs;
+        _index = new int[1 << Byte.SIZE];
+        for (int b = 0; b < _index.length; b += 1) {
+            _index[b] = alpha.toInt((char) b);
+        }
+    }
+
+    /** Return the counts of the corpus in INPUT, split into chunks of
+     *  about CHUNK bytes counted by THREADS threads. */
+    Counts analyze(File input, int threads, long chunk) {
+        try (FileChannel channel =
+                 FileChannel.open(input.toPath(), StandardOpenOption.READ)) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                long[] bounds = bounds(channel, chunk, pool);
+                return pool.invoke(new Count(channel, bounds, 0,
+                                             bounds.length - 1));
+            } finally {
+                pool.shutdown();
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s: %s", input, excp.getMessage());
+        }
+    }
+
+    /** Return the boundaries of the chunks of about CHUNK bytes into
+     *  which to split the text in CHANNEL, starting with 0 and ending with
+     *  its size.  Each chunk holds whole lines, and, when I read pairs, an
+     *  even number of them; POOL counts the lines. */
+    private long[] bounds(FileChannel channel, long chunk,
+                          ForkJoinPool pool) throws IOException {
+        long size = channel.size();
+        ArrayList<Long> result = new ArrayList<>();
+        result.add(0L);
+        long last = 0;
+        while (last < size) {
+            long next = nextLine(channel, Math.max(last, last + chunk - 1));
+            if (next - last > Integer.MAX_VALUE / 2) {
+                throw error("line at byte %d is too long", last);
+            }
+            result.add(next);
+            last = next;
+        }
+        long[] bounds = result.stream().mapToLong(x -> x).toArray();
+        if (_pairs && bounds.length > 2) {
+            long[] lines = new long[bounds.length - 1];
+            ArrayList<ForkJoinTask<Long>> tasks = new ArrayList<>();
+            for (int k = 0; k < lines.length; k += 1) {
+                long start = bounds[k], end = bounds[k + 1];
+                tasks.add(pool.submit(() -> newlines(channel, start, end)));
+            }
+            for (int k = 0; k < lines.length; k += 1) {
+                lines[k] = tasks.get(k).join();
+            }
+            long line = 0;
+            for (int k = 1; k < bounds.length - 1; k += 1) {
+                line += lines[k - 1];
+                if (line % 2 == 1) {
+                    bounds[k] = nextLine(channel, bounds[k]);
+                    line += 1;
+                    lines[k] -= 1;
+                }
+            }
+        }
+        return bounds;
+    }
+
+    /** Return the position just after the first newline in CHANNEL at or
+     *  after POSITION, or its size if there is none. */
+    private static long nextLine(FileChannel channel, long position)
+        throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(1 << 12);
+        while (true) {
+            buf.clear();
+            int len = channel.read(buf, position);
+            if (len <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < len; i += 1) {
+                if (buf.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += len;
+        }
+    }
+
+    /** Return the number of newlines in CHANNEL between positions START
+     *  and END. */
+    private static long newlines(FileChannel channel, long start, long end) {
+        try {
+            ByteBuffer buf =
+                channel.map(FileChannel.MapMode.READ_ONLY, start,
+                            end - start);
+            long result = 0;
+            for (int i = 0, lim = buf.limit(); i < lim; i += 1) {
+                if (buf.get(i) == '\n') {
+                    result += 1;
+                }
+            }
+            return result;
+        } catch (IOException excp) {
+            throw error("could not read input: %s", excp.getMessage());
+        }
+    }
+
+    /** Counts the chunks of a text between two boundaries, splitting them
+     *  in halves until one is left. */
+    private class Count extends RecursiveTask<Counts> {
+
+        /** Counts chunks LO .. HI-1 of CHANNEL, whose boundaries are
+         *  BOUNDS. */
+        Count(FileChannel channel, long[] bounds, int lo, int hi) {
+            _channel = channel;
+            _bounds = bounds;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected Counts compute() {
+            if (_hi - _lo > 1) {
+                int mid = (_lo + _hi) >>> 1;
+                Count right = new Count(_channel, _bounds, mid, _hi);
+                right.fork();
+                Counts result =
+                    new Count(_channel, _bounds, _lo, mid).compute();
+                result.add(right.join());
+                return result;
+            }
+            Counts result = new Counts(_alphabet.size(), _columns);
+            if (_hi > _lo) {
+                long start = _bounds[_lo];
+                try {
+                    scan(_channel.map(FileChannel.MapMode.READ_ONLY, start,
+                                      _bounds[_hi] - start),
+                         result);
+                } catch (IOException excp) {
+                    throw error("could not read input: %s",
+                                excp.getMessage());
+                }
+            }
+            return result;
+        }
+
+        /** The text. */
+        private final FileChannel _channel;
+        /** The boundaries of its chunks. */
+        private final long[] _bounds;
+        /** The range of chunks I count. */
+        private final int _lo, _hi;
+    }
+
+    /** Add the counts of the lines of TEXT, which starts at the start of
+     *  a line (and of a pair of lines if I read pairs), to RESULT. */
+    void scan(ByteBuffer text, Counts result) {
+        int n = _alphabet.size();
+        int[] index = _index;
+        long[] letters = result._letters;
+        long[] bigrams = result._bigrams;
+        long[] trigrams = result._trigrams;
+        long[] columns = result._columns;
+        int numColumns = _columns;
+        int[] line = new int[n];
+        int[] plain = new int[1 << 8];
+        int plainLen = 0;
+        boolean second = false;
+        int col = 0, prev = -1, prev2 = -1, selfEncrypted = 0;
+        long coincidences = 0;
+        for (int i = 0, lim = text.limit(); i <= lim; i += 1) {
+            int b = i < lim ? text.get(i) & 0xff : '\n';
+            if (b == '\n') {
+                if (i == lim && col == 0) {
+                    break;
+                }
+                result.endMessage(col, coincidences);
+                if (_pairs) {
+                    if (second) {
+                        result._pairs += 1;
+                        result._selfEncryptions += selfEncrypted;
+                        if (selfEncrypted > 0) {
+                            result._selfEncryptedPairs += 1;
+                        }
+                    } else {
+                        plainLen = col;
+                    }
+                    second = !second;
+                }
+                Arrays.fill(line, 0);
+                col = 0;
+                prev = prev2 = -1;
+                selfEncrypted = 0;
+                coincidences = 0;
+                continue;
+            }
+            int c = index[b];
+            if (c < 0) {
+                continue;
+            }
+            letters[c] += 1;
+            if (col < numColumns) {
+                columns[col * n + c] += 1;
+            }
+            if (prev >= 0) {
+                bigrams[prev * n + c] += 1;
+                if (prev2 >= 0 && trigrams != null) {
+                    trigrams[(prev2 * n + prev) * n + c] += 1;
+                }
+            }
+            coincidences += line[c];
+            line[c] += 1;
+            if (_pairs) {
+                if (!second) {
+                    if (col == plain.length) {
+                        plain = Arrays.copyOf(plain, 2 * col);
+                    }
+                    plain[col] = c;
+                } else if (col < plainLen && plain[col] == c) {
+                    selfEncrypted += 1;
+                }
+            }
+            prev2 = prev;
+            prev = c;
+            col += 1;
+        }
+    }
+
+    /** Print the statistics COUNTS on OUTPUT. */
+    void report(Counts counts, PrintWriter output) {
+        int n = _alphabet.size();
+        long total = counts.total();
+        output.printf("messages %d, letters %d%n", counts._messages, total);
+        output.printf("index of coincidence %.4f (random %.4f)%n",
+                      counts.coincidence(), 1.0 / n);
+        if (counts._measured > 0) {
+            output.printf("per message: mean %.4f, min %.4f, max %.4f "
+                          + "(%d messages of 2 or more letters)%n",
+                          counts._coincidenceSum / counts._measured,
+                          counts._minCoincidence, counts._maxCoincidence,
+                          counts._measured);
+        }
+        output.println("letters:");
+        for (int c = 0; c < n; c += 1) {
+            output.printf("  %c %12d %6.2f%%%n", _alphabet.toChar(c),
+                          counts._letters[c],
+                          total == 0 ? 0.0
+                          : 100.0 * counts._letters[c] / total);
+        }
+        output.println("columns:");
+        for (int col = 0; col < _columns; col += 1) {
+            long letters = counts.columnTotal(col);
+            if (letters > 0) {
+                output.printf("  %3d %.4f (%d letters)%n", col + 1,
+                              counts.columnCoincidence(col), letters);
+            }
+        }
+        output.printf("bigrams: %s%n", top(counts._bigrams, 2));
+        if (counts._trigrams != null) {
+            output.printf("trigrams: %s%n", top(counts._trigrams, 3));
+        }
+        if (_pairs) {
+            output.printf("pairs %d, with self-encryptions %d "
+                          + "(%d positions)%n", counts._pairs,
+                          counts._selfEncryptedPairs,
+                          counts._selfEncryptions);
+        }
+    }
+
+    /** Return the TOP commonest of the GRAMS of LEN letters counted in
+     *  HISTOGRAM, with their counts. */
+    private String top(long[] histogram, int len) {
+        int n = _alphabet.size();
+        Integer[] order = new Integer[histogram.length];
+        for (int i = 0; i < order.length; i += 1) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (x, y) -> Long.compare(histogram[y],
+                                                   histogram[x]));
+        StringBuilder result = new StringBuilder();
+        for (int k = 0; k < TOP && k < order.length; k += 1) {
+            if (histogram[order[k]] == 0) {
+                break;
+            }
+            char[] gram = new char[len];
+            for (int j = len - 1, g = order[k]; j >= 0; j -= 1, g /= n) {
+                gram[j] = _alphabet.toChar(g % n);
+            }
+            result.append(k == 0 ? "" : " ").append(gram).append(' ')
+                .append(histogram[order[k]]);
+        }
+        return result.toString();
+    }
+
+    /** The counts of the letters of a text, or part of one. */
+    static class Counts {
+
+        /** Empty counts for an alphabet of N letters, counting COLUMNS
+         *  columns. */
+        Counts(int n, int columns) {
+            _n = n;
+            _letters = new long[n];
+            _bigrams = new long[n * n];
+            _trigrams = n <= MAX_TRIGRAM_ALPHABET ? new long[n * n * n]
+                : null;
+            _columns = new long[columns * n];
+        }
+
+        /** Record the end of a message of LEN letters, in which
+         *  COINCIDENCES pairs of positions hold the same letter. */
+        void endMessage(int len, long coincidences) {
+            if (len == 0) {
+                return;
+            }
+            _messages += 1;
+            if (len >= 2) {
+                double ioc = 2.0 * coincidences / len / (len - 1);
+                _coincidenceSum += ioc;
+                _minCoincidence = Math.min(_minCoincidence, ioc);
+                _maxCoincidence = Math.max(_maxCoincidence, ioc);
+                _measured += 1;
+            }
+        }
+
+        /** Add the counts OTHER to mine. */
+        void add(Counts other) {
+            addTo(_letters, other._letters);
+            addTo(_bigrams, other._bigrams);
+            if (_trigrams != null) {
+                addTo(_trigrams, other._trigrams);
+            }
+            addTo(_columns, other._columns);
+            _messages += other._messages;
+            _measured += other._measured;
+            _coincidenceSum += other._coincidenceSum;
+            _minCoincidence =
+                Math.min(_minCoincidence, other._minCoincidence);
+            _maxCoincidence =
+                Math.max(_maxCoincidence, other._maxCoincidence);
+            _pairs += other._pairs;
+            _selfEncryptedPairs += other._selfEncryptedPairs;
+            _selfEncryptions += other._selfEncryptions;
+        }
+
+        /** Add the elements of FROM to those of TO. */
+        private static void addTo(long[] to, long[] from) {
+            for (int i = 0; i < to.length; i += 1) {
+                to[i] += from[i];
+            }
+        }
+
+        /** Return the number of letters counted. */
+        long total() {
+            return Arrays.stream(_letters).sum();
+        }
+
+        /** Return the index of coincidence of all letters counted. */
+        double coincidence() {
+            return coincidence(_letters, 0, _n);
+        }
+
+        /** Return the number of letters counted in column COL. */
+        long columnTotal(int col) {
+            return Arrays.stream(_columns, col * _n, (col + 1) * _n).sum();
+        }
+
+        /** Return the index of coincidence of column COL. */
+        double columnCoincidence(int col) {
+            return coincidence(_columns, col * _n, _n);
+        }
+
+        /** Return the index of coincidence of the N letter counts starting
+         *  at COUNTS[START]: the chance that two of the letters, chosen at
+         *  random, are the same. */
+        private static double coincidence(long[] counts, int start, int n) {
+            double total = 0, same = 0;
+            for (int c = start; c < start + n; c += 1) {
+                total += counts[c];
+                same += (double) counts[c] * (counts[c] - 1);
+            }
+            return total < 2 ? 0.0 : same / total / (total - 1);
+        }
+
+        /** Alphabet size. */
+        private final int _n;
+        /** Number of each letter. */
+        final long[] _letters;
+        /** Number of each pair of consecutive letters, the first of each
+         *  pair being the more significant. */
+        final long[] _bigrams;
+        /** Number of each three consecutive letters, as for _bigrams, or
+         *  null if the alphabet is too large. */
+        final long[] _trigrams;
+        /** Number of each letter in each column, by column. */
+        final long[] _columns;
+        /** Number of non-empty messages, and of those with 2 or more
+         *  letters. */
+        long _messages, _measured;
+        /** Sum, least and greatest of the indices of coincidence of the
+         *  messages with 2 or more letters. */
+        double _coincidenceSum, _minCoincidence = 1.0, _maxCoincidence;
+        /** Number of pairs of plaintext and ciphertext, of those with a
+         *  letter encrypted to itself, and of such letters. */
+        long _pairs, _selfEncryptedPairs, _selfEncryptions;
+    }
+
+    /** The alphabet of the texts. */
+    private final Alphabet _alphabet;
+    /** Number of columns counted. */
+    private final int _columns;
+    /** True iff lines are pairs of plaintext and ciphertext. */
+    private final boolean _pairs;
+    /** Alphabet index of each byte value, or -1. */
+    private final int[] _index;
+}
@@ -0,0 +1,116 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Analytics class.
+ *  @author Oumar Balde
+ */
+public class AnalyticsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a temporary file containing TEXT. */
+    private static File corpus(String text) throws IOException {
+        File file = File.createTempFile("corpus", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), text.getBytes("ISO-8859-1"));
+        return file;
+    }
+
+    /** Return a random corpus of plaintexts, each followed by its
+     *  encryption in groups of five, using RANDOM. */
+    private static String pairs(Random random) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < 200; i += 1) {
+            StringBuilder msg = new StringBuilder();
+            for (int k = random.nextInt(60); k >= 0; k -= 1) {
+                msg.append((char) ('A' + random.nextInt(26)));
+            }
+            Machine mach = navalMachine();
+            Main.setUp(mach, "* B Beta I II III " + msg.substring(0, 1)
+                       + "XLE (TD) (KC)");
+            result.append(msg).append('\n')
+                .append(Main.formatMessage(mach.convert(msg.toString())))
+                .append('\n');
+        }
+        return result.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testCounts() throws IOException {
+        Analytics analytics = new Analytics(UPPER, 4, false);
+        Analytics.Counts counts =
+            analytics.analyze(corpus("ABAB A\n\nab-C\nAAA"), 2, 3);
+        assertEquals(3, counts._messages);
+        assertEquals(2, counts._measured);
+        assertEquals(9, counts.total());
+        assertEquals(6, counts._letters[0]);
+        assertEquals(2, counts._letters[1]);
+        assertEquals(1, counts._letters[2]);
+        assertEquals(2, counts._bigrams[0]);
+        assertEquals(2, counts._bigrams[1]);
+        assertEquals(2, counts._bigrams[26]);
+        assertEquals(2, counts._trigrams[0 * 26 * 26 + 1 * 26 + 0]);
+        assertEquals(1, counts._trigrams[0]);
+        assertEquals(2, counts._columns[0]);
+        assertEquals(1, counts._columns[2]);
+        assertEquals(1.0, counts._maxCoincidence, 1e-9);
+        assertEquals(0.4, counts._minCoincidence, 1e-9);
+        assertEquals(32.0 / 9 / 8, counts.coincidence(), 1e-9);
+        assertEquals(1.0 / 3, counts.columnCoincidence(0), 1e-9);
+        StringWriter output = new StringWriter();
+        analytics.report(counts, new PrintWriter(output));
+        assertTrue(output.toString().contains("bigrams: AA 2 AB 2 BA 2"));
+    }
+
+    @Test
+    public void testChunksAgree() throws IOException {
+        File file = corpus(pairs(new Random(44)));
+        Analytics analytics = new Analytics(UPPER, 40, true);
+        Analytics.Counts whole = analytics.analyze(file, 1, file.length());
+        for (long chunk : new long[] { 1, 17, 300 }) {
+            Analytics.Counts parts = analytics.analyze(file, 3, chunk);
+            assertArrayEquals(whole._letters, parts._letters);
+            assertArrayEquals(whole._bigrams, parts._bigrams);
+            assertArrayEquals(whole._trigrams, parts._trigrams);
+            assertArrayEquals(whole._columns, parts._columns);
+            assertEquals(whole._messages, parts._messages);
+            assertEquals(whole._coincidenceSum, parts._coincidenceSum, 1e-9);
+            assertEquals(200, parts._pairs);
+            assertEquals(0, parts._selfEncryptions);
+        }
+    }
+
+    @Test
+    public void testSelfEncryption() throws IOException {
+        Analytics analytics = new Analytics(UPPER, 4, true);
+        Analytics.Counts counts =
+            analytics.analyze(corpus("HELLO\nHXLLP\nABC\nDEF\nAB\nXBA\n"),
+                              2, 4);
+        assertEquals(3, counts._pairs);
+        assertEquals(2, counts._selfEncryptedPairs);
+        assertEquals(4, counts._selfEncryptions);
+        assertEquals(0, counts._letters.length - 26);
+        assertFalse(Arrays.stream(counts._letters).anyMatch(x -> x < 0));
+    }
+
+}
@@ -0,0 +1,297 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+/** Rough throughput measurements for the alternative conversion paths.
+ *  Run with 'make bench' in the enigma directory.  Each case is run for a
+ *  few warm-up rounds before being timed, and reported in millions of
+ *  characters per second.
+ *  @author Oumar Balde
+ */
+public class Benchmark {
+
+    /** Number of characters converted per timed round. */
+    static final int LENGTH = 1 << 20;
+
+    /** Number of untimed warm-up rounds and timed rounds. */
+    static final int WARMUP = 5, ROUNDS = 5;
+
+    /** Naval rotors as in testing/correct/default.conf: name, notches (or
+     *  "N"/"R" for fixed rotors and reflectors), and cycles. */
+    static final String[][] NAVAL = {
+        { "I", "Q", "(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)" },
+        { "II", "E", "(FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)" },
+        { "III", "V", "(ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)" },
+        { "IV", "J", "(AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)" },
+        { "V", "Z", "(AVOLDRWFIUQ)(BZKSMNHYC) (EGTJPX)" },
+        { "Beta", "N", "(ALBEVFCYODJWUGNMQTZSKPR) (HIX)" },
+        { "B", "R", "(AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP) "
+          + "(RX) (SZ) (TV)" },
+    };
+
+    /** Run all benchmarks, ignoring ARGS. */
+    public static void main(String... args) {
+        int[] input = randomInput(new Alphabet(), LENGTH);
+        report("interpreted", MachineCompiler.interpreted(naval()), input);
+        report("compiled", MachineCompiler.compile(naval()), input);
+        report("interpreted, rings",
+               MachineCompiler.interpreted(naval(RINGED)), input);
+        report("compiled, rings", MachineCompiler.compile(naval(RINGED)),
+               input);
+        for (int len : BUFFERS) {
+            report(String.format("buffers of %d, staged", len), LENGTH,
+                   buffers(len, false));
+            report(String.format("buffers of %d, each", len), LENGTH,
+                   buffers(len, true));
+        }
+        report("cascade, 3 stages",
+               new Cascade(Arrays.asList(naval(), naval(RINGED),
+                                         naval())), input);
+        String depth = depthInput(DEPTH, LENGTH / DEPTH);
+        report("messages, one by one", LENGTH, () -> {
+            Machine machine = naval();
+            StringWriter output = new StringWriter(LENGTH * 2);
+            Lexer lines = new Lexer(new StringReader(depth));
+            lines.next();
+            char[] grouped = new char[0];
+            while (lines.next()) {
+                Converter conv = MachineCompiler.interpreted(machine.copy());
+                int len = lines.end() - lines.start();
+                char[] msg = Arrays.copyOfRange(lines.buffer(),
+                                                lines.start(), lines.end());
+                conv.convert(machine.alphabet(), msg, 0, len);
+                if (grouped.length < len + len / Main.GROUP) {
+                    grouped = new char[len + len / Main.GROUP];
+                }
+                output.write(grouped, 0,
+                             Main.formatMessage(msg, len, grouped));
+                output.write(System.lineSeparator());
+            }
+            return output.getBuffer().length();
+        });
+        report("messages, in depth", LENGTH, () -> {
+            StringWriter output = new StringWriter(LENGTH * 2);
+            new DepthBatch(new Lexer(new StringReader(depth)), naval(),
+                           output).run();
+            return output.getBuffer().length();
+        });
+        for (int slots : WIDTHS) {
+            report(String.format("tables, %d slots", slots),
+                   MachineCompiler.interpreted(wide(slots)), input);
+            report(String.format("composed, %d slots", slots),
+                   new ComposedRotors(wide(slots)), input);
+            Machine pawls = wide(slots);
+            pawls.setSteppingModel(SteppingModel.PAWLS);
+            report(String.format("composed (pawls), %d slots", slots),
+                   new ComposedRotors(pawls), input);
+        }
+        catalog();
+    }
+
+    /** Lengths of the buffers converted by buffers(). */
+    static final int[] BUFFERS = { 16, 256, 4096, 65536 };
+
+    /** Return a round converting LENGTH characters of text in buffers of
+     *  LEN characters, character by character if EACH, and otherwise in
+     *  stages (see Machine.convert(char[], int, int)). */
+    static Round buffers(int len, boolean each) {
+        Machine machine = naval();
+        char[] text = new char[LENGTH];
+        int[] input = randomInput(machine.alphabet(), LENGTH);
+        for (int i = 0; i < LENGTH; i += 1) {
+            text[i] = machine.alphabet().toChar(input[i]);
+        }
+        return () -> {
+            for (int from = 0; from < LENGTH; from += len) {
+                if (each) {
+                    machine.convertEach(text, from, from + len);
+                } else {
+                    machine.convert(text, from, from + len);
+                }
+            }
+            return text[0];
+        };
+    }
+
+    /** Template of the keys catalogued by catalog(). */
+    static final String CATALOG = "* B Beta I ? ? A???";
+
+    /** Number of queries timed by catalog(). */
+    static final int QUERIES = 100000;
+
+    /** Time building a cycle catalog of the keys of CATALOG, and looking
+     *  up characteristics in it. */
+    static void catalog() {
+        try {
+            File file = File.createTempFile("catalog", ".idx");
+            file.deleteOnExit();
+            int threads = Runtime.getRuntime().availableProcessors();
+            long start = System.nanoTime();
+            CycleCatalog.build(naval(), CATALOG, file, threads);
+            double secs = (System.nanoTime() - start) / 1e9;
+            CatalogIndex index = new CatalogIndex(file);
+            System.out.printf("%-24s %8.1f s       (%d keys, %d threads)%n",
+                              "catalog build", secs, index.size(), threads);
+
+            int[][] characteristic =
+                CycleCatalog.characteristic(IndicatorBatch.prefix(naval()));
+            long signature = CycleCatalog.signature(characteristic);
+            long sink = 0;
+            for (int round = 0; round <= 1; round += 1) {
+                start = System.nanoTime();
+                for (int i = 0; i < QUERIES; i += 1) {
+                    sink += index.lookup(signature + i % 2).length;
+                }
+            }
+            double lookup = (System.nanoTime() - start) / 1e3 / QUERIES;
+            start = System.nanoTime();
+            int found =
+                CycleCatalog.query(naval(), index, characteristic).size();
+            double query = (System.nanoTime() - start) / 1e3;
+            System.out.printf("%-24s %8.2f us      (%d)%n", "catalog lookup",
+                              lookup, sink & 1);
+            System.out.printf("%-24s %8.1f us      (%d candidates)%n",
+                              "catalog query", query, found);
+        } catch (IOException excp) {
+            System.out.printf("catalog: %s%n", excp.getMessage());
+        }
+    }
+
+    /** Number of messages converted in depth. */
+    static final int DEPTH = 1 << 12;
+
+    /** Return the setting line PLAIN followed by COUNT random messages of
+     *  LEN letters. */
+    static String depthInput(int count, int len) {
+        Random random = new Random(62);
+        StringBuilder result = new StringBuilder(PLAIN).append('\n');
+        for (int m = 0; m < count; m += 1) {
+            for (int i = 0; i < len; i += 1) {
+                result.append((char) ('A' + random.nextInt(26)));
+            }
+            result.append('\n');
+        }
+        return result.toString();
+    }
+
+    /** Numbers of slots of the machines returned by wide() that are
+     *  timed. */
+    static final int[] WIDTHS = { 5, 9, 17, 33, 65, 129 };
+
+    /** Return a machine with SLOTS slots, all but the reflector holding
+     *  distinct moving rotors with random wirings and one notch each,
+     *  set to a random position. */
+    static Machine wide(int slots) {
+        Alphabet alpha = new Alphabet();
+        Random random = new Random(slots);
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(NAVAL[6][2], alpha)));
+        String[] names = new String[slots];
+        names[0] = "B";
+        for (int k = 1; k < slots; k += 1) {
+            StringBuilder cycle = new StringBuilder("(");
+            ArrayList<Character> letters = new ArrayList<>();
+            for (int c = 0; c < alpha.size(); c += 1) {
+                letters.add(alpha.toChar(c));
+            }
+            Collections.shuffle(letters, random);
+            for (char c : letters) {
+                cycle.append(c);
+            }
+            names[k] = "R" + k;
+            rotors.add(new MovingRotor(names[k],
+                                       new Permutation(cycle + ")", alpha),
+                                       String.valueOf(alpha.toChar(
+                                           random.nextInt(alpha.size())))));
+        }
+        Machine machine = new Machine(alpha, slots, slots - 1, rotors);
+        machine.insertRotors(names);
+        for (int k = 1; k < slots; k += 1) {
+            machine.setRotor(k, random.nextInt(alpha.size()));
+        }
+        machine.setPlugboard(new Permutation("", alpha));
+        return machine;
+    }
+
+    /** The setting line used by naval(). */
+    static final String PLAIN = "* B Beta I II III AAAA (TD) (KC) (JZ)";
+
+    /** PLAIN with ring settings. */
+    static final String RINGED = "* B Beta I II III AAAA BRZX (TD) (KC) (JZ)";
+
+    /** Return a 5-slot naval machine set to "* B Beta I II III AAAA" with
+     *  a few plugboard pairs. */
+    static Machine naval() {
+        return naval(PLAIN);
+    }
+
+    /** Return a 5-slot naval machine set up according to SETTING. */
+    static Machine naval(String setting) {
+        Alphabet alpha = new Alphabet();
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (String[] desc : NAVAL) {
+            Permutation perm = new Permutation(desc[2], alpha);
+            if (desc[1].equals("R")) {
+                rotors.add(new Reflector(desc[0], perm));
+            } else if (desc[1].equals("N")) {
+                rotors.add(new FixedRotor(desc[0], perm));
+            } else {
+                rotors.add(new MovingRotor(desc[0], perm, desc[1]));
+            }
+        }
+        Machine machine = new Machine(alpha, 5, 3, rotors);
+        Main.setUp(machine, setting);
+        return machine;
+    }
+
+    /** Return LEN random indices into ALPHA. */
+    static int[] randomInput(Alphabet alpha, int len) {
+        Random random = new Random(61);
+        int[] result = new int[len];
+        for (int i = 0; i < len; i += 1) {
+            result[i] = random.nextInt(alpha.size());
+        }
+        return result;
+    }
+
+    /** Time CONV on INPUT and print the result labeled NAME. */
+    static void report(String name, Converter conv, int[] input) {
+        report(name, input.length, () -> {
+            int sum = 0;
+            for (int c : input) {
+                sum += conv.convert(c);
+            }
+            return sum;
+        });
+    }
+
+    /** Time ROUND, which processes CHARS characters per call, and print
+     *  the result labeled NAME. */
+    static void report(String name, long chars, Round round) {
+        long sink = 0;
+        for (int i = 0; i < WARMUP; i += 1) {
+            sink += round.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i += 1) {
+            sink += round.run();
+        }
+        double secs = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-24s %8.1f Mchar/s   (%d)%n", name,
+                          chars * ROUNDS / secs / 1e6, sink & 1);
+    }
+
+    /** One timed round of work. */
+    interface Round {
+        /** Perform the work, returning a value that depends on it. */
+        long run();
+    }
+
+}
@@ -0,0 +1,211 @@
+package enigma;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/** Decompresses a blocked gzip (BGZF) stream on several threads.  A BGZF
+ *  stream is a series of gzip members, each at most 64 KiB long, whose
+ *  headers record their compressed size, so that the members can be
+ *  separated without decompressing them.  Members are read on the calling
+ *  thread and inflated by a pool of workers, a bounded number of members
+ *  ahead of the reader, and their contents are delivered in order.
+ *  @author Oumar Balde
+ */
+class BlockGzipInputStream extends InputStream {
+
+    /** Number of members inflated ahead of the reader, per thread. */
+    static final int WINDOW = 4;
+
+    /** A stream decompressing IN, which must be positioned at the start
+     *  of a BGZF member, using THREADS worker threads. */
+    BlockGzipInputStream(InputStream in, int threads) {
+        _in = new DataInputStream(in);
+        _threads = threads;
+        _workers = Executors.newFixedThreadPool(threads, (task) -> {
+            Thread thread = new Thread(task, "enigma-inflater");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** Return true iff HEADER, the first bytes of a stream, begins a BGZF
+     *  member.  HEADER must have at least HEADER_SIZE bytes. */
+    static boolean isBlocked(byte[] header) {
+        return (header[0] & 0xff) == ID1 && (header[1] & 0xff) == ID2
+            && header[2] == CM_DEFLATE && header[3] == FEXTRA
+            && header[10] == EXTRA_SIZE && header[11] == 0
+            && header[12] == 'B' && header[13] == 'C'
+            && header[14] == 2 && header[15] == 0;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        int b = _block[_next] & 0xff;
+        _next += 1;
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int n = Math.min(len, _block.length - _next);
+        System.arraycopy(_block, _next, buf, off, n);
+        _next += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return _block.length - _next;
+    }
+
+    @Override
+    public void close() throws IOException {
+        _workers.shutdownNow();
+        _in.close();
+    }
+
+    /** Ensure there are decompressed bytes waiting in _block, returning
+     *  false at the end of input. */
+    private boolean fill() throws IOException {
+        while (_next == _block.length) {
+            while (!_eof && _pending.size() < WINDOW * _threads) {
+                byte[] member = readMember();
+                if (member == null) {
+                    _eof = true;
+                } else {
+                    _pending.add(_workers.submit(() -> inflate(member)));
+                }
+            }
+            if (_pending.isEmpty()) {
+                return false;
+            }
+            try {
+                _block = _pending.remove().get();
+            } catch (ExecutionException excp) {
+                throw new IOException(excp.getCause().getMessage());
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted");
+            }
+            _next = 0;
+        }
+        return true;
+    }
+
+    /** Return the next member of the input, from the byte following its
+     *  header to its end, or null at the end of input. */
+    private byte[] readMember() throws IOException {
+        byte[] header = new byte[HEADER_SIZE];
+        int first = _in.read();
+        if (first == -1) {
+            return null;
+        }
+        header[0] = (byte) first;
+        try {
+            _in.readFully(header, 1, HEADER_SIZE - 1);
+        } catch (EOFException excp) {
+            throw new IOException("truncated compressed block");
+        }
+        if (!isBlocked(header)) {
+            throw new IOException("not a blocked gzip member");
+        }
+        int size = (header[16] & 0xff) + ((header[17] & 0xff) << 8) + 1;
+        if (size < HEADER_SIZE + TRAILER_SIZE) {
+            throw new IOException("bad compressed block size");
+        }
+        byte[] member = new byte[size - HEADER_SIZE];
+        try {
+            _in.readFully(member);
+        } catch (EOFException excp) {
+            throw new IOException("truncated compressed block");
+        }
+        return member;
+    }
+
+    /** Return the decompressed contents of MEMBER, as returned by
+     *  readMember(). */
+    private static byte[] inflate(byte[] member) throws IOException {
+        int end = member.length - TRAILER_SIZE;
+        int crc = littleEndian(member, end);
+        int size = littleEndian(member, end + 4);
+        if (size < 0 || size > MAX_BLOCK) {
+            throw new IOException("bad compressed block");
+        }
+        byte[] result = new byte[size];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(member, 0, end);
+            int n = 0;
+            while (n < size && !inflater.finished()) {
+                int k = inflater.inflate(result, n, size - n);
+                if (k == 0 && inflater.needsInput()) {
+                    break;
+                }
+                n += k;
+            }
+            CRC32 check = new CRC32();
+            check.update(result, 0, n);
+            if (n != size || (int) check.getValue() != crc) {
+                throw new IOException("corrupt compressed block");
+            }
+        } catch (DataFormatException excp) {
+            throw new IOException("corrupt compressed block");
+        } finally {
+            inflater.end();
+        }
+        return result;
+    }
+
+    /** Return the 4-byte little-endian integer at BUF[K]. */
+    private static int littleEndian(byte[] buf, int k) {
+        return (buf[k] & 0xff) | (buf[k + 1] & 0xff) << 8
+            | (buf[k + 2] & 0xff) << 16 | (buf[k + 3] & 0xff) << 24;
+    }
+
+    /** Gzip magic numbers, compression method and flag for the extra
+     *  field. */
+    static final int ID1 = 0x1f, ID2 = 0x8b, CM_DEFLATE = 8, FEXTRA = 4;
+
+    /** Length of the extra field of a BGZF header. */
+    static final int EXTRA_SIZE = 6;
+
+    /** Size of a BGZF member header and trailer. */
+    static final int HEADER_SIZE = 18, TRAILER_SIZE = 8;
+
+    /** Largest amount of data in one member. */
+    static final int MAX_BLOCK = 1 << 16;
+
+    /** Source of compressed members. */
+    private final DataInputStream _in;
+    /** Number of worker threads. */
+    private final int _threads;
+    /** Inflates members. */
+    private final ExecutorService _workers;
+    /** Contents of members being inflated, in order. */
+    private final ArrayDeque<Future<byte[]>> _pending = new ArrayDeque<>();
+    /** The contents of the current member. */
+    private byte[] _block = new byte[0];
+    /** Position of the next byte to be read in _block. */
+    private int _next;
+    /** True once the last member has been read. */
+    private boolean _eof;
+}
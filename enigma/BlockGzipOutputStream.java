@@ -0,0 +1,138 @@
+package enigma;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import static enigma.BlockGzipInputStream.*;
+
+/** Compresses its output as a blocked gzip (BGZF) stream, which any gzip
+ *  reader can decompress and which BlockGzipInputStream can decompress in
+ *  parallel.  The stream ends with the usual empty member.
+ *  @author Oumar Balde
+ */
+class BlockGzipOutputStream extends FilterOutputStream {
+
+    /** Amount of data compressed into each member, chosen so that the
+     *  member fits in 64 KiB even when the data do not compress. */
+    static final int BLOCK = 0xff00;
+
+    /** A stream compressing onto OUT. */
+    BlockGzipOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (_len == BLOCK) {
+            writeBlock();
+        }
+        _data[_len] = (byte) b;
+        _len += 1;
+    }
+
+    @Override
+    public void write(byte[] buf, int off, int len) throws IOException {
+        while (len > 0) {
+            if (_len == BLOCK) {
+                writeBlock();
+            }
+            int n = Math.min(len, BLOCK - _len);
+            System.arraycopy(buf, off, _data, _len, n);
+            _len += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /** Write out any buffered data as a member, then flush the underlying
+     *  stream. */
+    @Override
+    public void flush() throws IOException {
+        if (_len > 0) {
+            writeBlock();
+        }
+        out.flush();
+    }
+
+    /** Write out any buffered data, and the final empty member, and close
+     *  the underlying stream. */
+    @Override
+    public void close() throws IOException {
+        if (_closed) {
+            return;
+        }
+        _closed = true;
+        try {
+            if (_len > 0) {
+                writeBlock();
+            }
+            writeBlock();
+        } finally {
+            _deflater.end();
+            out.close();
+        }
+    }
+
+    /** Write _data[0 .. _len-1] as one member. */
+    private void writeBlock() throws IOException {
+        _deflater.reset();
+        _deflater.setLevel(Deflater.DEFAULT_COMPRESSION);
+        int size = deflate();
+        if (size < 0) {
+            _deflater.reset();
+            _deflater.setLevel(Deflater.NO_COMPRESSION);
+            size = deflate();
+        }
+        int total = HEADER_SIZE + size + TRAILER_SIZE;
+        byte[] header = {
+            (byte) ID1, (byte) ID2, CM_DEFLATE, FEXTRA, 0, 0, 0, 0, 0,
+            (byte) 0xff, EXTRA_SIZE, 0, 'B', 'C', 2, 0,
+            (byte) (total - 1), (byte) ((total - 1) >> 8)
+        };
+        _crc.reset();
+        _crc.update(_data, 0, _len);
+        out.write(header);
+        out.write(_compressed, 0, size);
+        writeInt((int) _crc.getValue());
+        writeInt(_len);
+        _len = 0;
+    }
+
+    /** Compress _data[0 .. _len-1] into _compressed, returning the
+     *  compressed size, or -1 if it does not fit in a member. */
+    private int deflate() {
+        _deflater.setInput(_data, 0, _len);
+        _deflater.finish();
+        int room = MAX_BLOCK - HEADER_SIZE - TRAILER_SIZE;
+        int size = 0;
+        while (!_deflater.finished() && size < room) {
+            size += _deflater.deflate(_compressed, size, room - size);
+        }
+        return _deflater.finished() ? size : -1;
+    }
+
+    /** Write V as 4 little-endian bytes. */
+    private void writeInt(int v) throws IOException {
+        out.write(v);
+        out.write(v >> 8);
+        out.write(v >> 16);
+        out.write(v >> 24);
+    }
+
+    /** Data waiting to be compressed. */
+    private final byte[] _data = new byte[BLOCK];
+    /** Compressed data of the current member. */
+    private final byte[] _compressed = new byte[MAX_BLOCK];
+    /** Compresses members. */
+    private final Deflater _deflater =
+        new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    /** Checksum of the current member. */
+    private final CRC32 _crc = new CRC32();
+    /** Number of bytes in _data. */
+    private int _len;
+    /** True once closed. */
+    private boolean _closed;
+}
@@ -0,0 +1,168 @@
+package enigma;
+
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** A Converter that passes each character through several machines in
+ *  turn, as if a message were converted by each stage and the result
+ *  converted by the next, but in one pass.  Every stage steps its own
+ *  rotors for every character.
+ *
+ *  Between moves of the rotors other than the fast ones, every stage's
+ *  fast rotor advances one position per character, so the whole cascade
+ *  goes through the same alphabet-size cycle of substitutions.  Once no
+ *  such rotor has moved in any stage for QUIET such cycles, each
+ *  substitution of the cycle is composed into one table the first time
+ *  it is needed, after which a character costs the stages' steps and a
+ *  single lookup.  The tables are dropped as soon as a slower rotor
+ *  moves.  With the usual notches, some slower rotor moves at least once
+ *  per revolution of a fast rotor, and the stages are simply applied one
+ *  after the other; composition pays off for stages with one pawl, or
+ *  with fast rotors that rarely reach a notch.
+ *  @author Oumar Balde
+ */
+class Cascade extends Converter {
+
+    /** A Converter that starts in the current states of STAGES, which must
+     *  have the same alphabet, and thereafter converts as they would one
+     *  after the other, leaving them unchanged. */
+    Cascade(List<Machine> stages) {
+        if (stages.isEmpty()) {
+            throw error("a cascade needs at least one stage");
+        }
+        Alphabet alpha = stages.get(0).alphabet();
+        _stages = new Machine[stages.size()];
+        _fast = new boolean[_stages.length];
+        for (int i = 0; i < _stages.length; i += 1) {
+            Machine stage = stages.get(i);
+            if (!stage.alphabet().chars().equals(alpha.chars())) {
+                throw error("the stages of a cascade must have the same "
+                            + "alphabet");
+            }
+            _stages[i] = stage.copy();
+            int last = stage.numRotors() - 1;
+            _fast[i] = stage.getRotor(last).rotates();
+        }
+        _n = alpha.size();
+        _probes = new Machine[_stages.length];
+        _base = new int[_stages.length];
+        _rows = new int[_n][];
+        _rowEpochs = new int[_n];
+        _quietLimit = QUIET * _n;
+    }
+
+    /** Number of revolutions of the fast rotors without other moves after
+     *  which the substitutions are composed. */
+    static final int QUIET = 8;
+
+    @Override
+    int convert(int c) {
+        boolean slow = false;
+        for (Machine stage : _stages) {
+            slow |= stage.advanceCarrying();
+        }
+        if (slow) {
+            _quiet = 0;
+            _composed = false;
+        } else if (!_composed) {
+            _quiet += 1;
+            if (_quiet >= _quietLimit) {
+                compose();
+            }
+        }
+        if (_composed) {
+            int[] row = _rows[_offset];
+            if (_rowEpochs[_offset] != _epoch) {
+                row = fill(_offset);
+            }
+            _offset = _offset + 1 == _n ? 0 : _offset + 1;
+            return row[c];
+        }
+        for (Machine stage : _stages) {
+            c = stage.map(c);
+        }
+        return c;
+    }
+
+    /** Start composing the substitutions of the cycle beginning at the
+     *  current states of the stages. */
+    private void compose() {
+        _epoch += 1;
+        _offset = 0;
+        _composed = true;
+        for (int i = 0; i < _stages.length; i += 1) {
+            _probes[i] = _stages[i].copy();
+            _base[i] = _stages[i].setting(_stages[i].numRotors() - 1);
+        }
+    }
+
+    /** Compute and return the substitution of the whole cascade OFFSET
+     *  characters into the current cycle. */
+    private int[] fill(int offset) {
+        for (int i = 0; i < _probes.length; i += 1) {
+            if (_fast[i]) {
+                _probes[i].setRotor(_probes[i].numRotors() - 1,
+                                    (_base[i] + offset) % _n);
+            }
+        }
+        int[] row = _rows[offset];
+        if (row == null) {
+            row = _rows[offset] = new int[_n];
+        }
+        for (int c = 0; c < _n; c += 1) {
+            int p = c;
+            for (Machine probe : _probes) {
+                p = probe.map(p);
+            }
+            row[c] = p;
+        }
+        _rowEpochs[offset] = _epoch;
+        return row;
+    }
+
+    /** Return the current setting of slot K, numbering the slots of all
+     *  stages consecutively, from the first stage's reflector. */
+    @Override
+    int setting(int k) {
+        for (Machine stage : _stages) {
+            if (k < stage.numRotors()) {
+                return stage.setting(k);
+            }
+            k -= stage.numRotors();
+        }
+        throw error("no slot %d in cascade", k);
+    }
+
+    /** Return true iff the substitutions are currently being composed. */
+    boolean composed() {
+        return _composed;
+    }
+
+    /** The stages, which I drive. */
+    private final Machine[] _stages;
+    /** True for the stages whose fast slot holds a moving rotor. */
+    private final boolean[] _fast;
+    /** Alphabet size. */
+    private final int _n;
+    /** Copies of the stages at the start of the current cycle, set to the
+     *  state of each substitution as it is composed. */
+    private final Machine[] _probes;
+    /** Settings of the fast rotors at the start of the current cycle. */
+    private final int[] _base;
+    /** The composed substitutions, by offset into the cycle. */
+    private final int[][] _rows;
+    /** The epoch in which each of _rows was composed. */
+    private final int[] _rowEpochs;
+    /** Number of characters without slow moves before composing. */
+    private final int _quietLimit;
+    /** Number of characters since a slow move. */
+    private int _quiet;
+    /** True iff the current characters are looked up in _rows. */
+    private boolean _composed;
+    /** Number of cycles composed so far; rows of earlier cycles are
+     *  stale. */
+    private int _epoch;
+    /** Offset of the next character into the current cycle. */
+    private int _offset;
+}
@@ -0,0 +1,112 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Cascade class.
+ *  @author Oumar Balde
+ */
+public class CascadeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the machines of SETTINGS, each a naval machine of SLOTS
+     *  slots with PAWLS pawls. */
+    private static List<Machine> stages(int slots, int pawls,
+                                        String... settings) {
+        ArrayList<Machine> result = new ArrayList<>();
+        for (String setting : settings) {
+            Machine mach = new Machine(UPPER, slots, pawls,
+                                       navalRotors());
+            Main.setUp(mach, setting);
+            result.add(mach);
+        }
+        return result;
+    }
+
+    /** Return TEXT converted by each of STAGES in turn. */
+    private static String sequential(List<Machine> stages, String text) {
+        for (Machine stage : stages) {
+            text = stage.copy().convert(text);
+        }
+        return text;
+    }
+
+    /** Return LEN random letters, using RANDOM. */
+    private static String text(Random random, int len) {
+        char[] result = new char[len];
+        for (int i = 0; i < len; i += 1) {
+            result[i] = UPPER.toChar(random.nextInt(UPPER.size()));
+        }
+        return new String(result);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testMatchesSequential() {
+        List<Machine> stages =
+            stages(5, 3, "* B Beta I II III AXLE BRZX (TD) (KC)",
+                   "* C Gamma IV V VI QDVZ (AQ) (EP)",
+                   "* B Beta VII VIII I ZZZZ");
+        String text = text(new Random(47), 5000);
+        Cascade cascade = new Cascade(stages);
+        assertEquals(sequential(stages, text),
+                     cascade.convert(UPPER, text));
+        assertFalse(cascade.composed());
+    }
+
+    @Test
+    public void testComposedMatchesSequential() {
+        List<Machine> stages =
+            stages(4, 1, "* B Beta Gamma I AAQ (TD)",
+                   "* C Gamma Beta II XYZ BRZ (AQ) (EP)");
+        String text = text(new Random(48), 3000);
+        Cascade cascade = new Cascade(stages);
+        String expected = sequential(stages, text);
+        String first = cascade.convert(UPPER, text.substring(0, 1000));
+        assertTrue(cascade.composed());
+        assertEquals(expected,
+                     first + cascade.convert(UPPER, text.substring(1000)));
+        Machine second = stages.get(1).copy();
+        second.convert(text);
+        assertEquals(second.setting(3), cascade.setting(7));
+    }
+
+    @Test
+    public void testDecryptInReverse() {
+        List<Machine> stages =
+            stages(5, 3, "* B Beta I II III AXLE (TD)",
+                   "* C Gamma IV V VI QDVZ");
+        String text = text(new Random(49), 300);
+        String cipher = new Cascade(stages).convert(UPPER, text);
+        List<Machine> reversed = new ArrayList<>(stages);
+        Collections.reverse(reversed);
+        assertEquals(text, new Cascade(reversed).convert(UPPER, cipher));
+    }
+
+    @Test
+    public void testStagesUnchanged() {
+        List<Machine> stages = stages(5, 3, "* B Beta I II III AXLE");
+        new Cascade(stages).convert(UPPER, "HELLO");
+        String windows = "";
+        for (int k = 1; k < 5; k += 1) {
+            windows += UPPER.toChar(stages.get(0).setting(k));
+        }
+        assertEquals("AXLE", windows);
+    }
+
+}
@@ -0,0 +1,211 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/** A compact index, stored in a file and read through a memory mapping,
+ *  from 64-bit signatures to the numbers of the keys having them.  The
+ *  file holds (big-endian) a magic number, the identity of the
+ *  configuration whose rotors the keys use (see ResultCache.configId) and
+ *  the template of the key space (each as a length and UTF-8 bytes), the
+ *  number of slots of its hash table
+ *  (a power of two), the number of keys, the table itself, and then the
+ *  key numbers grouped by signature.  Each slot of the table holds a
+ *  signature, the position of its first key and the number of its keys,
+ *  which is 0 for empty slots.  Signatures are placed by linear probing
+ *  from their low-order bits, so a lookup is one hash probe and one read
+ *  of contiguous key numbers.
+ *  @author Oumar Balde
+ */
+class CatalogIndex {
+
+    /** Identifies an index file. */
+    static final int MAGIC = 0x454e4332;
+
+    /** Size in bytes of a slot of the table. */
+    static final int SLOT_SIZE = 16;
+
+    /** Write to FILE an index of the keys of the key space of TEMPLATE for
+     *  the configuration identified by CONFIG, where key K has signature
+     *  SIGNATURES[K]. */
+    static void write(File file, String config, String template,
+                      long[] signatures) throws IOException {
+        long[] sorted = signatures.clone();
+        Arrays.parallelSort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < sorted.length; i += 1) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                distinct += 1;
+            }
+        }
+        int capacity = 2;
+        while (capacity < 2 * distinct) {
+            capacity *= 2;
+        }
+        long[] keys = new long[capacity];
+        int[] counts = new int[capacity];
+        for (int i = 0; i < sorted.length; ) {
+            int j = i;
+            while (j < sorted.length && sorted[j] == sorted[i]) {
+                j += 1;
+            }
+            int slot = find(keys, counts, sorted[i]);
+            keys[slot] = sorted[i];
+            counts[slot] = j - i;
+            i = j;
+        }
+        int[] starts = new int[capacity];
+        for (int slot = 0, start = 0; slot < capacity; slot += 1) {
+            starts[slot] = start;
+            start += counts[slot];
+        }
+        int[] entries = new int[signatures.length];
+        int[] fill = starts.clone();
+        for (int k = 0; k < signatures.length; k += 1) {
+            int slot = find(keys, counts, signatures[k]);
+            entries[fill[slot]] = k;
+            fill[slot] += 1;
+        }
+
+        byte[] id = config.getBytes(StandardCharsets.UTF_8);
+        byte[] name = template.getBytes(StandardCharsets.UTF_8);
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(file),
+                                          CompressedStreams.BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(id.length);
+            out.write(id);
+            out.writeInt(name.length);
+            out.write(name);
+            out.writeInt(capacity);
+            out.writeInt(entries.length);
+            for (int slot = 0; slot < capacity; slot += 1) {
+                out.writeLong(keys[slot]);
+                out.writeInt(starts[slot]);
+                out.writeInt(counts[slot]);
+            }
+            for (int k : entries) {
+                out.writeInt(k);
+            }
+        }
+    }
+
+    /** Return the slot of SIGNATURE in the table whose slots hold the
+     *  signatures KEYS and counts COUNTS, or of the empty slot where it
+     *  belongs. */
+    private static int find(long[] keys, int[] counts, long signature) {
+        int mask = keys.length - 1;
+        int slot = (int) signature & mask;
+        while (counts[slot] != 0 && keys[slot] != signature) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /** The index in FILE. */
+    CatalogIndex(File file) throws IOException {
+        try (FileChannel channel =
+                 FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("index too large");
+            }
+            _data = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                channel.size());
+        }
+        if (_data.capacity() < 8 || _data.getInt(0) != MAGIC) {
+            throw new IOException("not a catalog index");
+        }
+        byte[] id = string(4);
+        _config = new String(id, StandardCharsets.UTF_8);
+        byte[] name = string(8 + id.length);
+        _template = new String(name, StandardCharsets.UTF_8);
+        int at = 12 + id.length + name.length;
+        if (at > _data.capacity() - 8) {
+            throw new IOException("corrupt catalog index");
+        }
+        _capacity = _data.getInt(at);
+        _size = _data.getInt(at + 4);
+        _table = at + 8;
+        _entries = _table + (long) _capacity * SLOT_SIZE;
+        if (Integer.bitCount(_capacity) != 1 || _size < 0
+            || _entries + 4L * _size != _data.capacity()) {
+            throw new IOException("corrupt catalog index");
+        }
+    }
+
+    /** Return the bytes of the string stored, as a length and that many
+     *  bytes, at position AT of _data. */
+    private byte[] string(int at) throws IOException {
+        if (at > _data.capacity() - 4) {
+            throw new IOException("corrupt catalog index");
+        }
+        int length = _data.getInt(at);
+        if (length < 0 || length > _data.capacity() - at - 4) {
+            throw new IOException("corrupt catalog index");
+        }
+        byte[] result = new byte[length];
+        _data.get(at + 4, result);
+        return result;
+    }
+
+    /** Return the identity of the configuration whose keys I index. */
+    String config() {
+        return _config;
+    }
+
+    /** Return the template of the key space I index. */
+    String template() {
+        return _template;
+    }
+
+    /** Return the number of keys I index. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the numbers of the keys with SIGNATURE, in increasing
+     *  order. */
+    int[] lookup(long signature) {
+        int mask = _capacity - 1;
+        int slot = (int) signature & mask;
+        while (true) {
+            int at = _table + slot * SLOT_SIZE;
+            int count = _data.getInt(at + 12);
+            if (count == 0) {
+                return new int[0];
+            }
+            if (_data.getLong(at) == signature) {
+                int[] result = new int[count];
+                int start = (int) _entries + 4 * _data.getInt(at + 8);
+                for (int i = 0; i < count; i += 1) {
+                    result[i] = _data.getInt(start + 4 * i);
+                }
+                return result;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /** The contents of the index file. */
+    private final MappedByteBuffer _data;
+    /** The identity of the configuration. */
+    private final String _config;
+    /** The template of the key space. */
+    private final String _template;
+    /** Number of slots in the table. */
+    private final int _capacity;
+    /** Number of keys. */
+    private final int _size;
+    /** Position of the table in _data. */
+    private final int _table;
+    /** Position of the key numbers in _data. */
+    private final long _entries;
+}
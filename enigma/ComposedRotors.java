@@ -0,0 +1,123 @@
+package enigma;
+
+/** A Converter for machines with many rotor slots.  It keeps a segment
+ *  tree over the non-reflecting slots whose leaves are the forward
+ *  substitutions of the individual slots at their current settings, and
+ *  whose interior nodes are the compositions of their children, so that
+ *  the root is the whole forward pass.  When a rotor steps, only its leaf
+ *  and the nodes above it are recomposed, and converting a character
+ *  takes a fixed number of lookups however many slots there are: through
+ *  the plugboard, the root, the reflector, the inverse of the root and
+ *  the plugboard again.  Each step costs about the alphabet size times
+ *  the depth of the tree for each rotor moved, so this pays off only when
+ *  the number of slots is large compared with that depth.
+ *  @author Oumar Balde
+ */
+class ComposedRotors extends Converter {
+
+    /** A Converter that starts in the current state of M and thereafter
+     *  behaves as M would, leaving M unchanged. */
+    ComposedRotors(Machine M) {
+        _machine = M.copy();
+        _n = M.alphabet().size();
+        _plugboard = new int[_n];
+        _reflector = new int[_n];
+        leaf(0, _reflector, 0);
+        for (int c = 0; c < _n; c += 1) {
+            _plugboard[c] = M.plugboard().permute(c);
+        }
+        int leaves = 1;
+        while (leaves < M.numRotors() - 1) {
+            leaves *= 2;
+        }
+        _leaves = leaves;
+        _tree = new int[2 * leaves * _n];
+        for (int i = leaves; i < 2 * leaves; i += 1) {
+            int slot = i - leaves + 1;
+            if (slot < M.numRotors()) {
+                leaf(slot, _tree, i * _n);
+            } else {
+                for (int p = 0; p < _n; p += 1) {
+                    _tree[i * _n + p] = p;
+                }
+            }
+        }
+        for (int i = leaves - 1; i > 0; i -= 1) {
+            compose(i);
+        }
+        _inverse = new int[_n];
+        invert();
+        _moved = new int[M.numRotors()];
+    }
+
+    @Override
+    int convert(int c) {
+        int moved = _machine.advance(_moved);
+        for (int j = 0; j < moved; j += 1) {
+            int slot = _moved[j];
+            int i = _leaves + slot - 1;
+            leaf(slot, _tree, i * _n);
+            for (i /= 2; i > 0; i /= 2) {
+                compose(i);
+            }
+        }
+        if (moved > 0) {
+            invert();
+        }
+        int p = _tree[_n + _plugboard[c]];
+        return _plugboard[_inverse[_reflector[p]]];
+    }
+
+    @Override
+    int setting(int k) {
+        return _machine.setting(k);
+    }
+
+    /** Set _inverse to the inverse of the root of the tree. */
+    private void invert() {
+        for (int p = 0; p < _n; p += 1) {
+            _inverse[_tree[_n + p]] = p;
+        }
+    }
+
+    /** Set node I of the tree to the composition of its children: the
+     *  right child, covering slots nearer the fast rotor, applies
+     *  first. */
+    private void compose(int i) {
+        int node = i * _n, left = 2 * i * _n, right = left + _n;
+        for (int p = 0; p < _n; p += 1) {
+            _tree[node + p] = _tree[left + _tree[right + p]];
+        }
+    }
+
+    /** Store the forward substitution of slot K at its current setting
+     *  in DEST[START .. START + alphabet size - 1]. */
+    private void leaf(int k, int[] dest, int start) {
+        int[] forward = _machine.forward(k);
+        int s = _machine.setting(k);
+        for (int p = 0; p < _n; p += 1) {
+            int q = forward[p + s] - s;
+            dest[start + p] = q < 0 ? q + _n : q;
+        }
+    }
+
+    /** Drives the stepping of the rotors. */
+    private final Machine _machine;
+    /** Size of the alphabet. */
+    private final int _n;
+    /** The plugboard, as a table. */
+    private final int[] _plugboard;
+    /** The reflector's substitution. */
+    private final int[] _reflector;
+    /** Number of leaves of the tree, a power of two; slot K, for K > 0, is
+     *  at leaf K - 1, and leaves beyond the last slot are identities. */
+    private final int _leaves;
+    /** The tree, with node I, whose children are nodes 2I and 2I + 1, at
+     *  I * _n; node 1 is the root, and the leaves follow the interior
+     *  nodes. */
+    private final int[] _tree;
+    /** The inverse of the root substitution. */
+    private final int[] _inverse;
+    /** Receives the slots moved by each step. */
+    private final int[] _moved;
+}
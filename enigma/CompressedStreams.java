@@ -0,0 +1,55 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+
+/** Transparent decompression of input and optional compression of output.
+ *  Input compressed as blocked gzip (BGZF) is decompressed on several
+ *  threads; other gzip input, including files of several concatenated
+ *  members, is decompressed as it is read; anything else is passed through
+ *  unchanged.  Output is compressed as BGZF when its name ends in ".gz".
+ *  @author Oumar Balde
+ */
+class CompressedStreams {
+
+    /** Not instantiable. */
+    private CompressedStreams() {
+    }
+
+    /** Size of the buffers used for compressed data. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Return a stream of the decompressed contents of IN, or of IN
+     *  itself if it is not compressed.  Only the first byte is awaited
+     *  unless it begins a gzip header, so that uncompressed input
+     *  arriving a line at a time is not held up. */
+    static InputStream input(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+        byte[] header = new byte[BlockGzipInputStream.HEADER_SIZE];
+        buffered.mark(header.length);
+        int n = Math.max(0, buffered.read(header, 0, 1));
+        if (n == 1 && (header[0] & 0xff) == BlockGzipInputStream.ID1) {
+            n += buffered.readNBytes(header, 1, header.length - 1);
+        }
+        buffered.reset();
+        if (n >= 2 && (header[0] & 0xff) == BlockGzipInputStream.ID1
+            && (header[1] & 0xff) == BlockGzipInputStream.ID2) {
+            if (n == header.length && BlockGzipInputStream.isBlocked(header)) {
+                return new BlockGzipInputStream(
+                    buffered, Runtime.getRuntime().availableProcessors());
+            }
+            return new GZIPInputStream(buffered, BUFFER_SIZE);
+        }
+        return buffered;
+    }
+
+    /** Return OUT, compressed if NAME, the name of its destination, ends in
+     *  ".gz". */
+    static OutputStream output(OutputStream out, String name) {
+        return name.endsWith(".gz") ? new BlockGzipOutputStream(out) : out;
+    }
+
+}
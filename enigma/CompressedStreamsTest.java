@@ -0,0 +1,115 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for CompressedStreams and the blocked gzip
+ *  streams.
+ *  @author Oumar Balde
+ */
+public class CompressedStreamsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return LEN bytes of message-like text. */
+    private static byte[] text(int len) {
+        Random random = new Random(37);
+        byte[] result = new byte[len];
+        for (int i = 0; i < len; i += 1) {
+            result[i] = i % 61 == 60 ? (byte) '\n'
+                : (byte) ('A' + random.nextInt(26));
+        }
+        return result;
+    }
+
+    /** Return DATA compressed as BGZF. */
+    private static byte[] blocked(byte[] data) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (OutputStream out = CompressedStreams.output(result, "x.gz")) {
+            out.write(data, 0, 1000);
+            out.write(data[1000]);
+            out.write(data, 1001, data.length - 1001);
+        }
+        return result.toByteArray();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testBlockedRoundTrip() throws IOException {
+        byte[] data = text(1 << 20);
+        byte[] compressed = blocked(data);
+        assertTrue(compressed.length < data.length);
+        InputStream in =
+            CompressedStreams.input(new ByteArrayInputStream(compressed));
+        assertTrue(in instanceof BlockGzipInputStream);
+        assertArrayEquals(data, in.readAllBytes());
+        in.close();
+        assertArrayEquals(data, new GZIPInputStream(
+            new ByteArrayInputStream(compressed)).readAllBytes());
+    }
+
+    @Test
+    public void testMultiMemberGzip() throws IOException {
+        byte[] data = text(100000);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        for (int start = 0; start < data.length; start += 30000) {
+            GZIPOutputStream member = new GZIPOutputStream(compressed);
+            member.write(data, start, Math.min(30000, data.length - start));
+            member.finish();
+        }
+        InputStream in = CompressedStreams.input(
+            new ByteArrayInputStream(compressed.toByteArray()));
+        assertArrayEquals(data, in.readAllBytes());
+    }
+
+    @Test
+    public void testPlainAndCorrupt() throws IOException {
+        byte[] data = text(5000);
+        assertArrayEquals(data, CompressedStreams.input(
+            new ByteArrayInputStream(data)).readAllBytes());
+        assertSame(System.out, CompressedStreams.output(System.out, "x.txt"));
+
+        byte[] compressed = blocked(data);
+        compressed[40] ^= 1;
+        try {
+            CompressedStreams.input(new ByteArrayInputStream(compressed))
+                .readAllBytes();
+            fail("corruption not detected");
+        } catch (IOException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void testShortFirstLine() throws IOException {
+        PipedOutputStream writer = new PipedOutputStream();
+        PipedInputStream pipe = new PipedInputStream(writer);
+        writer.write("* B\n".getBytes());
+        writer.flush();
+        InputStream in = CompressedStreams.input(pipe);
+        byte[] line = new byte[4];
+        assertEquals(4, in.read(line));
+        assertEquals("* B\n", new String(line));
+        writer.close();
+        assertEquals(-1, in.read());
+    }
+
+}
@@ -0,0 +1,204 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static enigma.EnigmaException.*;
+
+/** The active configuration of a long-running process, which can be
+ *  replaced while the process runs.  The configuration is held as an
+ *  immutable Snapshot behind an atomic reference: current() is a single
+ *  volatile read, and a conversion that has taken a snapshot (or a machine
+ *  from one) keeps using it to the end, while those starting after a swap
+ *  get the new one.  Old snapshots are simply dropped when no longer used.
+ *
+ *  A reload reads, builds and checks the new configuration on a
+ *  background thread, and swaps it in only if that succeeds; otherwise
+ *  the active configuration is unchanged and the reload completes with
+ *  the error.  Optionally, a watcher thread reloads the configuration
+ *  file whenever it changes.
+ *  @author Oumar Balde
+ */
+class ConfigRegistry implements AutoCloseable {
+
+    /** An immutable configuration: the machine of a configuration file,
+     *  with its rotor tables built, from which machines are copied. */
+    static final class Snapshot {
+
+        /** A snapshot of TEMPLATE, which is version VERSION of the
+         *  configuration in FILE. */
+        private Snapshot(Machine template, long version, File file) {
+            _template = template;
+            _version = version;
+            _file = file;
+        }
+
+        /** Return a new machine of this configuration, sharing its tables
+         *  (see Machine.copy), but otherwise independent of it. */
+        Machine machine() {
+            return _template.copy();
+        }
+
+        /** Return a new machine of this configuration set up according to
+         *  SETTING. */
+        Machine machine(String setting) {
+            Machine result = machine();
+            Main.setUp(result, setting);
+            return result;
+        }
+
+        /** Return my version: 1 for the first configuration loaded, and
+         *  one more for each one swapped in after it. */
+        long version() {
+            return _version;
+        }
+
+        /** Return the file I was read from. */
+        File file() {
+            return _file;
+        }
+
+        /** The machine copied by machine(), never itself converting. */
+        private final Machine _template;
+        /** My version. */
+        private final long _version;
+        /** My file. */
+        private final File _file;
+    }
+
+    /** A registry whose active configuration is read from FILE.  It is an
+     *  error for FILE not to hold a valid configuration. */
+    ConfigRegistry(File file) {
+        _file = file;
+        _active = new AtomicReference<>(new Snapshot(load(file), 1, file));
+        _loader = Executors.newSingleThreadExecutor((task) -> {
+            Thread thread = new Thread(task, "enigma-config-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** Return the active configuration. */
+    Snapshot current() {
+        return _active.get();
+    }
+
+    /** Start reloading my configuration file on a background thread,
+     *  returning the outcome: the new snapshot once it is active, or the
+     *  reason it was rejected. */
+    CompletableFuture<Snapshot> reload() {
+        return CompletableFuture.supplyAsync(() -> {
+            Machine machine = load(_file);
+            Snapshot old, next;
+            do {
+                old = _active.get();
+                next = new Snapshot(machine, old.version() + 1, _file);
+            } while (!_active.compareAndSet(old, next));
+            return next;
+        }, _loader);
+    }
+
+    /** Watch my configuration file, reloading it whenever it is written,
+     *  and passing the outcome of each reload to LISTENER. */
+    void watch(Listener listener) throws IOException {
+        Path file = _file.getAbsoluteFile().toPath();
+        Path dir = file.getParent();
+        WatchService watcher = FileSystems.getDefault().newWatchService();
+        dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                     StandardWatchEventKinds.ENTRY_MODIFY);
+        Thread thread = new Thread(() -> {
+            try {
+                while (true) {
+                    WatchKey key = watcher.take();
+                    boolean changed = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        changed |= file.getFileName().equals(event.context());
+                    }
+                    if (changed) {
+                        reload().whenComplete(listener::reloaded);
+                    }
+                    if (!key.reset()) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                /* Closed: stop watching. */
+            }
+        }, "enigma-config-watcher");
+        thread.setDaemon(true);
+        synchronized (this) {
+            if (_watcher != null) {
+                watcher.close();
+                throw error("already watching %s", _file);
+            }
+            _watcher = watcher;
+        }
+        thread.start();
+    }
+
+    /** Receives the outcomes of reloads triggered by watch(). */
+    interface Listener {
+        /** Called after a reload that made SNAPSHOT active, with EXCP
+         *  null, or that failed with EXCP, with SNAPSHOT null. */
+        void reloaded(Snapshot snapshot, Throwable excp);
+    }
+
+    /** Stop watching my file and loading configurations.  Snapshots
+     *  already taken remain usable. */
+    @Override
+    public void close() {
+        _loader.shutdown();
+        synchronized (this) {
+            if (_watcher != null) {
+                try {
+                    _watcher.close();
+                } catch (IOException excp) {
+                    /* Ignore. */
+                }
+                _watcher = null;
+            }
+        }
+    }
+
+    /** Return the machine described by the configuration file FILE, after
+     *  checking that it can be set up and that it converts text back to
+     *  itself under some key. */
+    static Machine load(File file) {
+        Machine result;
+        try (Scanner config = Main.getInput(file.getPath())) {
+            result = Main.readConfig(config);
+        }
+        KeySheet sheet = new KeySheet(result, 0, false);
+        String setting = sheet.describe(sheet.generate(1, 0, 1), 0);
+        Machine machine = result.copy();
+        Main.setUp(machine, setting);
+        String text = result.alphabet().chars().repeat(2);
+        String converted = machine.convert(text);
+        Main.setUp(machine, setting);
+        if (!machine.convert(converted).equals(text)) {
+            throw error("%s: machine does not invert its conversion", file);
+        }
+        return result;
+    }
+
+    /** The configuration file. */
+    private final File _file;
+    /** The active configuration. */
+    private final AtomicReference<Snapshot> _active;
+    /** Runs reloads. */
+    private final ExecutorService _loader;
+    /** Watches _file, if watch() was called and close() was not. */
+    private WatchService _watcher;
+}
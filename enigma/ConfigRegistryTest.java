@@ -0,0 +1,147 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ConfigRegistry class.
+ *  @author Oumar Balde
+ */
+public class ConfigRegistryTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Setting line used throughout. */
+    private static final String SETTING =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** Return the text of the naval configuration, without rotor VI
+     *  unless EXTRA. */
+    private static String config(boolean extra) {
+        String config = navalConfig();
+        return extra ? config : config.replaceFirst("(?m)^VI .*\n", "");
+    }
+
+    /** Replace the contents of FILE by TEXT. */
+    private static void write(File file, String text) throws IOException {
+        Files.write(file.toPath(), text.getBytes());
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testReload() throws Exception {
+        File file = tempFile(config(false));
+        try (ConfigRegistry registry = new ConfigRegistry(file)) {
+            ConfigRegistry.Snapshot first = registry.current();
+            assertEquals(1, first.version());
+            Machine old = first.machine(SETTING);
+            write(file, config(true));
+            ConfigRegistry.Snapshot second = registry.reload().get();
+            assertEquals(2, second.version());
+            assertSame(second, registry.current());
+            assertTrue(second.machine().hasRotor("VI"));
+            assertFalse(first.machine().hasRotor("VI"));
+            Machine reference = navalMachine();
+            Main.setUp(reference, SETTING);
+            String expected = reference.convert("HELLOWORLD");
+            assertEquals(expected.substring(0, 5), old.convert("HELLO"));
+            assertEquals(expected.substring(5), old.convert("WORLD"));
+            assertEquals(expected,
+                         second.machine(SETTING).convert("HELLOWORLD"));
+        }
+    }
+
+    @Test
+    public void testBadReloadIsRejected() throws Exception {
+        File file = tempFile(config(false));
+        try (ConfigRegistry registry = new ConfigRegistry(file)) {
+            ConfigRegistry.Snapshot first = registry.current();
+            write(file, config(false).replace(" R ", " N "));
+            try {
+                registry.reload().get();
+                fail("configuration without a reflector accepted");
+            } catch (ExecutionException excp) {
+                assertTrue(excp.getCause() instanceof EnigmaException);
+            }
+            write(file, "ABC\n5");
+            try {
+                registry.reload().get();
+                fail("truncated configuration accepted");
+            } catch (ExecutionException excp) {
+                assertTrue(excp.getCause() instanceof EnigmaException);
+            }
+            assertSame(first, registry.current());
+        }
+    }
+
+    @Test
+    public void testConvertDuringReloads() throws Exception {
+        File file = tempFile(config(false));
+        Machine reference = navalMachine();
+        Main.setUp(reference, SETTING);
+        String expected = reference.convert(UPPER_STRING);
+        try (ConfigRegistry registry = new ConfigRegistry(file)) {
+            AtomicBoolean done = new AtomicBoolean();
+            AtomicReference<String> wrong = new AtomicReference<>();
+            ArrayList<Thread> readers = new ArrayList<>();
+            for (int t = 0; t < 3; t += 1) {
+                Thread reader = new Thread(() -> {
+                    while (!done.get()) {
+                        String got = registry.current().machine(SETTING)
+                            .convert(UPPER_STRING);
+                        if (!got.equals(expected)) {
+                            wrong.set(got);
+                        }
+                    }
+                });
+                reader.start();
+                readers.add(reader);
+            }
+            for (int i = 0; i < 20; i += 1) {
+                write(file, config(i % 2 == 0));
+                registry.reload().get();
+            }
+            done.set(true);
+            for (Thread reader : readers) {
+                reader.join();
+            }
+            assertNull(wrong.get());
+            assertEquals(21, registry.current().version());
+        }
+    }
+
+    @Test
+    public void testWatch() throws Exception {
+        File file = tempFile(config(false));
+        try (ConfigRegistry registry = new ConfigRegistry(file)) {
+            CountDownLatch reloaded = new CountDownLatch(1);
+            registry.watch((snapshot, excp) -> {
+                if (snapshot != null && snapshot.machine().hasRotor("VI")) {
+                    reloaded.countDown();
+                }
+            });
+            write(file, config(true));
+            assertTrue(reloaded.await(10, TimeUnit.SECONDS));
+            assertTrue(registry.current().machine().hasRotor("VI"));
+        }
+    }
+
+}
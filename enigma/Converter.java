@@ -0,0 +1,43 @@
+package enigma;
+
+/** A stepping substitution on alphabet indices that behaves exactly like
+ *  a configured Machine from the state it was created in.
+ *  @author Oumar Balde
+ */
+abstract class Converter {
+
+    /** Advance my rotors, then return the conversion of the character
+     *  C (an index in the range 0..alphabet size - 1). */
+    abstract int convert(int c);
+
+    /** Return the current setting of rotor slot K, where 0 is the
+     *  reflector, as an index in the range 0..alphabet size - 1. */
+    abstract int setting(int k);
+
+    /** Advance my rotors as N conversions would, without converting. */
+    void skip(long n) {
+        for (long i = 0; i < n; i += 1) {
+            convert(0);
+        }
+    }
+
+    /** Returns the encoding/decoding of MSG, whose characters are in
+     *  ALPHA or are passed through unchanged. */
+    String convert(Alphabet alpha, String msg) {
+        char[] result = msg.toCharArray();
+        convert(alpha, result, 0, result.length);
+        return new String(result);
+    }
+
+    /** Replace the characters BUF[START .. END-1] that are in ALPHA by
+     *  their encoding/decoding, leaving other characters as they are. */
+    void convert(Alphabet alpha, char[] buf, int start, int end) {
+        for (int i = start; i < end; i += 1) {
+            int letter = alpha.toInt(buf[i]);
+            if (letter != -1) {
+                buf[i] = alpha.toChar(convert(letter));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,309 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** A catalog of the characteristics of the keys matched by a template
+ *  setting line (see KeySpace), after Rejewski.  When message keys of L
+ *  letters (one per non-reflector rotor) are sent doubled under one
+ *  ground setting, the conversions E(J) at positions J and J + L from it
+ *  combine into the permutations E(J + L) E(J), for J < L, which take the
+ *  Jth letter of each encrypted indicator to its (J + L)th letter, and
+ *  which can therefore be read off a day's indicators.  The lengths of
+ *  their cycles, the characteristic, do not depend on the plugboard, and
+ *  narrow the rotors and ground setting to a few candidates.
+ *
+ *  With --build, the characteristic of every key is computed, on several
+ *  threads, and the keys are indexed by it in a file (see CatalogIndex).
+ *  Otherwise, the characteristic of a file of indicators is looked up in
+ *  such an index and the matching keys printed.
+ *  @author Oumar Balde
+ */
+public class CycleCatalog {
+
+    /** Number of keys handed to a thread at a time while building. */
+    static final int CHUNK = 1 << 12;
+
+    /** Largest number of keys catalogued. */
+    static final long MAX_KEYS = 1 << 24;
+
+    /** Build or query a catalog as specified by ARGS, which are either
+     *      --build [--threads=N] CONFIG TEMPLATE INDEX
+     *  to catalog the keys of TEMPLATE for the rotors of configuration
+     *  file CONFIG in file INDEX, or
+     *      CONFIG INDEX INDICATORS
+     *  to print the keys in INDEX whose characteristic is that of the
+     *  doubled indicators in file INDICATORS.  Exits with code 1 on
+     *  errors. */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--build --threads=(\\d+) --=(.*){3}", args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.CycleCatalog --build "
+                            + "[--threads=N] CONFIG TEMPLATE INDEX, or "
+                            + "java enigma.CycleCatalog CONFIG INDEX "
+                            + "INDICATORS");
+            }
+            List<String> files = options.get("--");
+            Machine machine;
+            try (Scanner config = Main.getInput(files.get(0))) {
+                machine = Main.readConfig(config);
+            }
+            if (options.contains("--build")) {
+                int threads = options.contains("--threads")
+                    ? Integer.parseInt(options.getFirst("--threads"))
+                    : Runtime.getRuntime().availableProcessors();
+                build(machine, files.get(1), new File(files.get(2)),
+                      threads);
+                return;
+            }
+            CatalogIndex index = index(new File(files.get(1)));
+            int[][] characteristic =
+                characteristic(indicators(files.get(2)), machine.alphabet(),
+                               machine.numRotors() - 1);
+            System.out.printf("characteristic %s%n", describe(characteristic));
+            for (String key : query(machine, index, characteristic)) {
+                System.out.println(key);
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Catalog in the file INDEX the keys of TEMPLATE for the rotors
+     *  available to M, using THREADS threads. */
+    static void build(Machine M, String template, File index, int threads) {
+        try {
+            CatalogIndex.write(index, ResultCache.configId(M), template,
+                               signatures(M, template, threads));
+        } catch (IOException excp) {
+            throw error("could not write %s: %s", index, excp.getMessage());
+        }
+    }
+
+    /** Return the signatures of the characteristics of the keys of
+     *  TEMPLATE for the rotors available to M, by key number, computed on
+     *  THREADS threads. */
+    static long[] signatures(Machine M, String template, int threads) {
+        long size = new KeySpace(M, template).size();
+        if (size > MAX_KEYS) {
+            throw error("%d keys is too many to catalog", size);
+        }
+        long[] result = new long[(int) size];
+        AtomicLong next = new AtomicLong();
+        ArrayList<Callable<Void>> tasks = new ArrayList<>();
+        for (int t = 0; t < threads; t += 1) {
+            tasks.add(() -> {
+                Machine machine = M.copy();
+                KeySpace space = new KeySpace(machine, template);
+                int[][] prefix =
+                    new int[2 * (M.numRotors() - 1)][M.alphabet().size()];
+                for (long start = next.getAndAdd(CHUNK); start < size;
+                     start = next.getAndAdd(CHUNK)) {
+                    long end = Math.min(size, start + CHUNK);
+                    for (long k = start; k < end; k += 1) {
+                        space.set(machine, k);
+                        IndicatorBatch.prefix(machine, prefix);
+                        result[(int) k] = signature(characteristic(prefix));
+                    }
+                }
+                return null;
+            });
+        }
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        try {
+            for (Future<Void> task : workers.invokeAll(tasks)) {
+                task.get();
+            }
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof EnigmaException) {
+                throw (EnigmaException) excp.getCause();
+            }
+            throw error("internal error: %s", excp.getCause());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } finally {
+            workers.shutdown();
+        }
+        return result;
+    }
+
+    /** Return the setting lines of the keys in INDEX, for the rotors
+     *  available to M, whose characteristic is CHARACTERISTIC.  INDEX
+     *  must have been built for M's configuration. */
+    static List<String> query(Machine M, CatalogIndex index,
+                              int[][] characteristic) {
+        if (!index.config().equals(ResultCache.configId(M))) {
+            throw error("catalog index was built for another "
+                        + "configuration");
+        }
+        Machine machine = M.copy();
+        KeySpace space = new KeySpace(machine, index.template());
+        int[][] prefix =
+            new int[2 * (M.numRotors() - 1)][M.alphabet().size()];
+        ArrayList<String> result = new ArrayList<>();
+        for (int k : index.lookup(signature(characteristic))) {
+            space.set(machine, k);
+            IndicatorBatch.prefix(machine, prefix);
+            if (Arrays.deepEquals(characteristic, characteristic(prefix))) {
+                result.add(space.describe(k));
+            }
+        }
+        return result;
+    }
+
+    /** Return the characteristic of the conversions PREFIX, as returned
+     *  by IndicatorBatch.prefix: for each J less than half their number,
+     *  the lengths of the cycles of PREFIX[J + L] applied after PREFIX[J],
+     *  where L is half their number, longest first. */
+    static int[][] characteristic(int[][] prefix) {
+        int keyLength = prefix.length / 2;
+        int n = prefix[0].length;
+        int[][] result = new int[keyLength][];
+        int[] perm = new int[n];
+        for (int j = 0; j < keyLength; j += 1) {
+            for (int c = 0; c < n; c += 1) {
+                perm[c] = prefix[j + keyLength][prefix[j][c]];
+            }
+            result[j] = cycleLengths(perm);
+        }
+        return result;
+    }
+
+    /** Return the characteristic of the doubled INDICATORS, each of
+     *  2 * KEYLENGTH letters in ALPHA, as for characteristic(int[][]).  It
+     *  is an error for the indicators to be inconsistent or not to
+     *  determine every permutation completely. */
+    static int[][] characteristic(List<String> indicators, Alphabet alpha,
+                                  int keyLength) {
+        int n = alpha.size();
+        int[][] result = new int[keyLength][];
+        for (int j = 0; j < keyLength; j += 1) {
+            int[] perm = new int[n];
+            Arrays.fill(perm, -1);
+            for (String indicator : indicators) {
+                if (indicator.length() != 2 * keyLength) {
+                    throw error("indicator %s must have %d letters",
+                                indicator, 2 * keyLength);
+                }
+                int from = alpha.toInt(indicator.charAt(j));
+                int to = alpha.toInt(indicator.charAt(j + keyLength));
+                if (from == -1 || to == -1) {
+                    throw error("indicator %s not in alphabet", indicator);
+                }
+                if (perm[from] != -1 && perm[from] != to) {
+                    throw error("indicator %s is inconsistent with the "
+                                + "others", indicator);
+                }
+                perm[from] = to;
+            }
+            boolean[] hit = new boolean[n];
+            for (int c = 0; c < n; c += 1) {
+                if (perm[c] == -1) {
+                    throw error("no indicator has %c in position %d",
+                                alpha.toChar(c), j + 1);
+                }
+                if (hit[perm[c]]) {
+                    throw error("indicators do not form a permutation at "
+                                + "position %d", j + 1);
+                }
+                hit[perm[c]] = true;
+            }
+            result[j] = cycleLengths(perm);
+        }
+        return result;
+    }
+
+    /** Return the lengths of the cycles of PERM, longest first. */
+    private static int[] cycleLengths(int[] perm) {
+        boolean[] seen = new boolean[perm.length];
+        int[] result = new int[perm.length];
+        int count = 0;
+        for (int c = 0; c < perm.length; c += 1) {
+            int len = 0;
+            for (int p = c; !seen[p]; p = perm[p]) {
+                seen[p] = true;
+                len += 1;
+            }
+            if (len > 0) {
+                result[count] = -len;
+                count += 1;
+            }
+        }
+        result = Arrays.copyOf(result, count);
+        Arrays.sort(result);
+        for (int i = 0; i < count; i += 1) {
+            result[i] = -result[i];
+        }
+        return result;
+    }
+
+    /** Return a 64-bit hash of CHARACTERISTIC. */
+    static long signature(int[][] characteristic) {
+        long h = 0xcbf29ce484222325L;
+        for (int[] lengths : characteristic) {
+            for (int len : lengths) {
+                h = (h ^ len) * 0x100000001b3L;
+            }
+            h = (h ^ 0xff) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        return h ^ (h >>> 33);
+    }
+
+    /** Return CHARACTERISTIC in readable form: the cycle lengths of each
+     *  permutation, separated by slashes. */
+    static String describe(int[][] characteristic) {
+        StringBuilder result = new StringBuilder();
+        for (int[] lengths : characteristic) {
+            if (result.length() > 0) {
+                result.append(" / ");
+            }
+            for (int i = 0; i < lengths.length; i += 1) {
+                result.append(i == 0 ? "" : " ").append(lengths[i]);
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the index in FILE. */
+    private static CatalogIndex index(File file) {
+        try {
+            return new CatalogIndex(file);
+        } catch (IOException excp) {
+            throw error("could not read %s: %s", file, excp.getMessage());
+        }
+    }
+
+    /** Return the blank-separated words of the file named NAME. */
+    private static List<String> indicators(String name) {
+        try {
+            String text = new String(Files.readAllBytes(Paths.get(name)));
+            return Arrays.asList(text.trim().split("\\s+"));
+        } catch (IOException excp) {
+            throw error("could not read %s", name);
+        }
+    }
+
+}
@@ -0,0 +1,143 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for CycleCatalog and CatalogIndex.
+ *  @author Oumar Balde
+ */
+public class CycleCatalogTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Template of the keys catalogued. */
+    private static final String TEMPLATE = "* B Beta I II ? AA??";
+
+    /** The day's key, which is in the key space of TEMPLATE. */
+    private static final String GROUND = "* B Beta I II VII AAQX (TD) (KC)";
+
+    /** Return the doubled indicators of message keys AAAA, BBBB, ... at the
+     *  ground setting, which determine the characteristic. */
+    private static List<String> indicators() {
+        ArrayList<String> result = new ArrayList<>();
+        for (int c = 0; c < UPPER.size(); c += 1) {
+            Machine mach = navalMachine();
+            Main.setUp(mach, GROUND);
+            String key = String.valueOf(UPPER.toChar(c)).repeat(4);
+            result.add(mach.convert(key + key));
+        }
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testCharacteristicMatchesMachine() {
+        Machine mach = navalMachine();
+        Main.setUp(mach, GROUND);
+        int[][] expected =
+            CycleCatalog.characteristic(IndicatorBatch.prefix(mach));
+        int[][] found =
+            CycleCatalog.characteristic(indicators(), UPPER, 4);
+        assertTrue(Arrays.deepEquals(expected, found));
+        for (int[] lengths : found) {
+            assertEquals(26, Arrays.stream(lengths).sum());
+        }
+    }
+
+    @Test
+    public void testBuildAndQuery() throws IOException {
+        File file = File.createTempFile("catalog", ".idx");
+        file.deleteOnExit();
+        Machine mach = navalMachine();
+        CycleCatalog.build(mach, TEMPLATE, file, 2);
+        CatalogIndex index = new CatalogIndex(file);
+        assertEquals(TEMPLATE, index.template());
+        assertEquals(6 * 26 * 26, index.size());
+        List<String> found = CycleCatalog.query(
+            mach, index, CycleCatalog.characteristic(indicators(), UPPER, 4));
+        assertTrue(found.contains("* B Beta I II VII AAQX"));
+        assertTrue(found.size() < 50);
+        assertEquals(0, index.lookup(12345).length);
+    }
+
+    @Test
+    public void testQueryNeedsSameConfig() throws IOException {
+        File file = File.createTempFile("catalog", ".idx");
+        file.deleteOnExit();
+        CycleCatalog.build(navalMachine(), TEMPLATE, file, 2);
+        CatalogIndex index = new CatalogIndex(file);
+        ArrayList<Rotor> rotors = navalRotors();
+        rotors.replaceAll((r) -> !r.name().equals("III") ? r
+                          : new MovingRotor("III", new Permutation(
+                                  NAVALA.get("IV"), UPPER), "V"));
+        try {
+            CycleCatalog.query(new Machine(UPPER, 5, 3, rotors), index,
+                               CycleCatalog.characteristic(indicators(),
+                                                           UPPER, 4));
+            fail("index for another configuration queried");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void testCorruptIndex() throws IOException {
+        File file = File.createTempFile("catalog", ".idx");
+        file.deleteOnExit();
+        CycleCatalog.build(navalMachine(), TEMPLATE, file, 2);
+        byte[] data = Files.readAllBytes(file.toPath());
+        ByteBuffer.wrap(data).putInt(4, Integer.MAX_VALUE);
+        Files.write(file.toPath(), data);
+        try {
+            new CatalogIndex(file);
+            fail("bad name length accepted");
+        } catch (IOException excp) {
+            assertEquals("corrupt catalog index", excp.getMessage());
+        }
+        Files.write(file.toPath(), Arrays.copyOf(data, 10));
+        try {
+            new CatalogIndex(file);
+            fail("truncated index accepted");
+        } catch (IOException excp) {
+            assertEquals("corrupt catalog index", excp.getMessage());
+        }
+    }
+
+    @Test
+    public void testBadIndicators() {
+        List<String> indicators = new ArrayList<>(indicators());
+        indicators.remove(3);
+        try {
+            CycleCatalog.characteristic(indicators, UPPER, 4);
+            fail("incomplete indicators accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        indicators.add("ABCDEFGH");
+        indicators.add("ABCDXFGH");
+        try {
+            CycleCatalog.characteristic(indicators, UPPER, 4);
+            fail("inconsistent indicators accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+}
@@ -0,0 +1,202 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** Converts messages sent in depth: every message line is converted
+ *  starting from the state given by the most recent setting line, rather
+ *  than continuing from the end of the previous message.  Since all the
+ *  messages of a batch see the same sequence of rotor states, the machine
+ *  is stepped once per position rather than once per character.  The
+ *  letters of a batch are stored transposed, so that the letters at each
+ *  position of every message lie together, and each position is converted
+ *  by one substitution table, built by stepping the machine once.  Output
+ *  is written in input order, in groups of five.
+ *  @author Oumar Balde
+ */
+class DepthBatch {
+
+    /** Maximum number of messages converted together. */
+    static final int BATCH = 1 << 14;
+
+    /** A batch reading from INPUT and writing converted messages to
+     *  OUTPUT.  Setting lines are applied to MACHINE. */
+    DepthBatch(Lexer input, Machine machine, Writer output) {
+        _input = input;
+        _machine = machine;
+        _output = output;
+    }
+
+    /** Process all input. */
+    void run() {
+        boolean configured = false;
+        try {
+            while (_input.next()) {
+                if (_input.isSetting()) {
+                    convertBatch();
+                    Main.setUp(_machine, _input);
+                    configured = true;
+                } else if (!configured) {
+                    throw _input.error(0, "message without a configuration");
+                } else {
+                    add(_input.buffer(), _input.start(), _input.end());
+                    if (_letters.size() == BATCH) {
+                        convertBatch();
+                    }
+                }
+            }
+            convertBatch();
+        } finally {
+            try {
+                _output.flush();
+            } catch (IOException excp) {
+                throw error("could not write output: %s", excp.getMessage());
+            }
+        }
+    }
+
+    /** Add the message in BUF[START .. END-1] to the current batch. */
+    private void add(char[] buf, int start, int end) {
+        Alphabet alpha = _machine.alphabet();
+        char[] text = new char[end - start];
+        int len = Main.stripBlanks(buf, start, end, text);
+        char[] letters = new char[len];
+        int count = 0;
+        for (int i = 0; i < len; i += 1) {
+            int letter = alpha.toInt(text[i]);
+            if (letter != -1) {
+                letters[count] = (char) letter;
+                count += 1;
+            }
+        }
+        _letters.add(Arrays.copyOf(letters, count));
+        _texts.add(count == len ? null : new String(text, 0, len));
+    }
+
+    /** Convert the messages of the current batch from the current state
+     *  of _machine, which is left unchanged, write them and empty the
+     *  batch. */
+    private void convertBatch() {
+        int count = _letters.size();
+        if (count == 0) {
+            return;
+        }
+        int longest = 0;
+        for (char[] letters : _letters) {
+            longest = Math.max(longest, letters.length);
+        }
+
+        Integer[] order = new Integer[count];
+        for (int m = 0; m < count; m += 1) {
+            order[m] = m;
+        }
+        Arrays.sort(order,
+                    (a, b) -> _letters.get(b).length - _letters.get(a).length);
+
+        int[] deeper = new int[longest + 1];
+        for (char[] letters : _letters) {
+            deeper[letters.length] += 1;
+        }
+        for (int k = longest - 1; k >= 0; k -= 1) {
+            deeper[k] += deeper[k + 1];
+        }
+        int[] offsets = new int[longest + 1];
+        for (int k = 0; k < longest; k += 1) {
+            offsets[k + 1] = offsets[k] + deeper[k + 1];
+        }
+
+        char[] columns = new char[offsets[longest]];
+        for (int r = 0; r < count; r += 1) {
+            char[] letters = _letters.get(order[r]);
+            for (int k = 0; k < letters.length; k += 1) {
+                columns[offsets[k] + r] = letters[k];
+            }
+        }
+        convertColumns(columns, offsets);
+        for (int r = 0; r < count; r += 1) {
+            char[] letters = _letters.get(order[r]);
+            for (int k = 0; k < letters.length; k += 1) {
+                letters[k] = columns[offsets[k] + r];
+            }
+        }
+
+        write();
+        _letters.clear();
+        _texts.clear();
+    }
+
+    /** Convert COLUMNS, in which the letters at position K of the messages
+     *  of the batch are COLUMNS[OFFSETS[K] .. OFFSETS[K+1]-1], stepping a
+     *  copy of _machine once per position. */
+    private void convertColumns(char[] columns, int[] offsets) {
+        Machine state = _machine.copy();
+        int n = _machine.alphabet().size();
+        int[] table = new int[n];
+        for (int k = 0; k + 1 < offsets.length; k += 1) {
+            state.advance();
+            int start = offsets[k], end = offsets[k + 1];
+            if (end - start < n) {
+                for (int i = start; i < end; i += 1) {
+                    columns[i] = (char) state.map(columns[i]);
+                }
+            } else {
+                for (int c = 0; c < n; c += 1) {
+                    table[c] = state.map(c);
+                }
+                for (int i = start; i < end; i += 1) {
+                    columns[i] = (char) table[columns[i]];
+                }
+            }
+        }
+    }
+
+    /** Write the converted messages of the batch, in groups of five, in
+     *  input order. */
+    private void write() {
+        Alphabet alpha = _machine.alphabet();
+        char[] msg = new char[0], grouped = new char[0];
+        try {
+            for (int m = 0; m < _letters.size(); m += 1) {
+                char[] letters = _letters.get(m);
+                String text = _texts.get(m);
+                int len = text == null ? letters.length : text.length();
+                if (msg.length < len) {
+                    msg = new char[len];
+                    grouped = new char[len + len / Main.GROUP];
+                }
+                for (int i = 0, k = 0; i < len; i += 1) {
+                    if (text != null && alpha.toInt(text.charAt(i)) == -1) {
+                        msg[i] = text.charAt(i);
+                    } else {
+                        msg[i] = alpha.toChar(letters[k]);
+                        k += 1;
+                    }
+                }
+                _output.write(grouped, 0,
+                              Main.formatMessage(msg, len, grouped));
+                _output.write(System.lineSeparator());
+            }
+        } catch (IOException excp) {
+            throw error("could not write output: %s", excp.getMessage());
+        }
+    }
+
+    /** Source of lines. */
+    private final Lexer _input;
+    /** The machine to which setting lines are applied, left at the state
+     *  they give. */
+    private final Machine _machine;
+    /** Destination of converted messages. */
+    private final Writer _output;
+    /** The letters of each message of the current batch, in input
+     *  order, as indices in the alphabet. */
+    private final ArrayList<char[]> _letters = new ArrayList<>();
+    /** The text of each message of the current batch without blanks, if
+     *  it contains characters outside the alphabet, which are passed
+     *  through unconverted, or else null. */
+    private final ArrayList<String> _texts = new ArrayList<>();
+}
@@ -0,0 +1,88 @@
+package enigma;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the DepthBatch class.
+ *  @author Oumar Balde
+ */
+public class DepthBatchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Setting lines used throughout. */
+    private static final String[] SETTINGS = {
+        "* B Beta I II III AXLE BRZX (TD) (KC) (JZ)",
+        "* C Gamma VI IV V QDVZ (AQ) (EP)"
+    };
+
+    /** Return MSG converted from a fresh machine set by SETTING. */
+    private static String convert(String setting, String msg) {
+        Machine mach = navalMachine();
+        Main.setUp(mach, setting);
+        return mach.convert(msg.replace(" ", ""));
+    }
+
+    /** Return a random message of up to MAXLEN letters, in words, using
+     *  RANDOM. */
+    private static String message(Random random, int maxLen) {
+        StringBuilder result = new StringBuilder();
+        int len = random.nextInt(maxLen + 1);
+        for (int i = 0; i < len; i += 1) {
+            if (i % 7 == 6) {
+                result.append(' ');
+            }
+            result.append((char) ('A' + random.nextInt(26)));
+        }
+        return result.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testDepth() {
+        Random random = new Random(40);
+        StringBuilder input = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (String setting : SETTINGS) {
+            input.append(setting).append('\n');
+            for (int i = 0; i < 150; i += 1) {
+                String msg = i == 3 ? "HELLO 42 WORLD" : message(random, 90);
+                input.append(msg).append('\n');
+                expected.append(Main.formatMessage(convert(setting, msg)))
+                    .append('\n');
+            }
+        }
+        StringWriter output = new StringWriter();
+        new DepthBatch(new Lexer(new StringReader(input.toString())),
+                       navalMachine(), output).run();
+        assertEquals(expected.toString(),
+                     output.toString().replace(System.lineSeparator(),
+                                               "\n"));
+    }
+
+    @Test
+    public void testMessageWithoutSetting() {
+        StringWriter output = new StringWriter();
+        try {
+            new DepthBatch(new Lexer(new StringReader("HELLO\n")),
+                           navalMachine(), output).run();
+            fail("message without a configuration accepted");
+        } catch (EnigmaException excp) {
+            assertEquals("", output.toString());
+        }
+    }
+
+}
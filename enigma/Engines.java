@@ -0,0 +1,274 @@
+package enigma;
+
+import java.util.EnumMap;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Chooses how to run a configured Machine.  Four engines are available:
+ *  TABLES drives the machine's own wiring tables; COMPILED generates and
+ *  compiles a class specialized for its rotors (see MachineCompiler);
+ *  STATE looks up each character in a table covering every state of its
+ *  moving rotors (see StateTable); and COMPOSED keeps the composition of
+ *  its rotors up to date as they step (see ComposedRotors).  They differ
+ *  in setup cost, speed per character and memory, so the best depends on
+ *  the machine and on how much text it will convert.  choose() estimates
+ *  the total time of each engine from a simple cost model, optionally
+ *  calibrated by timing each engine on a short sample, and picks the
+ *  cheapest.
+ *  @author Oumar Balde
+ */
+class Engines {
+
+    /** Not instantiable. */
+    private Engines() {
+    }
+
+    /** The available engines. */
+    enum Engine {
+        TABLES, COMPILED, STATE, COMPOSED
+    }
+
+    /** Largest amount of memory, in bytes, that choose() will spend on
+     *  STATE tables. */
+    static final long STATE_MEMORY = 16 << 20;
+
+    /** Number of characters converted when calibrating an engine. */
+    static final int SAMPLE = 1 << 15;
+
+    /** The outcome of a choice: an engine, a Converter that uses it, and
+     *  the reason it was chosen. */
+    static class Choice {
+
+        /** A choice of ENGINE, giving CONVERTER, for REASON. */
+        Choice(Engine engine, Converter converter, String reason) {
+            _engine = engine;
+            _converter = converter;
+            _reason = reason;
+        }
+
+        /** Return the engine chosen. */
+        Engine engine() {
+            return _engine;
+        }
+
+        /** Return a Converter using engine(). */
+        Converter converter() {
+            return _converter;
+        }
+
+        /** Return why engine() was chosen. */
+        String reason() {
+            return _reason;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("engine %s: %s",
+                                 _engine.name().toLowerCase(), _reason);
+        }
+
+        /** The engine chosen. */
+        private final Engine _engine;
+        /** A Converter using _engine. */
+        private final Converter _converter;
+        /** Why _engine was chosen. */
+        private final String _reason;
+    }
+
+    /** Return the choice of ENGINE for M, in its current state, as
+     *  requested by the user.  Falls back to TABLES when ENGINE cannot
+     *  run M, or when tracing. */
+    static Choice use(Machine M, Engine engine) {
+        if (Main.verbose()) {
+            return tables(M, "tracing requires the machine's own tables");
+        }
+        if (!eligible(M, engine, Long.MAX_VALUE)) {
+            return tables(M, String.format("%s cannot run this machine",
+                                           engine.name().toLowerCase()));
+        }
+        return new Choice(engine, build(M, engine), "requested");
+    }
+
+    /** Return the engine expected to convert LENGTH characters with M,
+     *  starting from its current state, in the least total time, including
+     *  setup.  If CALIBRATE, first time each engine on this JVM (once per
+     *  alphabet size and number of rotors) rather than relying on built-in
+     *  estimates of its speed.  The cost of compiling a class is that
+     *  measured by MachineCompiler once it has compiled one. */
+    static Choice choose(Machine M, long length, boolean calibrate) {
+        if (Main.verbose()) {
+            return tables(M, "tracing requires the machine's own tables");
+        }
+        EnumMap<Engine, Double> perChar =
+            calibrate ? calibrated(M) : estimated(M);
+        Engine best = null;
+        double bestCost = 0;
+        StringBuilder costs = new StringBuilder();
+        for (Engine engine : Engine.values()) {
+            if (!eligible(M, engine, STATE_MEMORY)) {
+                continue;
+            }
+            double cost = setupCost(M, engine) + perChar.get(engine) * length;
+            if (costs.length() > 0) {
+                costs.append(", ");
+            }
+            costs.append(String.format("%s %.1f ms",
+                                       engine.name().toLowerCase(),
+                                       cost / 1e6));
+            if (best == null || cost < bestCost) {
+                best = engine;
+                bestCost = cost;
+            }
+        }
+        String reason = String.format("estimated for %d characters%s: %s",
+                                      length,
+                                      calibrate ? " (calibrated)" : "",
+                                      costs);
+        return new Choice(best, build(M, best), reason);
+    }
+
+    /** Return a choice of TABLES for M, for REASON. */
+    private static Choice tables(Machine M, String reason) {
+        return new Choice(Engine.TABLES, build(M, Engine.TABLES), reason);
+    }
+
+    /** Return true iff ENGINE can run M using at most MEMORY bytes of
+     *  tables of its own. */
+    private static boolean eligible(Machine M, Engine engine, long memory) {
+        switch (engine) {
+        case COMPILED:
+            return MachineCompiler.compilable(M);
+        case STATE:
+            long needed = StateTable.memory(M);
+            return needed != -1 && needed <= memory;
+        default:
+            return true;
+        }
+    }
+
+    /** Return a Converter for M, in its current state, using ENGINE. */
+    private static Converter build(Machine M, Engine engine) {
+        switch (engine) {
+        case COMPILED:
+            return MachineCompiler.compile(M);
+        case STATE:
+            return new StateTable(M);
+        case COMPOSED:
+            return new ComposedRotors(M);
+        default:
+            return MachineCompiler.interpreted(M);
+        }
+    }
+
+    /** Return the estimated time, in nanoseconds, to set up ENGINE for M,
+     *  which is nothing when its class or tables are already cached. */
+    private static double setupCost(Machine M, Engine engine) {
+        switch (engine) {
+        case COMPILED:
+            return MachineCompiler.isCompiled(M) ? 0
+                : MachineCompiler.compileCost(COMPILE_COST);
+        case STATE:
+            if (StateTable.isBuilt(M)) {
+                return 0;
+            }
+            return StateTable.memory(M) / Integer.BYTES
+                * (ROTOR_COST * M.numRotors() + TABLES_COST);
+        default:
+            return 0;
+        }
+    }
+
+    /** Return built-in estimates of the time, in nanoseconds, each engine
+     *  takes per character on M. */
+    private static EnumMap<Engine, Double> estimated(Machine M) {
+        EnumMap<Engine, Double> result = new EnumMap<>(Engine.class);
+        int slots = M.numRotors();
+        result.put(Engine.TABLES, TABLES_COST + ROTOR_COST * slots);
+        result.put(Engine.COMPILED,
+                   COMPILED_COST + ROTOR_COST * slots / 2);
+        long memory = StateTable.memory(M);
+        result.put(Engine.STATE,
+                   memory > CACHE_SIZE ? 2 * STATE_COST : STATE_COST);
+        int depth = 1;
+        for (int leaves = 1; leaves < slots - 1; leaves *= 2) {
+            depth += 1;
+        }
+        result.put(Engine.COMPOSED, COMPOSED_COST
+                   + COMPOSE_COST * M.alphabet().size() * depth);
+        return result;
+    }
+
+    /** Return the measured time, in nanoseconds, each engine takes per
+     *  character on M, timing them now if no machine with the same
+     *  alphabet size and number of rotors has been timed before.  Engines
+     *  that cannot run M within STATE_MEMORY keep their estimates. */
+    private static EnumMap<Engine, Double> calibrated(Machine M) {
+        String key = M.alphabet().size() + "/" + M.numRotors();
+        EnumMap<Engine, Double> result = CALIBRATIONS.get(key);
+        if (result != null) {
+            return result;
+        }
+        result = estimated(M);
+        int[] sample = new int[SAMPLE];
+        Random random = new Random(M.numRotors());
+        for (int i = 0; i < sample.length; i += 1) {
+            sample[i] = random.nextInt(M.alphabet().size());
+        }
+        for (Engine engine : Engine.values()) {
+            if (eligible(M, engine, STATE_MEMORY)) {
+                result.put(engine, time(M, engine, sample));
+            }
+        }
+        CALIBRATIONS.putIfAbsent(key, result);
+        return result;
+    }
+
+    /** Return the time, in nanoseconds per character, taken by ENGINE to
+     *  convert SAMPLE from the state of M, after a run to warm it up. */
+    private static double time(Machine M, Engine engine, int[] sample) {
+        long best = Long.MAX_VALUE;
+        int check = 0;
+        for (int run = 0; run < 3; run += 1) {
+            Converter converter = build(M.copy(), engine);
+            long start = System.nanoTime();
+            for (int c : sample) {
+                check += converter.convert(c);
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        _check = check;
+        return (double) best / sample.length;
+    }
+
+    /** Estimated time, in nanoseconds, to compile a class for a machine,
+     *  until MachineCompiler has timed one: javac takes about half a
+     *  second to a second even in memory. */
+    private static final double COMPILE_COST = 700e6;
+
+    /** Estimated time, in nanoseconds per character, of each engine,
+     *  excluding ROTOR_COST per rotor for TABLES and half that for
+     *  COMPILED. */
+    private static final double TABLES_COST = 4, COMPILED_COST = 3,
+        STATE_COST = 3, COMPOSED_COST = 5;
+
+    /** Estimated time, in nanoseconds per entry, of recomposing a node of
+     *  the COMPOSED engine's tree, about once per level per character. */
+    private static final double COMPOSE_COST = 0.15;
+
+    /** Estimated time, in nanoseconds per character, of passing through
+     *  one rotor using tables. */
+    private static final double ROTOR_COST = 1.5;
+
+    /** Size, in bytes, of tables beyond which STATE lookups are assumed
+     *  to miss the processor's caches and take twice as long. */
+    private static final long CACHE_SIZE = 1 << 20;
+
+    /** Calibrated speeds per engine, by alphabet size and number of
+     *  rotors. */
+    private static final ConcurrentHashMap<String, EnumMap<Engine, Double>>
+        CALIBRATIONS = new ConcurrentHashMap<>();
+
+    /** Sum of converted characters while calibrating, kept so that the
+     *  conversions cannot be optimized away. */
+    private static volatile int _check;
+}
@@ -0,0 +1,150 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for Engines and StateTable.
+ *  @author Oumar Balde
+ */
+public class EnginesTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a machine with NUMROTORS slots and PAWLS pawls, holding
+     *  ROTORS at SETTING with plugboard CYCLES. */
+    private Machine machine(int numRotors, int pawls, String[] rotors,
+                            String setting, String cycles) {
+        Machine mach = new Machine(UPPER, numRotors, pawls, navalRotors());
+        mach.insertRotors(rotors);
+        mach.setRotors(setting);
+        mach.setPlugboard(new Permutation(cycles, UPPER));
+        return mach;
+    }
+
+    /** Check that CONV agrees with MACH, which it was created from, on a
+     *  long random message. */
+    private void checkAgainstMachine(Machine mach, Converter conv) {
+        Random random = new Random(17);
+        for (int i = 0; i < 20000; i += 1) {
+            int c = random.nextInt(UPPER.size());
+            assertEquals(msg("", "character %d", i),
+                         mach.convert(c), conv.convert(c));
+        }
+        for (int k = 0; k < mach.numRotors(); k += 1) {
+            assertEquals(mach.setting(k), conv.setting(k));
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testStateTable() {
+        Machine mach = machine(5, 3, new String[] {"B", "Beta", "VI", "VII",
+                                                   "I"},
+                               "QDVZ", "(AQ) (EP) (TD) (KC)");
+        assertEquals(27L * 26 * 26 * 26 * 4, StateTable.memory(mach));
+        checkAgainstMachine(mach, new StateTable(mach));
+        assertTrue(StateTable.isBuilt(mach));
+    }
+
+    @Test
+    public void testStateTableRewiredRotor() {
+        Machine mach = machine(5, 3, new String[] {"B", "Beta", "I", "II",
+                                                   "III"},
+                               "AAAA", "(TD)");
+        new StateTable(mach);
+        ArrayList<Rotor> rotors = navalRotors();
+        rotors.replaceAll((r) -> !r.name().equals("II") ? r
+                          : new MovingRotor("II", new Permutation(
+                                  NAVALA.get("IV"), UPPER), "E"));
+        Machine rewired = new Machine(UPPER, 5, 3, rotors);
+        rewired.insertRotors(new String[] {"B", "Beta", "I", "II", "III"});
+        rewired.setRotors("AAAA");
+        rewired.setPlugboard(new Permutation("(TD)", UPPER));
+        checkAgainstMachine(rewired.copy(), new StateTable(rewired));
+    }
+
+    @Test
+    public void testStateTableIneligible() {
+        Machine mach = machine(5, 3, new String[] {"B", "I", "Beta", "II",
+                                                   "III"},
+                               "XKDE", "(HZ)");
+        assertEquals(-1, StateTable.memory(mach));
+        Engines.Choice choice = Engines.use(mach, Engines.Engine.STATE);
+        assertEquals(Engines.Engine.TABLES, choice.engine());
+        checkAgainstMachine(mach.copy(), choice.converter());
+    }
+
+    @Test
+    public void testEnginesAgree() {
+        for (Engines.Engine engine : Engines.Engine.values()) {
+            Machine mach = machine(5, 3, new String[] {"B", "Beta", "I", "II",
+                                                       "III"},
+                                   "AAAA", "(MN)");
+            Engines.Choice choice = Engines.use(mach, engine);
+            if (engine != Engines.Engine.COMPILED
+                || MachineCompiler.available()) {
+                assertEquals(engine, choice.engine());
+            }
+            checkAgainstMachine(mach.copy(), choice.converter());
+        }
+    }
+
+    @Test
+    public void testComposedRotors() {
+        String[] rotors = {"B", "I", "II", "III", "IV", "V", "VI", "VII",
+                           "VIII", "I", "II", "III", "IV"};
+        Machine mach = machine(13, 12, rotors, "ZZZZZZZZZZZZ", "(AQ) (EP)");
+        checkAgainstMachine(mach, new ComposedRotors(mach));
+        mach = machine(5, 3, new String[] {"B", "I", "Beta", "II", "III"},
+                       "XKDE", "(HZ)");
+        checkAgainstMachine(mach, new ComposedRotors(mach));
+    }
+
+    @Test
+    public void testComposedRotorsManySlots() {
+        String[] moving = {"I", "II", "III", "IV", "V", "VI", "VII", "VIII"};
+        Random random = new Random(40);
+        String[] rotors = new String[40];
+        StringBuilder setting = new StringBuilder();
+        rotors[0] = "B";
+        for (int k = 1; k < rotors.length; k += 1) {
+            rotors[k] = moving[random.nextInt(moving.length)];
+            setting.append(UPPER.toChar(random.nextInt(UPPER.size())));
+        }
+        for (SteppingModel model : new SteppingModel[] {
+                SteppingModel.PAWLS, SteppingModel.ODOMETER }) {
+            Machine mach = machine(rotors.length, rotors.length - 1, rotors,
+                                   setting.toString(), "(AQ) (EP)");
+            mach.setSteppingModel(model);
+            checkAgainstMachine(mach, new ComposedRotors(mach));
+        }
+    }
+
+    @Test
+    public void testChooseByLength() {
+        Machine mach = machine(5, 3, new String[] {"B", "Gamma", "V", "IV",
+                                                   "VIII"},
+                               "ZZZZ", "(PQ)");
+        assertEquals(MachineCompiler.isCompiled(mach)
+                     ? Engines.Engine.COMPILED : Engines.Engine.TABLES,
+                     Engines.choose(mach, 10, false).engine());
+        Engines.Choice choice = Engines.choose(mach, 1L << 30, false);
+        assertNotSame(Engines.Engine.TABLES, choice.engine());
+        checkAgainstMachine(mach.copy(), choice.converter());
+        choice = Engines.choose(mach, 1L << 20, true);
+        checkAgainstMachine(mach.copy(), choice.converter());
+    }
+
+}
@@ -0,0 +1,209 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+
+/** Byte channels that convert the text passing through them with a
+ *  Converter.  Bytes are decoded, converted and re-encoded a buffer at a
+ *  time, so memory use does not depend on the length of the stream.  A
+ *  character split between two reads or writes is carried over to the
+ *  next.
+ *  @author Oumar Balde
+ */
+class EnigmaChannels {
+
+    /** Number of bytes decoded at a time. */
+    static final int CHUNK = 4096;
+
+    /** Return a channel that reads the text of IN in CHARSET, converting
+     *  the characters of ALPHA with CONVERTER, in groups of five iff
+     *  GROUPED. */
+    static ReadableByteChannel reading(ReadableByteChannel in,
+                                       Charset charset, Converter converter,
+                                       Alphabet alpha, boolean grouped) {
+        return new Reading(in, new Coder(charset, converter, alpha,
+                                         grouped));
+    }
+
+    /** Return a channel that converts text written to it in CHARSET,
+     *  converting the characters of ALPHA with CONVERTER, in groups of
+     *  five iff GROUPED, and writes the result to OUT. */
+    static WritableByteChannel writing(WritableByteChannel out,
+                                       Charset charset, Converter converter,
+                                       Alphabet alpha, boolean grouped) {
+        return new Writing(out, new Coder(charset, converter, alpha,
+                                          grouped));
+    }
+
+    /** Decodes, converts and encodes one buffer of bytes at a time. */
+    private static class Coder {
+
+        /** A coder for text in CHARSET, converting the characters of ALPHA
+         *  with CONVERTER, in groups of five iff GROUPED. */
+        Coder(Charset charset, Converter converter, Alphabet alpha,
+              boolean grouped) {
+            _cipher = new TextCipher(converter, alpha, grouped);
+            _decoder = charset.newDecoder();
+            _encoder = charset.newEncoder();
+            _in = ByteBuffer.allocate(CHUNK);
+            _chars = CharBuffer.allocate(CHUNK);
+            _converted = CharBuffer.allocate(TextCipher.outputSize(CHUNK));
+            int max = (int) Math.ceil(_converted.capacity()
+                                      * _encoder.maxBytesPerChar());
+            _out = ByteBuffer.allocate(max);
+            _out.flip();
+        }
+
+        /** Convert the bytes waiting in _in into _out, which must be
+         *  empty, decoding what remains of a split character iff ENDED. */
+        void convert(boolean ended) throws IOException {
+            _in.flip();
+            _chars.clear();
+            CoderResult result = _decoder.decode(_in, _chars, ended);
+            if (result.isError()) {
+                result.throwException();
+            }
+            if (ended) {
+                _decoder.flush(_chars);
+            }
+            _in.compact();
+            _chars.flip();
+            int n = _cipher.transform(_chars.array(), 0, _chars.limit(),
+                                      _converted.array(), 0);
+            _converted.clear().limit(n);
+            _out.clear();
+            result = _encoder.encode(_converted, _out, ended);
+            if (result.isError()) {
+                result.throwException();
+            }
+            if (ended) {
+                _encoder.flush(_out);
+            }
+            _out.flip();
+        }
+
+        /** The conversion applied. */
+        private final TextCipher _cipher;
+        /** Translate between bytes and characters. */
+        private final CharsetDecoder _decoder;
+        /** Translate between characters and bytes. */
+        private final CharsetEncoder _encoder;
+        /** Bytes waiting to be decoded. */
+        private final ByteBuffer _in;
+        /** Decoded characters. */
+        private final CharBuffer _chars;
+        /** Converted characters. */
+        private final CharBuffer _converted;
+        /** Encoded converted characters, ready to be read. */
+        private final ByteBuffer _out;
+    }
+
+    /** A channel reading converted text from another. */
+    private static class Reading implements ReadableByteChannel {
+
+        /** A channel reading from IN through CODER. */
+        Reading(ReadableByteChannel in, Coder coder) {
+            _source = in;
+            _coder = coder;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            ByteBuffer out = _coder._out;
+            while (!out.hasRemaining()) {
+                if (_ended) {
+                    return -1;
+                }
+                int n = _source.read(_coder._in);
+                if (n == 0 && _coder._in.hasRemaining()) {
+                    return 0;
+                }
+                _ended = n == -1;
+                _coder.convert(_ended);
+            }
+            int n = Math.min(out.remaining(), dst.remaining());
+            int limit = out.limit();
+            out.limit(out.position() + n);
+            dst.put(out);
+            out.limit(limit);
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return _source.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            _source.close();
+        }
+
+        /** Channel read from. */
+        private final ReadableByteChannel _source;
+        /** Conversion applied. */
+        private final Coder _coder;
+        /** True once _source is exhausted. */
+        private boolean _ended;
+    }
+
+    /** A channel writing converted text to another. */
+    private static class Writing implements WritableByteChannel {
+
+        /** A channel writing to OUT through CODER. */
+        Writing(WritableByteChannel out, Coder coder) {
+            _sink = out;
+            _coder = coder;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int n = src.remaining();
+            ByteBuffer in = _coder._in;
+            while (src.hasRemaining()) {
+                int k = Math.min(in.remaining(), src.remaining());
+                int limit = src.limit();
+                src.limit(src.position() + k);
+                in.put(src);
+                src.limit(limit);
+                _coder.convert(false);
+                drain();
+            }
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return _sink.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (_sink.isOpen()) {
+                _coder.convert(true);
+                drain();
+                _sink.close();
+            }
+        }
+
+        /** Write all of the coder's output to _sink. */
+        private void drain() throws IOException {
+            while (_coder._out.hasRemaining()) {
+                _sink.write(_coder._out);
+            }
+        }
+
+        /** Channel written to. */
+        private final WritableByteChannel _sink;
+        /** Conversion applied. */
+        private final Coder _coder;
+    }
+
+}
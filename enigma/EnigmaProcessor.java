@@ -0,0 +1,300 @@
+package enigma;
+
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static enigma.EnigmaException.*;
+
+/** A reactive stage that applies a stream of setting and message lines to
+ *  a Machine, in order, and publishes the formatted result of each message
+ *  line.  Setting lines (see Main.isSettingLine) reconfigure the machine
+ *  and publish nothing.  Lines are requested from upstream in batches of
+ *  a fixed size, and only as downstream demand allows, so that at most one
+ *  batch of lines is ever buffered, however slow the subscriber.
+ *  @author Oumar Balde
+ */
+class EnigmaProcessor implements Flow.Processor<String, String>,
+                                 Flow.Subscription {
+
+    /** Default number of lines requested from upstream per signal. */
+    static final int DEFAULT_BATCH = 64;
+
+    /** A processor driving MACHINE that requests DEFAULT_BATCH lines at
+     *  a time. */
+    EnigmaProcessor(Machine machine) {
+        this(machine, DEFAULT_BATCH);
+    }
+
+    /** A processor driving MACHINE that requests BATCH > 0 lines from
+     *  upstream per signal. */
+    EnigmaProcessor(Machine machine, int batch) {
+        if (batch <= 0) {
+            throw error("batch size must be positive");
+        }
+        _machine = machine;
+        _batch = batch;
+        _ring = new String[Integer.highestOneBit(batch * 2 - 1)];
+        _mask = _ring.length - 1;
+    }
+
+    /** Return the number of lines requested from upstream per signal. */
+    int batch() {
+        return _batch;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super String> subscriber) {
+        if (!_downstream.compareAndSet(null, subscriber)) {
+            subscriber.onSubscribe(NO_SUBSCRIPTION);
+            subscriber.onError(
+                new IllegalStateException("already subscribed"));
+            return;
+        }
+        subscriber.onSubscribe(this);
+        requestUpstream();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (_upstream != null) {
+            subscription.cancel();
+            return;
+        }
+        _upstream = subscription;
+        requestUpstream();
+    }
+
+    @Override
+    public void onNext(String line) {
+        long tail = _tail;
+        if (tail - _head >= _ring.length) {
+            onError(new IllegalStateException("upstream ignored demand"));
+            return;
+        }
+        _ring[(int) tail & _mask] = line;
+        _tail = tail + 1;
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable err) {
+        _error = err;
+        _done = true;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        _done = true;
+        drain();
+    }
+
+    @Override
+    public void request(long n) {
+        if (n <= 0) {
+            _error = new IllegalArgumentException("non-positive request");
+            _aborted = true;
+            _done = true;
+            if (_upstream != null) {
+                _upstream.cancel();
+            }
+        } else {
+            long r, u;
+            do {
+                r = _demand.get();
+                u = r + n < 0 ? Long.MAX_VALUE : r + n;
+            } while (!_demand.compareAndSet(r, u));
+        }
+        drain();
+    }
+
+    @Override
+    public void cancel() {
+        _cancelled = true;
+        Flow.Subscription upstream = _upstream;
+        if (upstream != null) {
+            upstream.cancel();
+        }
+    }
+
+    /** Issue the first upstream request once both ends are connected. */
+    private void requestUpstream() {
+        if (_upstream != null && _downstream.get() != null
+            && _started.compareAndSet(0, 1)) {
+            _upstream.request(_batch);
+        }
+    }
+
+    /** Process as many buffered lines as downstream demand allows.  Only
+     *  one thread at a time runs the loop; others leave work for it. */
+    private void drain() {
+        if (_wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            Flow.Subscriber<? super String> down = _downstream.get();
+            if (down != null) {
+                long demand = _demand.get();
+                long emitted = 0;
+                while (!_cancelled) {
+                    if (_aborted) {
+                        discard();
+                        terminate(down);
+                        break;
+                    }
+                    boolean done = _done;
+                    long head = _head;
+                    if (head == _tail) {
+                        if (done) {
+                            terminate(down);
+                        }
+                        break;
+                    }
+                    String line = _ring[(int) head & _mask];
+                    if (!Main.isSettingLine(line) && emitted == demand) {
+                        break;
+                    }
+                    _ring[(int) head & _mask] = null;
+                    _head = head + 1;
+                    String out;
+                    try {
+                        out = apply(line);
+                    } catch (EnigmaException excp) {
+                        cancel();
+                        down.onError(excp);
+                        return;
+                    }
+                    if (out != null) {
+                        down.onNext(out);
+                        emitted += 1;
+                    }
+                    _consumed += 1;
+                    if (_consumed == _batch) {
+                        _consumed = 0;
+                        _upstream.request(_batch);
+                    }
+                }
+                if (emitted != 0 && demand != Long.MAX_VALUE) {
+                    _demand.addAndGet(-emitted);
+                }
+            }
+            missed = _wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /** Drop all buffered lines (drain only). */
+    private void discard() {
+        long tail = _tail;
+        for (long seq = _head; seq < tail; seq += 1) {
+            _ring[(int) seq & _mask] = null;
+        }
+        _head = tail;
+    }
+
+    /** Signal completion or the pending error to DOWN, exactly once. */
+    private void terminate(Flow.Subscriber<? super String> down) {
+        _cancelled = true;
+        if (_error != null) {
+            down.onError(_error);
+        } else {
+            down.onComplete();
+        }
+    }
+
+    /** Apply LINE to my machine, returning its formatted conversion, or
+     *  null if LINE was a setting line. */
+    private String apply(String line) {
+        if (Main.isSettingLine(line)) {
+            Main.setUp(_machine, line);
+            _configured = true;
+            return null;
+        }
+        if (!_configured) {
+            throw error("message without a configuration");
+        }
+        if (_msg.length < line.length()) {
+            _msg = new char[line.length()];
+            _grouped = new char[_msg.length + _msg.length / Main.GROUP];
+        }
+        line.getChars(0, line.length(), _msg, 0);
+        int len = Main.stripBlanks(_msg, 0, line.length(), _msg);
+        _machine.convert(_msg, 0, len);
+        return new String(_grouped, 0,
+                          Main.formatMessage(_msg, len, _grouped));
+    }
+
+    /** The subscription given to subscribers rejected by subscribe(),
+     *  which ignores their requests. */
+    private static final Flow.Subscription NO_SUBSCRIPTION =
+        new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        };
+
+    /** The machine I drive. */
+    private final Machine _machine;
+
+    /** Number of lines requested from upstream per signal. */
+    private final int _batch;
+
+    /** Buffered lines from upstream, indexed modulo its length. */
+    private final String[] _ring;
+
+    /** Mask selecting a _ring index from a sequence number. */
+    private final int _mask;
+
+    /** Sequence number of the next line to process. */
+    private volatile long _head;
+
+    /** Sequence number of the next line to buffer. */
+    private volatile long _tail;
+
+    /** Lines processed since the last upstream request (drain only). */
+    private int _consumed;
+
+    /** The message being converted, without blanks (drain only). */
+    private char[] _msg = new char[0];
+
+    /** The converted message in groups (drain only). */
+    private char[] _grouped = new char[0];
+
+    /** True once a setting line has been applied. */
+    private boolean _configured;
+
+    /** Outstanding downstream demand. */
+    private final AtomicLong _demand = new AtomicLong();
+
+    /** Serializes drain(): nonzero while some thread is draining. */
+    private final AtomicInteger _wip = new AtomicInteger();
+
+    /** Becomes 1 once the first upstream request is made. */
+    private final AtomicInteger _started = new AtomicInteger();
+
+    /** My source of lines. */
+    private volatile Flow.Subscription _upstream;
+
+    /** My only subscriber, once there is one. */
+    private final AtomicReference<Flow.Subscriber<? super String>>
+        _downstream = new AtomicReference<>();
+
+    /** True once upstream has finished (normally or not). */
+    private volatile boolean _done;
+
+    /** True once downstream has made an invalid request, so that the
+     *  error is to be signalled at once, dropping buffered lines. */
+    private volatile boolean _aborted;
+
+    /** True once cancelled or terminated. */
+    private volatile boolean _cancelled;
+
+    /** Error to report downstream once buffered lines are processed. */
+    private volatile Throwable _error;
+}
@@ -0,0 +1,190 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the EnigmaProcessor class.
+ *  @author Oumar Balde
+ */
+public class EnigmaProcessorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A publisher of a fixed list of lines that records how many lines
+     *  were requested of it. */
+    private static class LinePublisher implements Flow.Subscription {
+        LinePublisher(String... lines) {
+            _lines = lines;
+        }
+
+        void connect(Flow.Subscriber<? super String> sub) {
+            _sub = sub;
+            sub.onSubscribe(this);
+        }
+
+        @Override
+        public void request(long n) {
+            requested += n;
+            while (_next < requested && _next < _lines.length) {
+                _sub.onNext(_lines[_next]);
+                _next += 1;
+            }
+            if (_next == _lines.length) {
+                _sub.onComplete();
+            }
+        }
+
+        @Override
+        public void cancel() {
+        }
+
+        private final String[] _lines;
+        private Flow.Subscriber<? super String> _sub;
+        private int _next;
+        long requested;
+    }
+
+    /** A subscriber that collects what it receives and requests only
+     *  when asked to. */
+    private static class Collector implements Flow.Subscriber<String> {
+        @Override
+        public void onSubscribe(Flow.Subscription s) {
+            sub = s;
+        }
+
+        @Override
+        public void onNext(String item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable err) {
+            error = err;
+        }
+
+        @Override
+        public void onComplete() {
+            complete = true;
+        }
+
+        Flow.Subscription sub;
+        List<String> items = new ArrayList<>();
+        Throwable error;
+        boolean complete;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testConvertsInOrder() {
+        EnigmaProcessor proc = new EnigmaProcessor(navalMachine(), 2);
+        Collector out = new Collector();
+        proc.subscribe(out);
+        new LinePublisher("* B Beta I II III AAAA", "HELLO WORLD",
+                          "* B Beta I II III AAAA", "ILBDA AMTAZ")
+            .connect(proc);
+        out.sub.request(Long.MAX_VALUE);
+        assertEquals(List.of("ILBDA AMTAZ", "HELLO WORLD"), out.items);
+        assertTrue(out.complete);
+        assertNull(out.error);
+    }
+
+    @Test
+    public void testBackpressure() {
+        EnigmaProcessor proc = new EnigmaProcessor(navalMachine(), 2);
+        Collector out = new Collector();
+        proc.subscribe(out);
+        LinePublisher in =
+            new LinePublisher("* B Beta I II III AAAA", "A", "B", "C",
+                              "D", "E");
+        in.connect(proc);
+        assertEquals(2, in.requested);
+        assertEquals(0, out.items.size());
+        out.sub.request(1);
+        assertEquals(1, out.items.size());
+        assertEquals(4, in.requested);
+        out.sub.request(2);
+        assertEquals(3, out.items.size());
+        assertEquals(6, in.requested);
+        assertFalse(out.complete);
+        out.sub.request(10);
+        assertEquals(5, out.items.size());
+        assertTrue(out.complete);
+    }
+
+    @Test
+    public void testBadSettingReported() {
+        EnigmaProcessor proc = new EnigmaProcessor(navalMachine());
+        Collector out = new Collector();
+        proc.subscribe(out);
+        new LinePublisher("HELLO").connect(proc);
+        out.sub.request(1);
+        assertTrue(out.error instanceof EnigmaException);
+        assertFalse(out.complete);
+    }
+
+    @Test
+    public void testSecondSubscriberRejected() {
+        EnigmaProcessor proc = new EnigmaProcessor(navalMachine(), 2);
+        Collector out = new Collector();
+        Collector other = new Collector();
+        proc.subscribe(out);
+        proc.subscribe(other);
+        assertTrue(other.error instanceof IllegalStateException);
+        LinePublisher in =
+            new LinePublisher("* B Beta I II III AAAA", "A", "B");
+        in.connect(proc);
+        other.sub.request(5);
+        other.sub.cancel();
+        assertEquals(0, out.items.size());
+        assertEquals(0, other.items.size());
+        out.sub.request(5);
+        assertEquals(2, out.items.size());
+        assertTrue(out.complete);
+    }
+
+    @Test
+    public void testBadRequestSignalledAtOnce() {
+        EnigmaProcessor proc = new EnigmaProcessor(navalMachine(), 4);
+        Collector out = new Collector();
+        proc.subscribe(out);
+        new LinePublisher("* B Beta I II III AAAA", "A", "B", "C")
+            .connect(proc);
+        out.sub.request(0);
+        assertTrue(out.error instanceof IllegalArgumentException);
+        out.sub.request(5);
+        assertEquals(0, out.items.size());
+        assertFalse(out.complete);
+    }
+
+    @Test
+    public void testConcurrentSubscribers() throws Exception {
+        for (int trial = 0; trial < 100; trial += 1) {
+            EnigmaProcessor proc = new EnigmaProcessor(navalMachine());
+            Collector[] outs = { new Collector(), new Collector() };
+            Thread[] threads = new Thread[outs.length];
+            for (int k = 0; k < threads.length; k += 1) {
+                Collector out = outs[k];
+                threads[k] = new Thread(() -> proc.subscribe(out));
+                threads[k].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertTrue((outs[0].error == null) != (outs[1].error == null));
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+package enigma;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/** A Reader that converts what it reads from another with a Machine or
+ *  Converter, through a buffer of fixed size, so that messages of any
+ *  length may be read piecemeal.  Rotor state carries over from one read
+ *  to the next.  Marking and skipping ahead without converting are not
+ *  supported, since they would lose the rotor state.
+ *  @author Oumar Balde
+ */
+class EnigmaReader extends FilterReader {
+
+    /** Number of characters converted at a time. */
+    static final int CHUNK = 4096;
+
+    /** A reader converting IN with MACHINE, ungrouped. */
+    EnigmaReader(Reader in, Machine machine) {
+        this(in, MachineCompiler.interpreted(machine), machine.alphabet(),
+             false);
+    }
+
+    /** A reader converting the characters of ALPHA in IN with CONVERTER,
+     *  in groups of five iff GROUPED. */
+    EnigmaReader(Reader in, Converter converter, Alphabet alpha,
+                 boolean grouped) {
+        super(in);
+        _cipher = new TextCipher(converter, alpha, grouped);
+        _in = new char[CHUNK];
+        _out = new char[TextCipher.outputSize(CHUNK)];
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        char c = _out[_next];
+        _next += 1;
+        return c;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int n = Math.min(len, _limit - _next);
+        System.arraycopy(_out, _next, cbuf, off, n);
+        _next += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && fill()) {
+            int k = (int) Math.min(n - skipped, _limit - _next);
+            _next += k;
+            skipped += k;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean ready() throws IOException {
+        return _next < _limit || in.ready();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readAheadLimit) throws IOException {
+        throw new IOException("mark not supported");
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("reset not supported");
+    }
+
+    /** Ensure there is converted text waiting in _out, returning false at
+     *  the end of input. */
+    private boolean fill() throws IOException {
+        while (_next == _limit) {
+            int n = in.read(_in, 0, CHUNK);
+            if (n == -1) {
+                return false;
+            }
+            _next = 0;
+            _limit = _cipher.transform(_in, 0, n, _out, 0);
+        }
+        return true;
+    }
+
+    /** The conversion applied. */
+    private final TextCipher _cipher;
+
+    /** Characters read, before conversion. */
+    private final char[] _in;
+
+    /** Converted characters waiting to be read. */
+    private final char[] _out;
+
+    /** Bounds of the characters of _out not yet read. */
+    private int _next, _limit;
+}
@@ -0,0 +1,128 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for EnigmaReader, EnigmaWriter and
+ *  EnigmaChannels.
+ *  @author Oumar Balde
+ */
+public class EnigmaStreamTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Setting used throughout. */
+    private static final String SETTING = "* B Beta I II III AAAA (TD) (KC)";
+
+    /** Return a naval machine set to SETTING. */
+    private static Machine machine() {
+        Machine mach = navalMachine();
+        Main.setUp(mach, SETTING);
+        return mach;
+    }
+
+    /** Return a message of LEN letters, with punctuation mixed in. */
+    private static String message(int len) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < len; i += 1) {
+            result.append((char) ('A' + (i * 7) % 26));
+            if (i % 11 == 10) {
+                result.append(i % 2 == 0 ? ", " : "\n");
+            }
+        }
+        return result.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testWriterMatchesMachine() throws IOException {
+        String msg = message(3 * EnigmaWriter.CHUNK);
+        StringWriter output = new StringWriter();
+        try (EnigmaWriter writer = new EnigmaWriter(output, machine())) {
+            writer.write(msg, 0, 5);
+            writer.write(msg.charAt(5));
+            writer.write(msg.substring(6).toCharArray());
+        }
+        StringBuilder expected = new StringBuilder();
+        Machine mach = machine();
+        for (char c : msg.toCharArray()) {
+            expected.append(Character.isLetter(c)
+                            ? mach.convert(String.valueOf(c)) : c);
+        }
+        assertEquals(expected.toString(), output.toString());
+    }
+
+    @Test
+    public void testReaderGrouping() throws IOException {
+        Machine mach = machine();
+        EnigmaReader reader =
+            new EnigmaReader(new StringReader("HELLO WORLD\nHELL O\n"),
+                             MachineCompiler.interpreted(mach),
+                             mach.alphabet(), true);
+        StringBuilder output = new StringBuilder();
+        for (int c = reader.read(); c != -1; c = reader.read()) {
+            output.append((char) c);
+        }
+        Machine check = machine();
+        String expected =
+            Main.formatMessage(check.convert("HELLOWORLD")) + "\n"
+            + check.convert("HELLO") + "\n";
+        assertEquals(expected, output.toString());
+    }
+
+    @Test
+    public void testChannelsRoundTrip() throws IOException {
+        String msg = "GR\u00dcSSE AUS K\u00d6LN "
+            + message(2 * EnigmaChannels.CHUNK);
+        byte[] bytes = msg.getBytes(StandardCharsets.UTF_8);
+        Machine mach = machine();
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        WritableByteChannel out =
+            EnigmaChannels.writing(Channels.newChannel(encoded),
+                                   StandardCharsets.UTF_8,
+                                   MachineCompiler.interpreted(mach),
+                                   mach.alphabet(), false);
+        for (int i = 0; i < bytes.length; i += 3) {
+            out.write(ByteBuffer.wrap(bytes, i,
+                                      Math.min(3, bytes.length - i)));
+        }
+        out.close();
+        assertFalse(msg.equals(encoded.toString(StandardCharsets.UTF_8)));
+
+        mach = machine();
+        ReadableByteChannel in =
+            EnigmaChannels.reading(Channels.newChannel(
+                new ByteArrayInputStream(encoded.toByteArray())),
+                StandardCharsets.UTF_8, MachineCompiler.interpreted(mach),
+                mach.alphabet(), false);
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        ByteBuffer buf = ByteBuffer.allocate(100);
+        while (in.read(buf) != -1) {
+            buf.flip();
+            decoded.write(buf.array(), 0, buf.limit());
+            buf.clear();
+        }
+        assertEquals(msg, decoded.toString(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,75 @@
+package enigma;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/** A Writer that converts what is written to it with a Machine or
+ *  Converter before passing it on, through a buffer of fixed size, so that
+ *  messages of any length may be written piecemeal.  Rotor state carries
+ *  over from one write to the next.
+ *  @author Oumar Balde
+ */
+class EnigmaWriter extends FilterWriter {
+
+    /** Number of characters converted at a time. */
+    static final int CHUNK = 4096;
+
+    /** A writer converting with MACHINE, ungrouped, onto OUT. */
+    EnigmaWriter(Writer out, Machine machine) {
+        this(out, MachineCompiler.interpreted(machine), machine.alphabet(),
+             false);
+    }
+
+    /** A writer converting the characters of ALPHA with CONVERTER onto
+     *  OUT, in groups of five iff GROUPED. */
+    EnigmaWriter(Writer out, Converter converter, Alphabet alpha,
+                 boolean grouped) {
+        super(out);
+        _cipher = new TextCipher(converter, alpha, grouped);
+        _in = new char[CHUNK];
+        _out = new char[TextCipher.outputSize(CHUNK)];
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        _in[0] = (char) c;
+        flushChunk(1);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, CHUNK);
+            System.arraycopy(cbuf, off, _in, 0, n);
+            flushChunk(n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, CHUNK);
+            str.getChars(off, off + n, _in, 0);
+            flushChunk(n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /** Convert the first LEN characters of _in and write them out. */
+    private void flushChunk(int len) throws IOException {
+        out.write(_out, 0, _cipher.transform(_in, 0, len, _out, 0));
+    }
+
+    /** The conversion applied. */
+    private final TextCipher _cipher;
+
+    /** Characters to convert. */
+    private final char[] _in;
+
+    /** Converted characters. */
+    private final char[] _out;
+}
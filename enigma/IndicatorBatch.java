@@ -0,0 +1,240 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiFunction;
+
+import static enigma.EnigmaException.*;
+
+/** Decrypts messages sent under the indicator procedure.  A setting line
+ *  gives the ground setting shared by the messages that follow it.  Each
+ *  message line starts with its indicator: the message key (one letter per
+ *  non-reflector rotor) encrypted at the ground setting, either once or
+ *  doubled.  The rest of the line is the body, encrypted starting from the
+ *  message key with the ground setting's rings and plugboard.
+ *
+ *  For each ground setting, the conversions performed at the first few
+ *  positions from it are tabulated once, so that indicators are decrypted
+ *  by table lookup as lines are read.  Bodies are then decrypted in
+ *  parallel, each on its own copy of the machine, and written in input
+ *  order.  The engine for the bodies is chosen once per ground setting,
+ *  for the length of a body rather than of the whole input.  A bad
+ *  indicator is reported and its message skipped; the rest of the batch
+ *  goes on.
+ *  @author Oumar Balde
+ */
+class IndicatorBatch {
+
+    /** A batch reading from INPUT and writing decrypted bodies to OUTPUT
+     *  and reports of bad indicators to ERRORS.  Setting lines are applied
+     *  to MACHINE, and bodies are decrypted on THREADS worker threads,
+     *  each on a copy of MACHINE set to its key.  The engine used for the
+     *  bodies under a ground setting is the one CHOICES returns for the
+     *  first of them, given the machine and the length of that body (see
+     *  Engines). */
+    IndicatorBatch(Lexer input, Machine machine,
+                   BiFunction<Machine, Long, Engines.Choice> choices,
+                   Writer output, PrintStream errors, int threads) {
+        _input = input;
+        _machine = machine;
+        _choices = choices;
+        _output = output;
+        _errors = errors;
+        _threads = threads;
+        _keyLength = machine.numRotors() - 1;
+    }
+
+    /** Process all input, returning the number of bad indicators
+     *  reported.  Errors other than bad indicators end the batch (as
+     *  EnigmaExceptions) after the output for preceding lines. */
+    int run() {
+        ExecutorService workers =
+            Executors.newFixedThreadPool(_threads, (task) -> {
+                Thread thread = new Thread(task, "enigma-indicator");
+                thread.setDaemon(true);
+                return thread;
+            });
+        try {
+            while (_input.next()) {
+                if (_input.isSetting()) {
+                    Main.setUp(_machine, _input);
+                    _prefix = prefix(_machine);
+                    _engine = null;
+                } else if (_prefix == null) {
+                    throw _input.error(0, "message without a configuration");
+                } else {
+                    _pending.add(submit(workers));
+                }
+                while (_pending.size() > WINDOW * _threads) {
+                    writeNext();
+                }
+            }
+        } finally {
+            while (!_pending.isEmpty()) {
+                writeNext();
+            }
+            workers.shutdown();
+            flush();
+        }
+        return _bad;
+    }
+
+    /** Maximum number of messages in progress per worker thread. */
+    static final int WINDOW = 16;
+
+    /** Return the conversions M would perform at each of the first
+     *  2 * M.numRotors() - 2 positions from its current state, without
+     *  changing M: entry [J][C] is the conversion of C at position J. */
+    static int[][] prefix(Machine M) {
+        int[][] result =
+            new int[2 * (M.numRotors() - 1)][M.alphabet().size()];
+        prefix(M.copy(), result);
+        return result;
+    }
+
+    /** Store in RESULT the conversions M would perform at each of the
+     *  first RESULT.length positions from its current state, as for
+     *  prefix(M), advancing M by that many positions. */
+    static void prefix(Machine M, int[][] result) {
+        for (int[] table : result) {
+            M.advance();
+            for (int c = 0; c < table.length; c += 1) {
+                table[c] = M.map(c);
+            }
+        }
+    }
+
+    /** Return the message key recovered using PREFIX, the tables
+     *  returned by prefix() for the ground setting, from the indicator in
+     *  BUF[START .. END-1]. */
+    private String messageKey(int[][] prefix, char[] buf, int start,
+                              int end) {
+        Alphabet alpha = _machine.alphabet();
+        int len = end - start;
+        if (len != _keyLength && len != 2 * _keyLength) {
+            throw _input.error(0, "indicator must have %d or %d letters",
+                               _keyLength, 2 * _keyLength);
+        }
+        char[] key = new char[len];
+        for (int j = 0; j < len; j += 1) {
+            int c = alpha.toInt(buf[start + j]);
+            if (c == -1) {
+                throw _input.error(0, "indicator letter %c not in alphabet",
+                                   buf[start + j]);
+            }
+            key[j] = alpha.toChar(prefix[j][c]);
+        }
+        for (int j = _keyLength; j < len; j += 1) {
+            if (key[j] != key[j - _keyLength]) {
+                throw _input.error(0, "doubled indicator gives %s and %s",
+                                   new String(key, 0, _keyLength),
+                                   new String(key, _keyLength, _keyLength));
+            }
+        }
+        return new String(key, 0, _keyLength);
+    }
+
+    /** Return the eventual result of decrypting the current line on
+     *  WORKERS: its body in groups of five, or the error in its
+     *  indicator.  The indicator is the first blank-separated word of the
+     *  line. */
+    private CompletableFuture<String> submit(ExecutorService workers) {
+        char[] buf = _input.buffer();
+        int start = _input.start();
+        while (start < _input.end() && Character.isWhitespace(buf[start])) {
+            start += 1;
+        }
+        int end = start;
+        while (end < _input.end() && !Character.isWhitespace(buf[end])) {
+            end += 1;
+        }
+        String key;
+        try {
+            key = messageKey(_prefix, buf, start, end);
+        } catch (EnigmaException excp) {
+            return CompletableFuture.failedFuture(excp);
+        }
+        Machine machine = _machine.copy();
+        machine.setRotors(key);
+        String body = new String(buf, end, _input.end() - end);
+        Converter first = null;
+        if (_engine == null) {
+            Engines.Choice choice =
+                _choices.apply(machine, (long) body.length());
+            _engine = choice.engine();
+            first = choice.converter();
+        }
+        Converter chosen = first;
+        Engines.Engine engine = _engine;
+        return CompletableFuture.supplyAsync(() -> {
+            Converter converter = chosen != null ? chosen
+                : Engines.use(machine, engine).converter();
+            String msg = body.replace(" ", "");
+            return Main.formatMessage(converter.convert(machine.alphabet(),
+                                                        msg));
+        }, workers);
+    }
+
+    /** Write or report the result of the oldest message in progress. */
+    private void writeNext() {
+        try {
+            String result = _pending.remove().get();
+            _output.write(result);
+            _output.write(System.lineSeparator());
+        } catch (ExecutionException excp) {
+            if (!(excp.getCause() instanceof EnigmaException)) {
+                throw error("internal error: %s", excp.getCause());
+            }
+            flush();
+            _errors.printf("Error: %s%n", excp.getCause().getMessage());
+            _bad += 1;
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } catch (IOException excp) {
+            throw error("could not write output: %s", excp.getMessage());
+        }
+    }
+
+    /** Flush _output. */
+    private void flush() {
+        try {
+            _output.flush();
+        } catch (IOException excp) {
+            throw error("could not write output: %s", excp.getMessage());
+        }
+    }
+
+    /** Source of lines. */
+    private final Lexer _input;
+    /** The machine to which setting lines are applied, left at the ground
+     *  setting. */
+    private final Machine _machine;
+    /** Chooses the engine for the bodies under each ground setting. */
+    private final BiFunction<Machine, Long, Engines.Choice> _choices;
+    /** Destination of decrypted bodies. */
+    private final Writer _output;
+    /** Destination of reports of bad indicators. */
+    private final PrintStream _errors;
+    /** Number of worker threads. */
+    private final int _threads;
+    /** Number of letters in a message key. */
+    private final int _keyLength;
+    /** Conversion tables for the current ground setting, as returned by
+     *  prefix(), or null before the first setting line. */
+    private int[][] _prefix;
+    /** The engine used for bodies under the current ground setting, or
+     *  null before the first of them. */
+    private Engines.Engine _engine;
+    /** Results of the messages in progress, in input order. */
+    private final ArrayDeque<CompletableFuture<String>> _pending =
+        new ArrayDeque<>();
+    /** Number of bad indicators reported. */
+    private int _bad;
+}
@@ -0,0 +1,105 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the IndicatorBatch class.
+ *  @author Oumar Balde
+ */
+public class IndicatorBatchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Ground setting used throughout. */
+    private static final String GROUND =
+        "* B Beta I II III AXLE BRZX (TD) (KC) (JZ)";
+
+    /** Return the indicator for KEY at the ground setting, doubled iff
+     *  DOUBLED. */
+    private static String indicator(String key, boolean doubled) {
+        Machine mach = navalMachine();
+        Main.setUp(mach, GROUND);
+        return mach.convert(doubled ? key + key : key);
+    }
+
+    /** Return BODY encrypted at message key KEY. */
+    private static String encrypt(String key, String body) {
+        Machine mach = navalMachine();
+        Main.setUp(mach, GROUND.replace("AXLE", key));
+        return mach.convert(body);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testBatch() {
+        String[] keys = { "QWER", "ZZZZ", "ABCD", "MNOP" };
+        StringBuilder input = new StringBuilder(GROUND + "\n");
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 40; i += 1) {
+            if (i == 20) {
+                input.append(GROUND).append('\n');
+            }
+            String key = keys[i % keys.length];
+            String body = "ATTACKATDAWN" + "XYZ".substring(i % 3);
+            if (i == 7) {
+                String ind = indicator(key, true);
+                input.append(ind, 0, 7)
+                    .append(ind.charAt(7) == 'A' ? 'B' : 'A');
+            } else {
+                input.append(indicator(key, i % 2 == 0));
+            }
+            input.append(' ').append(encrypt(key, body)).append('\n');
+            if (i != 7) {
+                expected.append(Main.formatMessage(body)).append('\n');
+            }
+        }
+
+        StringWriter output = new StringWriter();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        ArrayList<Long> lengths = new ArrayList<>();
+        int bad = new IndicatorBatch(new Lexer(new StringReader(
+                                         input.toString())),
+                                     navalMachine(),
+                                     (M, length) -> {
+                                         lengths.add(length);
+                                         return Engines.use(
+                                             M, Engines.Engine.STATE);
+                                     }, output,
+                                     new PrintStream(errors), 3).run();
+        assertEquals(1, bad);
+        assertEquals(2, lengths.size());
+        assertTrue(lengths.get(0) < 20 && lengths.get(1) < 20);
+        assertTrue(errors.toString().startsWith("Error: line 9,"));
+        assertEquals(expected.toString(),
+                     output.toString().replace(System.lineSeparator(),
+                                               "\n"));
+    }
+
+    @Test
+    public void testPrefixMatchesMachine() {
+        Machine mach = navalMachine();
+        Main.setUp(mach, GROUND);
+        int[][] prefix = IndicatorBatch.prefix(mach);
+        assertEquals(8, prefix.length);
+        for (int j = 0; j < prefix.length; j += 1) {
+            int c = (5 * j + 3) % 26;
+            assertEquals(mach.convert(c), prefix[j][c]);
+        }
+    }
+
+}
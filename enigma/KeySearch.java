@@ -0,0 +1,293 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** Exhaustive key search over the keys matched by a template setting line
+ *  (see KeySpace), spread over several local worker processes.  Each key
+ *  is scored on the start of a ciphertext: with a crib (known plaintext
+ *  for the start of the message), by the number of letters that decrypt
+ *  to it, and otherwise by the index of coincidence of the decryption
+ *  (as the number of pairs of equal letters).  The best keys are printed
+ *  with their scores, best first.
+ *
+ *  The calling process coordinates the search (see SearchCoordinator) and
+ *  launches the workers, which are copies of this program given the same
+ *  arguments and the coordinator's port.
+ *  @author Oumar Balde
+ */
+public class KeySearch {
+
+    /** Default number of candidates reported. */
+    static final int DEFAULT_TOP = 10;
+
+    /** Default number of keys a worker searches between reports. */
+    static final int DEFAULT_CHUNK = 4096;
+
+    /** Number of ranges into which the search is initially split, per
+     *  worker. */
+    static final int SPLITS = 8;
+
+    /** Number of ciphertext letters scored when there is no crib. */
+    static final int SAMPLE = 200;
+
+    /** Time between checks that workers are still alive, in
+     *  milliseconds. */
+    static final long POLL_MILLIS = 200;
+
+    /** Search as specified by ARGS, which are
+     *      [--workers=N] [--top=K] [--crib=TEXT] [--checkpoint=FILE]
+     *      [--chunk=N] CONFIG TEMPLATE CIPHERTEXT
+     *  where CONFIG names a configuration file, TEMPLATE is a template
+     *  setting line, and CIPHERTEXT names a file containing the message.
+     *  With --worker=PORT, run as a worker for the coordinator on loopback
+     *  port PORT instead.  Exits with code 1 on errors. */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--workers=(\\d+) --top=(\\d+) --crib=(.*) "
+                                + "--checkpoint=(.*) --chunk=(\\d+) "
+                                + "--worker=(\\d+) --=(.*){3}", args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.KeySearch [--workers=N] "
+                            + "[--top=K] [--crib=TEXT] [--checkpoint=FILE] "
+                            + "[--chunk=N] CONFIG TEMPLATE CIPHERTEXT");
+            }
+            List<String> files = options.get("--");
+            Machine machine;
+            try (Scanner config = Main.getInput(files.get(0))) {
+                machine = Main.readConfig(config);
+            }
+            KeySearch search =
+                new KeySearch(machine, files.get(1), read(files.get(2)),
+                              options.contains("--crib")
+                              ? options.getFirst("--crib") : "");
+            int top = number(options, "--top", DEFAULT_TOP);
+            int chunk = number(options, "--chunk", DEFAULT_CHUNK);
+            if (options.contains("--worker")) {
+                search.work(number(options, "--worker", 0), top, chunk);
+                return;
+            }
+            int workers = number(options, "--workers",
+                                 Runtime.getRuntime().availableProcessors());
+            File checkpoint = options.contains("--checkpoint")
+                ? new File(options.getFirst("--checkpoint")) : null;
+            SearchCoordinator coordinator =
+                search.coordinator(top, chunk, workers * SPLITS, checkpoint);
+            TopCandidates best =
+                finish(coordinator, launch(coordinator.port(), workers, args));
+            for (int k = 0; k < best.size(); k += 1) {
+                System.out.printf("%6d %s%n", best.score(k),
+                                  search.space().describe(best.index(k)));
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A search over the keys matched by TEMPLATE for the rotors
+     *  available to M, scoring keys on CIPHERTEXT, using CRIB if it is
+     *  not empty. */
+    KeySearch(Machine M, String template, String ciphertext, String crib) {
+        _machine = M;
+        _space = new KeySpace(M, template);
+        Alphabet alpha = M.alphabet();
+        if (crib.length() > ciphertext.length()) {
+            throw error("crib is longer than the ciphertext");
+        }
+        _sample = new int[crib.isEmpty()
+                          ? Math.min(SAMPLE, ciphertext.length())
+                          : crib.length()];
+        _crib = new int[crib.length()];
+        for (int i = 0; i < _sample.length; i += 1) {
+            _sample[i] = alpha.toInt(ciphertext.charAt(i));
+            if (_sample[i] == -1) {
+                throw error("ciphertext letter %c not in alphabet",
+                            ciphertext.charAt(i));
+            }
+        }
+        for (int i = 0; i < _crib.length; i += 1) {
+            _crib[i] = alpha.toInt(crib.charAt(i));
+            if (_crib[i] == -1) {
+                throw error("crib letter %c not in alphabet", crib.charAt(i));
+            }
+        }
+        _counts = new int[alpha.size()];
+        char[] sample = ciphertext.substring(0, _sample.length).toCharArray();
+        _job = String.format("%s crib=%s config=%s text=%s", template, crib,
+                             ResultCache.configId(M),
+                             ResultCache.key("", 0, sample, 0,
+                                             sample.length));
+    }
+
+    /** Return the keys I search. */
+    KeySpace space() {
+        return _space;
+    }
+
+    /** Return the score of key INDEX. */
+    long score(long index) {
+        _space.set(_machine, index);
+        long result = 0;
+        if (_crib.length > 0) {
+            for (int i = 0; i < _sample.length; i += 1) {
+                if (_machine.convert(_sample[i]) == _crib[i]) {
+                    result += 1;
+                }
+            }
+            return result;
+        }
+        Arrays.fill(_counts, 0);
+        for (int c : _sample) {
+            _counts[_machine.convert(c)] += 1;
+        }
+        for (int count : _counts) {
+            result += count * (count - 1);
+        }
+        return result;
+    }
+
+    /** Return a coordinator for my search keeping the TOP best keys, for
+     *  workers searching CHUNK keys between reports, initially split into
+     *  SPLITS ranges, and checkpointed to CHECKPOINT if it is non-null. */
+    SearchCoordinator coordinator(int top, int chunk, int splits,
+                                  File checkpoint) {
+        return new SearchCoordinator(_job, _space.size(), chunk, top, splits,
+                                     checkpoint);
+    }
+
+    /** Search the ranges handed out by the coordinator on loopback port
+     *  PORT, reporting my TOP best keys and my progress every CHUNK keys,
+     *  until told to stop or the connection fails. */
+    void work(int port, int top, int chunk) {
+        TopCandidates best = new TopCandidates(top);
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                                        port)) {
+            BufferedReader in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream()));
+            PrintWriter out = new PrintWriter(
+                new BufferedOutputStream(socket.getOutputStream()));
+            out.println("READY");
+            out.flush();
+            long pos = 0, limit = 0;
+            for (String reply = in.readLine(); reply != null;
+                 reply = in.readLine()) {
+                Scanner words = new Scanner(reply);
+                String command = words.next();
+                if (command.equals("STOP")) {
+                    return;
+                } else if (command.equals("RANGE")) {
+                    pos = words.nextLong();
+                    limit = words.nextLong();
+                } else {
+                    limit = words.nextLong();
+                }
+                for (long end = Math.min(limit, pos + chunk); pos < end;
+                     pos += 1) {
+                    long score = score(pos);
+                    if (best.offer(score, pos)) {
+                        out.printf("CAND %d %d%n", score, pos);
+                    }
+                }
+                out.printf("AT %d%n", pos);
+                out.flush();
+            }
+        } catch (IOException excp) {
+            throw error("lost contact with coordinator: %s",
+                        excp.getMessage());
+        }
+    }
+
+    /** Start WORKERS worker processes for the coordinator on loopback
+     *  port PORT, passing each the arguments ARGS, returning them. */
+    static List<Process> launch(int port, int workers, String... args) {
+        ArrayList<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java")
+                    .toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(KeySearch.class.getName());
+        command.add("--worker=" + port);
+        command.addAll(Arrays.asList(args));
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        ArrayList<Process> result = new ArrayList<>();
+        try {
+            for (int i = 0; i < workers; i += 1) {
+                result.add(builder.start());
+            }
+        } catch (IOException excp) {
+            result.forEach(Process::destroy);
+            throw error("could not start worker: %s", excp.getMessage());
+        }
+        return result;
+    }
+
+    /** Wait for COORDINATOR's search to finish and return its best keys,
+     *  then close it and stop WORKERS.  It is an error for all the workers
+     *  to die first. */
+    static TopCandidates finish(SearchCoordinator coordinator,
+                                List<Process> workers) {
+        try {
+            while (!coordinator.await(POLL_MILLIS)) {
+                if (workers.stream().noneMatch(Process::isAlive)) {
+                    throw error("all workers failed with %d keys unsearched",
+                                coordinator.remaining());
+                }
+            }
+            return coordinator.best();
+        } finally {
+            coordinator.close();
+            workers.forEach(Process::destroy);
+        }
+    }
+
+    /** Return the contents of the file named NAME, without whitespace. */
+    private static String read(String name) {
+        try {
+            return new String(Files.readAllBytes(Paths.get(name)))
+                .replaceAll("\\s", "");
+        } catch (IOException excp) {
+            throw error("could not read %s", name);
+        }
+    }
+
+    /** Return the value of the numeric option NAME in OPTIONS, or DFLT if
+     *  it is absent. */
+    private static int number(CommandArgs options, String name, int dflt) {
+        return options.contains(name)
+            ? Integer.parseInt(options.getFirst(name)) : dflt;
+    }
+
+    /** The machine on which keys are tried. */
+    private final Machine _machine;
+    /** The keys searched. */
+    private final KeySpace _space;
+    /** The ciphertext letters scored. */
+    private final int[] _sample;
+    /** The crib, or an empty array. */
+    private final int[] _crib;
+    /** Letter counts used in scoring without a crib. */
+    private final int[] _counts;
+    /** Description of the search, identifying its checkpoints. */
+    private final String _job;
+}
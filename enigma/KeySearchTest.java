@@ -0,0 +1,156 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Scanner;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for KeySpace, TopCandidates,
+ *  SearchCoordinator and KeySearch.
+ *  @author Oumar Balde
+ */
+public class KeySearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The key the search should find. */
+    private static final String KEY = "* B Beta VII IV III QRAA (TD)";
+
+    /** The template searched. */
+    private static final String TEMPLATE = "* B Beta ? ? III ??AA (TD)";
+
+    /** Known start of the message. */
+    private static final String CRIB = "WETTERVORHERSAGEBISKAYA";
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testKeySpace() {
+        Machine mach = navalMachine();
+        KeySpace space = new KeySpace(mach, TEMPLATE);
+        assertEquals(7 * 6 * 26 * 26, space.size());
+        assertTrue(space.describe(0).endsWith(" III AAAA (TD)"));
+        assertTrue(space.describe(1).endsWith(" III ABAA (TD)"));
+        assertTrue(space.describe(26).endsWith(" III BAAA (TD)"));
+        Machine check = navalMachine();
+        for (long index : new long[] { 0, 5000, 700, 28391, 701 }) {
+            space.set(mach, index);
+            Main.setUp(check, space.describe(index));
+            assertEquals(check.convert("HELLOWORLD"),
+                         mach.convert("HELLOWORLD"));
+        }
+    }
+
+    @Test
+    public void testTopCandidates() {
+        TopCandidates best = new TopCandidates(3);
+        assertTrue(best.offer(5, 10));
+        assertTrue(best.offer(7, 3));
+        assertFalse(best.offer(5, 10));
+        assertTrue(best.offer(5, 2));
+        assertFalse(best.offer(1, 1));
+        assertTrue(best.offer(6, 4));
+        assertEquals(3, best.size());
+        assertEquals(3, best.index(0));
+        assertEquals(4, best.index(1));
+        assertEquals(2, best.index(2));
+    }
+
+    @Test
+    public void testDistributedSearch() throws IOException {
+        Machine mach = navalMachine();
+        Main.setUp(mach, KEY);
+        String ciphertext = mach.convert(CRIB + "VONSIEBENUHRBISNEUNUHR");
+        String[] args = {
+            "--crib=" + CRIB, "--chunk=256",
+            tempFile(navalConfig()).getPath(), TEMPLATE,
+            tempFile(ciphertext).getPath()
+        };
+        File checkpoint = File.createTempFile("enigma", ".ckpt");
+        checkpoint.delete();
+        checkpoint.deleteOnExit();
+
+        KeySearch search =
+            new KeySearch(navalMachine(), TEMPLATE, ciphertext, CRIB);
+        SearchCoordinator coordinator =
+            search.coordinator(3, 256, 8, checkpoint);
+        try (Socket dying = new Socket(InetAddress.getLoopbackAddress(),
+                                       coordinator.port())) {
+            PrintWriter out = new PrintWriter(dying.getOutputStream(), true);
+            BufferedReader in = new BufferedReader(
+                new InputStreamReader(dying.getInputStream()));
+            out.println("READY");
+            assertTrue(in.readLine().startsWith("RANGE 0 "));
+        }
+        TopCandidates best =
+            KeySearch.finish(coordinator,
+                             KeySearch.launch(coordinator.port(), 2, args));
+        assertEquals(CRIB.length(), best.score(0));
+        assertEquals(KEY, search.space().describe(best.index(0)));
+        assertTrue(best.score(1) < best.score(0));
+
+        try (Scanner saved = new Scanner(checkpoint)) {
+            saved.nextLine();
+            saved.nextLine();
+            assertEquals("cand", saved.next());
+        }
+        SearchCoordinator resumed =
+            search.coordinator(3, 256, 8, checkpoint);
+        assertEquals(0, resumed.remaining());
+        assertEquals(best.index(0), resumed.best().index(0));
+        resumed.close();
+    }
+
+    @Test
+    public void testCheckpointNeedsSameConfig() throws IOException {
+        Machine mach = navalMachine(KEY);
+        String ciphertext = mach.convert(CRIB + "VONSIEBENUHRBISNEUNUHR");
+        KeySearch search =
+            new KeySearch(navalMachine(), TEMPLATE, ciphertext, CRIB);
+        File checkpoint = File.createTempFile("enigma", ".ckpt");
+        checkpoint.deleteOnExit();
+        checkpoint.delete();
+        search.coordinator(3, 256, 8, checkpoint).close();
+        String job;
+        try (Scanner saved = new Scanner(checkpoint)) {
+            job = saved.nextLine();
+        }
+        long size = search.space().size();
+        Files.write(checkpoint.toPath(),
+                    String.format("%s%n%d%nrange 0 10%ncand 5 3%n", job, size)
+                    .getBytes());
+        SearchCoordinator resumed = search.coordinator(3, 256, 8, checkpoint);
+        assertEquals(10, resumed.remaining());
+        resumed.close();
+
+        ArrayList<Rotor> rotors = navalRotors();
+        rotors.replaceAll((r) -> !r.name().equals("III") ? r
+                          : new MovingRotor("III", new Permutation(
+                                  NAVALA.get("IV"), UPPER), "V"));
+        KeySearch rewired =
+            new KeySearch(new Machine(UPPER, 5, 3, rotors), TEMPLATE,
+                          ciphertext, CRIB);
+        SearchCoordinator fresh = rewired.coordinator(3, 256, 8, checkpoint);
+        assertEquals(size, fresh.remaining());
+        assertEquals(0, fresh.best().size());
+        fresh.close();
+    }
+
+}
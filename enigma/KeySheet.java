@@ -0,0 +1,497 @@
+package enigma;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Scanner;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** Generates key sheets: lists of distinct random keys for the machine of
+ *  a configuration, printed as setting lines that Main accepts.  Each key
+ *  has a reflector in slot 0, distinct non-moving rotors in the slots
+ *  without pawls, distinct moving rotors in the rest (so that the last
+ *  rotor moves), a start setting, optionally a ring setting, and a given
+ *  number of plugboard pairs.
+ *
+ *  Keys are generated in parallel, in chunks, each drawn from its own
+ *  SplittableRandom split in order from one seeded generator, and are
+ *  packed into a few longs each.  Duplicates are rejected as they are
+ *  drawn by a Bloom filter shared by all threads; because two threads
+ *  drawing the same key at once may both get past it, the finished sheet
+ *  is also checked exactly, by sorting hashes of the keys and comparing
+ *  keys whose hashes agree, and any duplicates are drawn again.
+ *  @author Oumar Balde
+ */
+public class KeySheet {
+
+    /** Number of keys generated at a time by one thread. */
+    static final int CHUNK = 1 << 14;
+
+    /** Default number of keys, plugboard pairs. */
+    static final int DEFAULT_COUNT = 31, DEFAULT_PAIRS = 10;
+
+    /** Bits of the Bloom filter per key, and number of bits set per key. */
+    static final int BLOOM_BITS = 16, BLOOM_HASHES = 7;
+
+    /** Print a key sheet as specified by ARGS, which are
+     *      [--count=N] [--pairs=P] [--rings] [--seed=S] [--threads=T]
+     *      CONFIG [OUTPUT]
+     *  where CONFIG names a configuration file and OUTPUT, if present,
+     *  names the output file (compressed if it ends in ".gz").  Exits with
+     *  code 1 on errors. */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--count=(\\d+) --pairs=(\\d+) --rings "
+                                + "--seed=(-?\\d+) --threads=(\\d+) "
+                                + "--=(.*){1,2}", args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.KeySheet [--count=N] "
+                            + "[--pairs=P] [--rings] [--seed=S] "
+                            + "[--threads=T] CONFIG [OUTPUT]");
+            }
+            List<String> files = options.get("--");
+            Machine machine;
+            try (Scanner config = Main.getInput(files.get(0))) {
+                machine = Main.readConfig(config);
+            }
+            KeySheet sheet =
+                new KeySheet(machine,
+                             (int) number(options, "--pairs", DEFAULT_PAIRS),
+                             options.contains("--rings"));
+            long[] keys =
+                sheet.generate((int) number(options, "--count",
+                                            DEFAULT_COUNT),
+                               number(options, "--seed", System.nanoTime()),
+                               (int) number(options, "--threads",
+                                            Runtime.getRuntime()
+                                            .availableProcessors()));
+            try {
+                OutputStream out = files.size() > 1
+                    ? CompressedStreams.output(
+                        new FileOutputStream(files.get(1)), files.get(1))
+                    : System.out;
+                Writer output =
+                    new BufferedWriter(new OutputStreamWriter(out),
+                                       CompressedStreams.BUFFER_SIZE);
+                sheet.write(keys, output);
+                if (out == System.out) {
+                    output.flush();
+                } else {
+                    output.close();
+                }
+            } catch (IOException excp) {
+                throw error("could not write key sheet: %s",
+                            excp.getMessage());
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A generator of keys for M, with PAIRS plugboard pairs, and ring
+     *  settings iff RINGS. */
+    KeySheet(Machine M, int pairs, boolean rings) {
+        _alphabet = M.alphabet();
+        _numRotors = M.numRotors();
+        _pairs = pairs;
+        _rings = rings;
+        ArrayList<String> reflectors = new ArrayList<>(),
+            fixed = new ArrayList<>(), moving = new ArrayList<>();
+        for (Rotor rotor : M.availableRotors()) {
+            if (rotor.reflecting()) {
+                reflectors.add(rotor.name());
+            } else if (rotor.rotates()) {
+                moving.add(rotor.name());
+            } else {
+                fixed.add(rotor.name());
+            }
+        }
+        _reflectors = reflectors.toArray(new String[0]);
+        _fixed = fixed.toArray(new String[0]);
+        _moving = moving.toArray(new String[0]);
+        _numMoving = M.numPawls();
+        _numFixed = _numRotors - 1 - _numMoving;
+        if (_reflectors.length == 0) {
+            throw error("configuration has no reflector");
+        }
+        if (_numMoving == 0 || _moving.length < _numMoving) {
+            throw error("configuration needs %d moving rotors", _numMoving);
+        }
+        if (_fixed.length < _numFixed) {
+            throw error("configuration needs %d non-moving rotors",
+                        _numFixed);
+        }
+        if (pairs < 0 || 2 * pairs > _alphabet.size()) {
+            throw error("cannot make %d plugboard pairs", pairs);
+        }
+        _rotorBits = bits(Math.max(_reflectors.length,
+                                   Math.max(_fixed.length, _moving.length)));
+        _letterBits = bits(_alphabet.size());
+        int total = _numRotors * _rotorBits
+            + (_numRotors - 1) * _letterBits * (rings ? 2 : 1)
+            + 2 * pairs * _letterBits;
+        _words = (total + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    /** Return the number of distinct keys I can generate. */
+    double size() {
+        int n = _alphabet.size();
+        double result = _reflectors.length
+            * arrangements(_fixed.length, _numFixed)
+            * arrangements(_moving.length, _numMoving)
+            * Math.pow(n, (_numRotors - 1) * (_rings ? 2 : 1));
+        for (int i = 0; i < _pairs; i += 1) {
+            result *= (double) (n - 2 * i) * (n - 2 * i - 1) / 2 / (i + 1);
+        }
+        return result;
+    }
+
+    /** Return the number of longs used by each key. */
+    int words() {
+        return _words;
+    }
+
+    /** Return COUNT distinct keys, each packed into words() consecutive
+     *  longs, generated from SEED on THREADS threads.  With one thread,
+     *  the result depends only on SEED; with more, the keys that the
+     *  Bloom filter rejects, and so the keys drawn in their place, depend
+     *  on the order in which the threads run. */
+    long[] generate(int count, long seed, int threads) {
+        if (count > size() / 2) {
+            throw error("cannot make %d distinct keys from about %.3g",
+                        count, size());
+        }
+        if ((long) count * _words > Integer.MAX_VALUE) {
+            throw error("too many keys");
+        }
+        long[] keys = new long[count * _words];
+        AtomicLongArray bloom =
+            new AtomicLongArray(Math.max(1, (int) Math.min(
+                Integer.MAX_VALUE, (long) count * BLOOM_BITS / Long.SIZE)));
+        SplittableRandom root = new SplittableRandom(seed);
+        int[] all = new int[count];
+        for (int k = 0; k < count; k += 1) {
+            all[k] = k;
+        }
+        for (int[] todo = all; todo.length > 0;
+             todo = duplicates(keys, count)) {
+            draw(keys, todo, root, bloom, threads);
+        }
+        return keys;
+    }
+
+    /** Draw the keys numbered TODO into KEYS, using THREADS threads and
+     *  generators split from ROOT, rejecting keys found in BLOOM. */
+    private void draw(long[] keys, int[] todo, SplittableRandom root,
+                      AtomicLongArray bloom, int threads) {
+        ArrayList<Callable<Void>> tasks = new ArrayList<>();
+        for (int start = 0; start < todo.length; start += CHUNK) {
+            int first = start, end = Math.min(todo.length, start + CHUNK);
+            SplittableRandom random = root.split();
+            tasks.add(() -> {
+                Drawing drawing = new Drawing(random);
+                for (int i = first; i < end; i += 1) {
+                    do {
+                        drawing.draw(keys, todo[i] * _words);
+                    } while (!addToBloom(bloom, keys, todo[i] * _words));
+                }
+                return null;
+            });
+        }
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        try {
+            for (Future<Void> task : workers.invokeAll(tasks)) {
+                task.get();
+            }
+        } catch (ExecutionException excp) {
+            throw error("internal error: %s", excp.getCause());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    /** Return the numbers of all but the first of each group of equal keys
+     *  among the COUNT keys in KEYS. */
+    private int[] duplicates(long[] keys, int count) {
+        long[] hashes = new long[count];
+        for (int k = 0; k < count; k += 1) {
+            hashes[k] = hash(keys, k * _words);
+        }
+        long[] sorted = hashes.clone();
+        Arrays.parallelSort(sorted);
+        HashMap<Long, ArrayList<Integer>> groups = new HashMap<>();
+        for (int i = 1; i < count; i += 1) {
+            if (sorted[i] == sorted[i - 1]) {
+                groups.put(sorted[i], new ArrayList<>());
+            }
+        }
+        ArrayList<Integer> result = new ArrayList<>();
+        for (int k = 0; k < count; k += 1) {
+            ArrayList<Integer> group = groups.get(hashes[k]);
+            if (group == null) {
+                continue;
+            }
+            for (int j : group) {
+                if (Arrays.equals(keys, k * _words, (k + 1) * _words,
+                                  keys, j * _words, (j + 1) * _words)) {
+                    result.add(k);
+                    break;
+                }
+            }
+            group.add(k);
+        }
+        return result.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /** Set the bits of the key at KEYS[START] in BLOOM, returning false if
+     *  they were all set already. */
+    private boolean addToBloom(AtomicLongArray bloom, long[] keys,
+                               int start) {
+        long h = hash(keys, start);
+        long h2 = (h >>> 32) | 1;
+        long size = (long) bloom.length() * Long.SIZE;
+        boolean fresh = false;
+        for (int i = 0; i < BLOOM_HASHES; i += 1) {
+            long bit = Math.floorMod(h + i * h2, size);
+            int word = (int) (bit / Long.SIZE);
+            long mask = 1L << bit;
+            if ((bloom.getAndAccumulate(word, mask, (a, b) -> a | b)
+                 & mask) == 0) {
+                fresh = true;
+            }
+        }
+        return fresh;
+    }
+
+    /** Return a 64-bit hash of the key at KEYS[START]. */
+    private long hash(long[] keys, int start) {
+        long h = 0x9e3779b97f4a7c15L;
+        for (int i = start; i < start + _words; i += 1) {
+            h = (h ^ keys[i]) * 0xbf58476d1ce4e5b9L;
+            h ^= h >>> 31;
+        }
+        return h;
+    }
+
+    /** Write the setting lines of KEYS to OUTPUT, one per line. */
+    void write(long[] keys, Writer output) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int start = 0; start < keys.length; start += _words) {
+            line.setLength(0);
+            describe(keys, start, line);
+            line.append(System.lineSeparator());
+            output.append(line);
+        }
+    }
+
+    /** Return the setting line of key K of KEYS. */
+    String describe(long[] keys, int k) {
+        StringBuilder result = new StringBuilder();
+        describe(keys, k * _words, result);
+        return result.toString();
+    }
+
+    /** Append to LINE the setting line of the key at KEYS[START]. */
+    private void describe(long[] keys, int start, StringBuilder line) {
+        Unpacker in = new Unpacker(keys, start);
+        line.append("* ").append(_reflectors[in.next(_rotorBits)]);
+        for (int i = 0; i < _numFixed; i += 1) {
+            line.append(' ').append(_fixed[in.next(_rotorBits)]);
+        }
+        for (int i = 0; i < _numMoving; i += 1) {
+            line.append(' ').append(_moving[in.next(_rotorBits)]);
+        }
+        for (int pass = _rings ? 2 : 1; pass > 0; pass -= 1) {
+            line.append(' ');
+            for (int i = 1; i < _numRotors; i += 1) {
+                line.append(_alphabet.toChar(in.next(_letterBits)));
+            }
+        }
+        for (int i = 0; i < _pairs; i += 1) {
+            line.append(" (").append(_alphabet.toChar(in.next(_letterBits)))
+                .append(_alphabet.toChar(in.next(_letterBits))).append(')');
+        }
+    }
+
+    /** Return the number of bits needed to hold values less than N. */
+    private static int bits(int n) {
+        return Math.max(1, Integer.SIZE - Integer.numberOfLeadingZeros(n - 1));
+    }
+
+    /** Return the number of ways of arranging K of N things in order. */
+    private static double arrangements(int n, int k) {
+        double result = 1;
+        for (int i = 0; i < k; i += 1) {
+            result *= n - i;
+        }
+        return result;
+    }
+
+    /** Return the value of the numeric option NAME in OPTIONS, or DFLT if
+     *  it is absent. */
+    private static long number(CommandArgs options, String name, long dflt) {
+        return options.contains(name)
+            ? Long.parseLong(options.getFirst(name)) : dflt;
+    }
+
+    /** Draws keys from one generator, with scratch space of its own. */
+    private class Drawing {
+
+        /** Draws keys using RANDOM. */
+        Drawing(SplittableRandom random) {
+            _random = random;
+            _fixedOrder = identity(_fixed.length);
+            _movingOrder = identity(_moving.length);
+            _letters = identity(_alphabet.size());
+            _plugs = new int[_pairs];
+        }
+
+        /** Draw a key into KEYS[START .. START + words() - 1]. */
+        void draw(long[] keys, int start) {
+            Arrays.fill(keys, start, start + _words, 0);
+            _keys = keys;
+            _word = start;
+            _bit = 0;
+            put(_random.nextInt(_reflectors.length), _rotorBits);
+            shuffle(_fixedOrder, _numFixed);
+            for (int i = 0; i < _numFixed; i += 1) {
+                put(_fixedOrder[i], _rotorBits);
+            }
+            shuffle(_movingOrder, _numMoving);
+            for (int i = 0; i < _numMoving; i += 1) {
+                put(_movingOrder[i], _rotorBits);
+            }
+            int n = _alphabet.size();
+            for (int i = (_numRotors - 1) * (_rings ? 2 : 1); i > 0; i -= 1) {
+                put(_random.nextInt(n), _letterBits);
+            }
+            shuffle(_letters, 2 * _pairs);
+            for (int i = 0; i < _pairs; i += 1) {
+                int a = _letters[2 * i], b = _letters[2 * i + 1];
+                _plugs[i] = Math.min(a, b) * n + Math.max(a, b);
+            }
+            Arrays.sort(_plugs);
+            for (int i = 0; i < _pairs; i += 1) {
+                put(_plugs[i] / n, _letterBits);
+                put(_plugs[i] % n, _letterBits);
+            }
+        }
+
+        /** Move a random selection of K of the values in ORDER to its
+         *  first K positions, in random order. */
+        private void shuffle(int[] order, int k) {
+            for (int i = 0; i < k; i += 1) {
+                int j = i + _random.nextInt(order.length - i);
+                int t = order[i];
+                order[i] = order[j];
+                order[j] = t;
+            }
+        }
+
+        /** Append the low BITS bits of VALUE to the key being drawn. */
+        private void put(long value, int bits) {
+            _keys[_word] |= value << _bit;
+            if (_bit + bits > Long.SIZE) {
+                _keys[_word + 1] |= value >>> (Long.SIZE - _bit);
+            }
+            _bit += bits;
+            if (_bit >= Long.SIZE) {
+                _bit -= Long.SIZE;
+                _word += 1;
+            }
+        }
+
+        /** The generator. */
+        private final SplittableRandom _random;
+        /** Scratch orders of the non-moving and moving rotors, and of the
+         *  letters. */
+        private final int[] _fixedOrder, _movingOrder, _letters;
+        /** Scratch space for the plugboard pairs, each encoded as its
+         *  first letter * alphabet size + its second letter. */
+        private final int[] _plugs;
+        /** The keys being written. */
+        private long[] _keys;
+        /** Position of the next bit to be written in _keys: bit _bit of
+         *  word _word. */
+        private int _word, _bit;
+    }
+
+    /** Reads the fields of a packed key in order. */
+    private static class Unpacker {
+
+        /** Reads the key at KEYS[START]. */
+        Unpacker(long[] keys, int start) {
+            _keys = keys;
+            _word = start;
+        }
+
+        /** Return the next BITS bits of the key. */
+        int next(int bits) {
+            long value = _keys[_word] >>> _bit;
+            if (_bit + bits > Long.SIZE) {
+                value |= _keys[_word + 1] << (Long.SIZE - _bit);
+            }
+            _bit += bits;
+            if (_bit >= Long.SIZE) {
+                _bit -= Long.SIZE;
+                _word += 1;
+            }
+            return (int) (value & ((1L << bits) - 1));
+        }
+
+        /** The keys. */
+        private final long[] _keys;
+        /** Position of the next bit: bit _bit of word _word. */
+        private int _word, _bit;
+    }
+
+    /** Return the array 0, 1, ..., N-1. */
+    private static int[] identity(int n) {
+        int[] result = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            result[i] = i;
+        }
+        return result;
+    }
+
+    /** The alphabet. */
+    private final Alphabet _alphabet;
+    /** Number of slots. */
+    private final int _numRotors;
+    /** Number of plugboard pairs. */
+    private final int _pairs;
+    /** True iff keys have ring settings. */
+    private final boolean _rings;
+    /** Names of the reflectors, non-moving and moving rotors. */
+    private final String[] _reflectors, _fixed, _moving;
+    /** Number of slots for non-moving rotors (other than the reflector)
+     *  and for moving rotors. */
+    private final int _numFixed, _numMoving;
+    /** Bits used for each rotor and each letter of a key. */
+    private final int _rotorBits, _letterBits;
+    /** Number of longs per key. */
+    private final int _words;
+}
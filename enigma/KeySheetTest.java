@@ -0,0 +1,75 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeySheet class.
+ *  @author Oumar Balde
+ */
+public class KeySheetTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the lines written by SHEET for KEYS. */
+    private static String[] lines(KeySheet sheet, long[] keys)
+        throws IOException {
+        StringWriter output = new StringWriter();
+        sheet.write(keys, output);
+        return output.toString().split(System.lineSeparator());
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testSheet() throws IOException {
+        KeySheet sheet = new KeySheet(navalMachine(), 10, true);
+        assertEquals(3, sheet.words());
+        long[] keys = sheet.generate(40000, 42, 3);
+        String[] lines = lines(sheet, keys);
+        assertEquals(40000, lines.length);
+        assertEquals(40000, new HashSet<>(Arrays.asList(lines))
+                     .size());
+        Machine mach = navalMachine();
+        for (int k = 0; k < lines.length; k += 97) {
+            Main.setUp(mach, lines[k]);
+            assertEquals(10, mach.plugboard().cycles().split("\\(").length
+                         - 1);
+            assertTrue(mach.getRotor(0).reflecting());
+        }
+        assertArrayEquals(sheet.generate(1000, 42, 1),
+                          sheet.generate(1000, 42, 1));
+    }
+
+    @Test
+    public void testDuplicatesRedrawn() throws IOException {
+        Machine mach = new Machine(UPPER, 3, 2, navalRotors());
+        KeySheet sheet = new KeySheet(mach, 0, false);
+        assertEquals(2 * 8 * 7 * 26 * 26, sheet.size(), 0.5);
+        String[] lines = lines(sheet, sheet.generate(35000, 7, 2));
+        assertEquals(35000, new HashSet<>(Arrays.asList(lines))
+                     .size());
+        for (String line : lines) {
+            Main.setUp(mach, line);
+        }
+        try {
+            sheet.generate(40000, 7, 2);
+            fail("impossible number of keys accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+}
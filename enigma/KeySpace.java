@@ -0,0 +1,165 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** The keys matched by a template setting line, numbered from 0.  A
+ *  template has the form of a setting line, except that any rotor name may
+ *  be "?", standing for any available rotor of the kind its slot needs
+ *  (each rotor being used at most once), and any letter of the setting may
+ *  be '?', standing for any letter.  The ring setting and plugboard, if
+ *  present, are as given.  Keys are numbered with the start positions
+ *  varying fastest, so that consecutive keys mostly share their rotors.
+ *  @author Oumar Balde
+ */
+class KeySpace {
+
+    /** The key space of TEMPLATE for the rotors available to M. */
+    KeySpace(Machine M, String template) {
+        Lexer line = Lexer.of(template);
+        int numRotors = M.numRotors();
+        if (!line.isSetting() || line.numTokens() < numRotors + 2) {
+            throw error("template must have %d rotor names and a setting",
+                        numRotors);
+        }
+        _alphabet = M.alphabet();
+        String[] names = new String[numRotors];
+        for (int i = 0; i < numRotors; i += 1) {
+            names[i] = line.token(i + 1);
+        }
+        _orders = new ArrayList<>();
+        choose(M, names, 0);
+        if (_orders.isEmpty()) {
+            throw error("no rotors fit template %s", template);
+        }
+
+        String setting = line.token(numRotors + 1);
+        if (setting.length() != numRotors - 1) {
+            throw error("template setting %s has the wrong length", setting);
+        }
+        _base = new int[numRotors];
+        int wild = 0;
+        for (int i = 0; i < setting.length(); i += 1) {
+            if (setting.charAt(i) == '?') {
+                wild += 1;
+            } else if (!_alphabet.contains(setting.charAt(i))) {
+                throw error("letter %c not in alphabet", setting.charAt(i));
+            } else {
+                _base[i + 1] = _alphabet.toInt(setting.charAt(i));
+            }
+        }
+        _wild = new int[wild];
+        for (int i = 0, k = 0; i < setting.length(); i += 1) {
+            if (setting.charAt(i) == '?') {
+                _wild[k] = i + 1;
+                k += 1;
+            }
+        }
+        long positions = 1;
+        for (int i = 0; i < wild; i += 1) {
+            positions = Math.multiplyExact(positions, _alphabet.size());
+        }
+        _positions = positions;
+        _size = Math.multiplyExact(positions, _orders.size());
+        _rest = numRotors + 2 < line.numTokens()
+            ? " " + line.rest(numRotors + 2) : "";
+    }
+
+    /** Add to _orders all rotor choices that complete NAMES from slot K
+     *  on for M, filling in "?" entries. */
+    private void choose(Machine M, String[] names, int k) {
+        if (k == names.length) {
+            _orders.add(names.clone());
+            return;
+        }
+        if (!names[k].equals("?")) {
+            choose(M, names, k + 1);
+            return;
+        }
+        int fixed = M.numRotors() - M.numPawls();
+        for (Rotor rotor : M.availableRotors()) {
+            boolean fits = k == 0 ? rotor.reflecting()
+                : k < fixed ? !rotor.rotates() && !rotor.reflecting()
+                : rotor.rotates();
+            if (fits && !Arrays.asList(names).contains(rotor.name())) {
+                names[k] = rotor.name();
+                choose(M, names, k + 1);
+                names[k] = "?";
+            }
+        }
+    }
+
+    /** Return the number of keys. */
+    long size() {
+        return _size;
+    }
+
+    /** Return the setting line for key INDEX. */
+    String describe(long index) {
+        String[] names = _orders.get((int) (index / _positions));
+        int[] setting = settings(index);
+        StringBuilder result = new StringBuilder("*");
+        for (String name : names) {
+            result.append(' ').append(name);
+        }
+        result.append(' ');
+        for (int k = 1; k < setting.length; k += 1) {
+            result.append(_alphabet.toChar(setting[k]));
+        }
+        return result.append(_rest).toString();
+    }
+
+    /** Set M, which must be the machine I was created for or a copy of
+     *  it, to key INDEX.  M is set up from scratch only when the rotors
+     *  differ from those of the key it was last set to by this method. */
+    void set(Machine M, long index) {
+        int order = (int) (index / _positions);
+        if (M != _machine || order != _order) {
+            Main.setUp(M, describe(index));
+            _machine = M;
+            _order = order;
+        }
+        long pos = index % _positions;
+        for (int k = 1; k < _base.length; k += 1) {
+            M.setRotor(k, _base[k]);
+        }
+        for (int i = _wild.length - 1; i >= 0; i -= 1) {
+            M.setRotor(_wild[i], (int) (pos % _alphabet.size()));
+            pos /= _alphabet.size();
+        }
+    }
+
+    /** Return the rotor settings of key INDEX, by slot. */
+    private int[] settings(long index) {
+        int[] result = _base.clone();
+        long pos = index % _positions;
+        for (int i = _wild.length - 1; i >= 0; i -= 1) {
+            result[_wild[i]] = (int) (pos % _alphabet.size());
+            pos /= _alphabet.size();
+        }
+        return result;
+    }
+
+    /** The alphabet of the machine. */
+    private final Alphabet _alphabet;
+    /** The possible rotor names for each slot, in key order. */
+    private final ArrayList<String[]> _orders;
+    /** The fixed part of the setting, by slot. */
+    private final int[] _base;
+    /** The slots whose settings vary, leftmost first. */
+    private final int[] _wild;
+    /** Number of start positions per choice of rotors. */
+    private final long _positions;
+    /** Number of keys. */
+    private final long _size;
+    /** The ring setting and plugboard of the template, with a leading
+     *  blank, or "". */
+    private final String _rest;
+    /** The machine last set by set(), and the index in _orders of its
+     *  rotors. */
+    private Machine _machine;
+    /** Index in _orders of the rotors _machine was last set to. */
+    private int _order = -1;
+}
@@ -0,0 +1,236 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+
+import static enigma.EnigmaException.*;
+
+/** Operates a machine interactively, a key at a time, as on the real
+ *  machine: each letter read lights its lamp at once, written in groups of
+ *  five, and every other key except Enter is ignored.  A line typed
+ *  starting with '*' is a setting line, echoed as typed (with backspace)
+ *  and applied at Enter; an error in it, or a letter typed before any
+ *  setting, is reported without ending the session, which lasts until the
+ *  end of the input or control-D.  A setting line in error leaves the
+ *  machine as it was.  Optionally, the rotor windows are shown at the
+ *  start of the current line and updated as keys are struck.
+ *
+ *  Each key costs one read, one conversion and one flush, so that the
+ *  lamp appears as soon as the terminal delivers the key; rawTerminal()
+ *  makes the terminal deliver keys without waiting for Enter.
+ *  @author Oumar Balde
+ */
+class Keyboard {
+
+    /** Control-D, which ends a session. */
+    static final int END = 4;
+
+    /** Keys that erase the last character of a setting line. */
+    static final char BACKSPACE = '\b', DELETE = 127;
+
+    /** Terminal sequences saving and restoring the cursor position. */
+    static final String SAVE_CURSOR = "\0337", RESTORE_CURSOR = "\0338";
+
+    /** A keyboard reading keys from INPUT and lighting the lamps of M on
+     *  OUTPUT, reporting errors on ERRORS, and showing the rotor windows
+     *  iff WINDOWS. */
+    Keyboard(Reader input, Machine M, PrintStream output, PrintStream errors,
+             boolean windows) {
+        _input = input;
+        _machine = M;
+        _alphabet = M.alphabet();
+        _lamps = new LineWriter(output);
+        _errors = errors;
+        _windows = windows;
+    }
+
+    /** Process keys until the end of the input or control-D. */
+    void run() {
+        try {
+            boolean afterReturn = false;
+            for (int key = _input.read(); key != -1 && key != END;
+                 key = _input.read()) {
+                char c = (char) key;
+                if (c == '\n' && afterReturn) {
+                    afterReturn = false;
+                    continue;
+                }
+                afterReturn = c == '\r';
+                if (c == '\r' || c == '\n') {
+                    newLine();
+                } else if (_setting != null) {
+                    type(c);
+                } else if (c == '*' && _count == 0) {
+                    _setting = new StringBuilder("*");
+                    _lamps.append(c);
+                } else {
+                    strike(c);
+                }
+                _lamps.flush();
+            }
+            if (_count > 0 || _setting != null) {
+                _lamps.newLine();
+            }
+            _lamps.flush();
+        } catch (IOException excp) {
+            throw error("could not read keys: %s", excp.getMessage());
+        }
+    }
+
+    /** Light the lamp for key C, if it is a letter (or the lower-case
+     *  form of one). */
+    private void strike(char c) {
+        if (!_alphabet.contains(c)) {
+            c = Character.toUpperCase(c);
+            if (!_alphabet.contains(c)) {
+                return;
+            }
+        }
+        if (!_ready) {
+            report("message without a configuration");
+            return;
+        }
+        if (_count > 0 && _count % Main.GROUP == 0) {
+            _lamps.append(' ');
+        }
+        _lamps.append(_alphabet.toChar(
+                          _machine.convert(_alphabet.toInt(c))));
+        _count += 1;
+        if (_windows) {
+            _lamps.append(SAVE_CURSOR).append('\r');
+            showWindows();
+            _lamps.append(RESTORE_CURSOR);
+        }
+    }
+
+    /** Add key C to the setting line being typed. */
+    private void type(char c) {
+        if (c == BACKSPACE || c == DELETE) {
+            if (_setting.length() > 1) {
+                _setting.setLength(_setting.length() - 1);
+                _lamps.append("\b \b");
+            }
+        } else if (c >= ' ') {
+            _setting.append(c);
+            _lamps.append(c);
+        }
+    }
+
+    /** End the current line, applying the setting line if one was being
+     *  typed. */
+    private void newLine() {
+        _lamps.newLine();
+        _count = 0;
+        _line += 1;
+        if (_setting != null) {
+            String line = _setting.toString();
+            _setting = null;
+            try {
+                Machine machine = _machine.copy();
+                Main.setUp(machine, Lexer.of(line, _line));
+                _machine = machine;
+                _ready = true;
+            } catch (EnigmaException excp) {
+                report(excp.getMessage());
+            }
+        }
+        if (_windows && _ready) {
+            showWindows();
+        }
+    }
+
+    /** Append the letters in the windows of the rotors, and a gap, to the
+     *  current line. */
+    private void showWindows() {
+        for (int k = 1; k < _machine.numRotors(); k += 1) {
+            _lamps.append(_alphabet.toChar(_machine.setting(k)));
+        }
+        _lamps.append("  ");
+    }
+
+    /** Report the error MSG on its own line. */
+    private void report(String msg) {
+        if (_count > 0) {
+            _lamps.newLine();
+            _count = 0;
+        }
+        _lamps.flush();
+        _errors.printf("Error: %s%n", msg);
+        _errors.flush();
+        if (_windows && _ready) {
+            showWindows();
+        }
+    }
+
+    /** If the standard input and output are a terminal, make it deliver
+     *  keys as they are struck, without echoing them, and return an action
+     *  that restores its previous modes, which is also run at exit.
+     *  Otherwise, or if the terminal cannot be changed, return null. */
+    static Runnable rawTerminal() {
+        if (System.console() == null) {
+            return null;
+        }
+        try {
+            String saved = stty("-g").trim();
+            stty("-icanon", "-echo", "min", "1");
+            Thread restore = new Thread(() -> {
+                try {
+                    stty(saved);
+                } catch (IOException excp) {
+                    /* Nothing more can be done. */
+                }
+            });
+            Runtime.getRuntime().addShutdownHook(restore);
+            return () -> {
+                Runtime.getRuntime().removeShutdownHook(restore);
+                restore.run();
+            };
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Run stty with ARGS on the terminal, returning its output. */
+    private static String stty(String... args) throws IOException {
+        String[] command = new String[args.length + 1];
+        command[0] = "stty";
+        System.arraycopy(args, 0, command, 1, args.length);
+        Process stty = new ProcessBuilder(command)
+            .redirectInput(new File("/dev/tty"))
+            .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        String result = new String(stty.getInputStream().readAllBytes());
+        try {
+            if (stty.waitFor() != 0) {
+                throw new IOException("stty failed");
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted");
+        }
+        return result;
+    }
+
+    /** Source of keys. */
+    private final Reader _input;
+    /** The machine operated, replaced by a newly set copy at each valid
+     *  setting line, so that an invalid one leaves it as it was. */
+    private Machine _machine;
+    /** Its alphabet. */
+    private final Alphabet _alphabet;
+    /** Writes the lamps lit. */
+    private final LineWriter _lamps;
+    /** Destination of error reports. */
+    private final PrintStream _errors;
+    /** True iff the rotor windows are shown. */
+    private final boolean _windows;
+    /** True once the machine has been set. */
+    private boolean _ready;
+    /** Number of lines ended so far. */
+    private int _line;
+    /** Number of lamps lit on the current line. */
+    private int _count;
+    /** The setting line being typed, or null if none. */
+    private StringBuilder _setting;
+}
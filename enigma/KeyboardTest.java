@@ -0,0 +1,176 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Keyboard class.
+ *  @author Oumar Balde
+ */
+public class KeyboardTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Setting line used throughout. */
+    private static final String SETTING =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** Number of keys timed. */
+    private static final int KEYS = 4000;
+
+    /** Return the output of a session typing KEYS, showing the rotor
+     *  windows iff WINDOWS, with its errors appended after a '|'. */
+    private static String session(String keys, boolean windows) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        new Keyboard(new StringReader(keys), navalMachine(),
+                     new PrintStream(out), new PrintStream(err),
+                     windows).run();
+        String nl = System.lineSeparator();
+        return (out.toString() + "|" + err.toString()).replace(nl, "\n");
+    }
+
+    /** Supplies a setting line and then KEYS letters, one at a time,
+     *  recording when each was read. */
+    private static class TimedKeys extends Reader {
+        @Override
+        public int read() {
+            if (_next == _read.length) {
+                return -1;
+            }
+            _read[_next] = System.nanoTime();
+            _next += 1;
+            return _next <= START ? START_KEYS.charAt(_next - 1) : 'A';
+        }
+
+        @Override
+        public int read(char[] buf, int off, int len) {
+            int c = read();
+            if (c == -1) {
+                return -1;
+            }
+            buf[off] = (char) c;
+            return 1;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        /** Time at which each key was read. */
+        private final long[] _read = new long[START + KEYS];
+        /** Number of keys read. */
+        private int _next;
+    }
+
+    /** The keys typed before those timed. */
+    private static final String START_KEYS = SETTING + "\n";
+
+    /** Number of keys typed before those timed. */
+    private static final int START = START_KEYS.length();
+
+    /** Records when each flush happens. */
+    private static class TimedLamps extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+
+        @Override
+        public void flush() {
+            if (_count < _flushed.length) {
+                _flushed[_count] = System.nanoTime();
+                _count += 1;
+            }
+        }
+
+        /** Time at which each flush happened. */
+        private final long[] _flushed = new long[START + KEYS];
+        /** Number of flushes. */
+        private int _count;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testLamps() {
+        Machine mach = navalMachine();
+        Main.setUp(mach, SETTING);
+        String expected = Main.formatMessage(mach.convert("FROMHISSHOULDER"));
+        assertEquals(SETTING + "\n" + expected + "\n|",
+                     session(SETTING + "\nFROM his\tshoulder", false));
+    }
+
+    @Test
+    public void testSettingLineEditing() {
+        Machine mach = navalMachine();
+        Main.setUp(mach, SETTING);
+        String expected = mach.convert("HELLO");
+        String typed = SETTING.replace("AXLE", "AXLQ\bE");
+        String out = session(typed + "\r\nHELLO\n", false);
+        assertTrue(out.startsWith(SETTING.replace("AXLE", "AXLQ\b \bE")));
+        assertTrue(out.endsWith("\n" + expected + "\n|"));
+    }
+
+    @Test
+    public void testErrorsAreReported() {
+        String out = session("AB\n* B Beta III IV X AXLE\nAB", false);
+        assertTrue(out.contains("Error: line 2, column 17: unknown rotor X"));
+        assertEquals(4, out.split("Error: message without a "
+                                  + "configuration").length - 1);
+    }
+
+    @Test
+    public void testBadSettingKeepsKey() {
+        Machine mach = navalMachine();
+        Main.setUp(mach, SETTING);
+        mach.convert("HELLO");
+        String expected = Main.formatMessage(mach.convert("HELLOWORLD"));
+        String out = session(SETTING + "\nHELLO\n* B Beta I II V AA\n"
+                             + "HELLOWORLD\n", false);
+        assertTrue(out, out.contains("\n" + expected + "\n|Error: "));
+    }
+
+    @Test
+    public void testWindows() {
+        String out = session(SETTING + "\nA" + (char) Keyboard.END + "B",
+                             true);
+        assertTrue(out.contains("\nAXLE  "));
+        assertTrue(out.endsWith(Keyboard.SAVE_CURSOR + "\rAXLF  "
+                                + Keyboard.RESTORE_CURSOR + "\n|"));
+    }
+
+    @Test
+    public void testLatency() {
+        TimedKeys keys = new TimedKeys();
+        TimedLamps lamps = new TimedLamps();
+        new Keyboard(keys, navalMachine(), new PrintStream(lamps),
+                     new PrintStream(new ByteArrayOutputStream()),
+                     false).run();
+        long[] latency = new long[KEYS];
+        for (int k = 0; k < KEYS; k += 1) {
+            latency[k] = lamps._flushed[START + k] - keys._read[START + k];
+        }
+        Arrays.sort(latency);
+        assertTrue("median latency " + latency[KEYS / 2] + " ns",
+                   latency[KEYS / 2] < 100_000);
+    }
+
+}
@@ -0,0 +1,245 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+
+/** A single-pass tokenizer for the message input.  Each call to next()
+ *  moves to the following input line, which is left in an internal buffer
+ *  and described by offsets into it rather than copied into Strings.  A
+ *  line whose first non-blank character is '*' is a setting line, and is
+ *  further split into whitespace-separated tokens, also described by
+ *  offsets; any other line is a message.
+ *  @author Oumar Balde
+ */
+class Lexer {
+
+    /** Initial size of the line buffer. */
+    static final int INITIAL_SIZE = 8192;
+
+    /** Maximum number of tokens initially expected on a setting line. */
+    static final int INITIAL_TOKENS = 32;
+
+    /** A lexer reading from IN. */
+    Lexer(Reader in) {
+        this(in, INITIAL_SIZE);
+    }
+
+    /** A lexer reading from IN whose buffer initially holds SIZE > 0
+     *  characters. */
+    private Lexer(Reader in, int size) {
+        _in = in;
+        _buf = new char[size];
+        _tokens = new int[2 * INITIAL_TOKENS];
+    }
+
+    /** A lexer positioned on LINE, which is its only line. */
+    static Lexer of(String line) {
+        return of(line, 1);
+    }
+
+    /** A lexer positioned on LINE, which is its only line, and which is
+     *  reported in errors as line number NUMBER. */
+    static Lexer of(String line, int number) {
+        Lexer lexer = new Lexer(new StringReader(line), line.length() + 1);
+        lexer.next();
+        lexer._line = number;
+        return lexer;
+    }
+
+    /** Move to the next line of input, returning false (and leaving the
+     *  current line empty) if there is none. */
+    boolean next() {
+        int pos = _end;
+        if (pos < _limit && _buf[pos] == '\r') {
+            pos += 1;
+            if (pos == _limit) {
+                _start = _end = pos;
+                fill();
+                pos = _start;
+            }
+            if (pos < _limit && _buf[pos] == '\n') {
+                pos += 1;
+            }
+        } else if (pos < _limit && _buf[pos] == '\n') {
+            pos += 1;
+        }
+        _start = pos;
+        _numTokens = 0;
+        _setting = false;
+        int scan = pos;
+        while (true) {
+            while (scan < _limit && _buf[scan] != '\n'
+                   && _buf[scan] != '\r') {
+                scan += 1;
+            }
+            if (scan < _limit || _eof) {
+                break;
+            }
+            scan -= _start;
+            fill();
+            scan += _start;
+        }
+        _end = scan;
+        if (_start == _end && _end == _limit && _eof) {
+            return false;
+        }
+        _line += 1;
+        classify();
+        return true;
+    }
+
+    /** Return the number of the current line, counting from 1. */
+    int line() {
+        return _line;
+    }
+
+    /** Return the buffer holding the current line. */
+    char[] buffer() {
+        return _buf;
+    }
+
+    /** Return the offset in buffer() of the start of the current line. */
+    int start() {
+        return _start;
+    }
+
+    /** Return the offset in buffer() just past the end of the current
+     *  line, excluding its terminator. */
+    int end() {
+        return _end;
+    }
+
+    /** Return the current line as a String. */
+    String text() {
+        return new String(_buf, _start, _end - _start);
+    }
+
+    /** Return true iff the current line is a setting line. */
+    boolean isSetting() {
+        return _setting;
+    }
+
+    /** Return the number of tokens on the current setting line, including
+     *  the leading '*'. */
+    int numTokens() {
+        return _numTokens;
+    }
+
+    /** Return the offset in buffer() of token K of the current line. */
+    int tokenStart(int k) {
+        return _tokens[2 * k];
+    }
+
+    /** Return the length of token K of the current line. */
+    int tokenLength(int k) {
+        return _tokens[2 * k + 1];
+    }
+
+    /** Return token K of the current line as a String. */
+    String token(int k) {
+        return new String(_buf, tokenStart(k), tokenLength(k));
+    }
+
+    /** Return true iff token K of the current line starts with CH. */
+    boolean tokenStartsWith(int k, char ch) {
+        return _buf[tokenStart(k)] == ch;
+    }
+
+    /** Return the text from the start of token K to the end of the
+     *  current line. */
+    String rest(int k) {
+        return new String(_buf, tokenStart(k), _end - tokenStart(k));
+    }
+
+    /** Return an exception reporting the error described by MSGFORMAT and
+     *  ARGUMENTS (as for String.format) at token K of the current line.
+     *  A K past the last token refers to the end of the line; on a
+     *  message line, the error is reported at its start. */
+    EnigmaException error(int k, String msgFormat, Object... arguments) {
+        int column = k < _numTokens ? tokenStart(k) - _start + 1
+            : _numTokens == 0 ? 1 : _end - _start + 1;
+        return EnigmaException.error("line %d, column %d: %s", _line, column,
+                                     String.format(msgFormat, arguments));
+    }
+
+    /** Determine whether the current line is a setting line and, if so,
+     *  record the bounds of its tokens. */
+    private void classify() {
+        int pos = _start;
+        while (pos < _end) {
+            while (pos < _end && Character.isWhitespace(_buf[pos])) {
+                pos += 1;
+            }
+            if (pos == _end) {
+                break;
+            }
+            if (_numTokens == 0 && _buf[pos] != '*') {
+                return;
+            }
+            int tokenStart = pos;
+            while (pos < _end && !Character.isWhitespace(_buf[pos])) {
+                pos += 1;
+            }
+            if (2 * _numTokens == _tokens.length) {
+                _tokens = Arrays.copyOf(_tokens, 2 * _tokens.length);
+            }
+            _tokens[2 * _numTokens] = tokenStart;
+            _tokens[2 * _numTokens + 1] = pos - tokenStart;
+            _numTokens += 1;
+        }
+        _setting = _numTokens > 0;
+    }
+
+    /** Read more input after _limit, first discarding everything before
+     *  _start and growing the buffer if the current line fills it.
+     *  Sets _eof at the end of input. */
+    private void fill() {
+        if (_start > 0) {
+            System.arraycopy(_buf, _start, _buf, 0, _limit - _start);
+            _limit -= _start;
+            _end -= Math.min(_end, _start);
+            _start = 0;
+        }
+        if (_limit == _buf.length) {
+            _buf = Arrays.copyOf(_buf, 2 * _buf.length);
+        }
+        try {
+            int n = _in.read(_buf, _limit, _buf.length - _limit);
+            if (n == -1) {
+                _eof = true;
+            } else {
+                _limit += n;
+            }
+        } catch (IOException excp) {
+            throw EnigmaException.error("could not read input: %s",
+                                        excp.getMessage());
+        }
+    }
+
+    /** Source of input. */
+    private final Reader _in;
+
+    /** Input buffer.  The current line occupies _buf[_start .. _end - 1],
+     *  and characters up to _limit have been read. */
+    private char[] _buf;
+
+    /** Bounds of the current line and of the input read so far. */
+    private int _start, _end, _limit;
+
+    /** True once the end of input has been reached. */
+    private boolean _eof;
+
+    /** Number of the current line, from 1. */
+    private int _line;
+
+    /** True iff the current line is a setting line. */
+    private boolean _setting;
+
+    /** Offset and length of each token of the current setting line. */
+    private int[] _tokens;
+
+    /** Number of tokens on the current setting line. */
+    private int _numTokens;
+}
@@ -0,0 +1,93 @@
+package enigma;
+
+import java.io.StringReader;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Lexer class.
+ *  @author Oumar Balde
+ */
+public class LexerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the message of the exception thrown when setting up a naval
+     *  machine from LINE, or null if there is none. */
+    private String setUpError(String line) {
+        try {
+            Main.setUp(navalMachine(), line);
+            return null;
+        } catch (EnigmaException excp) {
+            return excp.getMessage();
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testSettingTokens() {
+        Lexer lexer = Lexer.of("*  B Beta I II\tIII AAAA (AQ) (EP)");
+        assertTrue(lexer.isSetting());
+        assertEquals(9, lexer.numTokens());
+        assertEquals("*", lexer.token(0));
+        assertEquals("Beta", lexer.token(2));
+        assertEquals("III", lexer.token(5));
+        assertEquals(4, lexer.tokenLength(6));
+        assertTrue(lexer.tokenStartsWith(7, '('));
+        assertEquals("(AQ) (EP)", lexer.rest(7));
+    }
+
+    @Test
+    public void testMessageWithStar() {
+        Lexer lexer = Lexer.of("HELLO * WORLD");
+        assertFalse(lexer.isSetting());
+        assertEquals("HELLO * WORLD", lexer.text());
+        assertFalse(Main.isSettingLine("HELLO * WORLD"));
+        assertTrue(Main.isSettingLine("  * B"));
+    }
+
+    @Test
+    public void testLines() {
+        StringBuilder longLine = new StringBuilder();
+        for (int i = 0; i < 3 * Lexer.INITIAL_SIZE; i += 1) {
+            longLine.append((char) ('A' + i % 26));
+        }
+        Lexer lexer = new Lexer(new StringReader("* B\r\n\nAB\r" + longLine
+                                                 + "\nC"));
+        assertTrue(lexer.next());
+        assertEquals("* B", lexer.text());
+        assertTrue(lexer.next());
+        assertEquals("", lexer.text());
+        assertTrue(lexer.next());
+        assertEquals("AB", lexer.text());
+        assertTrue(lexer.next());
+        assertEquals(longLine.toString(), lexer.text());
+        assertTrue(lexer.next());
+        assertEquals("C", lexer.text());
+        assertEquals(5, lexer.line());
+        assertFalse(lexer.next());
+    }
+
+    @Test
+    public void testErrorPositions() {
+        assertEquals("line 1, column 15: unknown rotor IX",
+                     setUpError("* B Beta I II IX AAAA"));
+        assertEquals("line 1, column 18: expected 5 rotor names and a setting",
+                     setUpError("* B Beta I II III"));
+        assertEquals("line 1, column 29: plugboard cycle expected",
+                     setUpError("* B Beta I II III AAAA (AQ) EP"));
+        assertEquals("line 1, column 1: '*' must be followed by a blank",
+                     setUpError("*B Beta I II III AAAA"));
+        assertNull(setUpError("* B Beta I II III AAAA (AQ) (EP)"));
+    }
+
+}
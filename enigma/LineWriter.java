@@ -0,0 +1,91 @@
+package enigma;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/** Writes lines of text to a PrintStream without allocating once its
+ *  buffer is large enough for the longest line.  Characters in the ASCII
+ *  range, which every common output encoding represents as single bytes,
+ *  are copied directly into a byte buffer; any other character is passed
+ *  to the stream's own encoder.
+ *  @author Oumar Balde
+ */
+class LineWriter {
+
+    /** Initial size of the line buffer, in bytes. */
+    static final int INITIAL_SIZE = 256;
+
+    /** A writer appending lines to OUT. */
+    LineWriter(PrintStream out) {
+        _out = out;
+        _buf = new byte[INITIAL_SIZE];
+        _newline = System.lineSeparator().getBytes();
+    }
+
+    /** Append C to the current line, returning this. */
+    LineWriter append(char c) {
+        if (c >= ASCII_LIMIT) {
+            writeBuffer();
+            _out.print(c);
+            return this;
+        }
+        if (_len == _buf.length) {
+            _buf = Arrays.copyOf(_buf, 2 * _buf.length);
+        }
+        _buf[_len] = (byte) c;
+        _len += 1;
+        return this;
+    }
+
+    /** Append BUF[START .. END-1] to the current line, returning this. */
+    LineWriter append(char[] buf, int start, int end) {
+        for (int i = start; i < end; i += 1) {
+            append(buf[i]);
+        }
+        return this;
+    }
+
+    /** Append the characters of S to the current line, returning
+     *  this. */
+    LineWriter append(String s) {
+        for (int i = 0; i < s.length(); i += 1) {
+            append(s.charAt(i));
+        }
+        return this;
+    }
+
+    /** End the current line and write it out. */
+    void newLine() {
+        writeBuffer();
+        _out.write(_newline, 0, _newline.length);
+    }
+
+    /** Write out any partial line and flush the underlying stream. */
+    void flush() {
+        writeBuffer();
+        _out.flush();
+    }
+
+    /** Write the bytes buffered so far. */
+    private void writeBuffer() {
+        if (_len > 0) {
+            _out.write(_buf, 0, _len);
+            _len = 0;
+        }
+    }
+
+    /** Characters below this are written as single bytes. */
+    private static final char ASCII_LIMIT = 0x80;
+
+    /** Destination stream. */
+    private final PrintStream _out;
+
+    /** The line separator, encoded. */
+    private final byte[] _newline;
+
+    /** Bytes of the current line. */
+    private byte[] _buf;
+
+    /** Number of bytes in _buf. */
+    private int _len;
+}
@@ -2,7 +2,9 @@ package enigma;
 
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 
 import static enigma.EnigmaException.*;
 
@@ -25,13 +27,40 @@ class Machine {
         if (pawls < 0 || pawls >= numRotors) {
             throw new EnigmaException("Invalid number of pawls");
         }
-        _rotorsInSlot = new ArrayList<Rotor>();
         _allRotors = new ArrayList<Rotor>();
         for (Rotor rotor : allRotors) {
             _allRotors.add(rotor);
         }
     }
 
+    /** Return a new machine with my available rotors, configuration and
+     *  current state, which may afterwards be set and used independently
+     *  of me, on another thread, without copying my wiring tables. */
+    Machine copy() {
+        Machine result = new Machine(_alphabet, _numRotors, _pawls,
+                                     _allRotors);
+        result._model = _model;
+        if (_slots != null) {
+            result._slots = _slots;
+            result._settings = _settings.clone();
+            result._rings = _rings.clone();
+            result._rotates = _rotates;
+            result._notches = _notches;
+            result._notchWords = _notchWords;
+            result._notchSlots = _notchSlots;
+            result._stepTable = _stepTable;
+            result._atNotch = new boolean[_slots.length];
+            result._stepping = new boolean[_slots.length];
+            result._forward = _forward.clone();
+            result._backward = _backward.clone();
+        }
+        result._plugBoardPermutation = _plugBoardPermutation;
+        result._plugboard = _plugboard;
+        result._plugIn = _plugIn;
+        result._plugOut = _plugOut;
+        return result;
+    }
+
     /** Return the number of rotor slots I have. */
     int numRotors() {
         return _numRotors;
@@ -43,21 +72,36 @@ class Machine {
     }
 
     /** Return Rotor #K, where Rotor #0 is the reflector, and Rotor
-     *  #(numRotors()-1) is the fast Rotor.  Modifying this Rotor has
-     *  undefined results. */
+     *  #(numRotors()-1) is the fast Rotor.  Rotors are shared by all the
+     *  machines made from one configuration, so the Rotor's own setting is
+     *  not maintained: use setting(K).  Modifying this Rotor has undefined
+     *  results. */
     Rotor getRotor(int k) {
-        try {
-            return _rotorsInSlot.get(k);
-        } catch (IndexOutOfBoundsException excp) {
+        if (_slots == null || k < 0 || k >= _slots.length) {
             throw error("Wrong input format");
         }
-
+        return _slots[k];
     }
 
     Alphabet alphabet() {
         return _alphabet;
     }
 
+    /** Return my available rotors.  The list must not be modified. */
+    List<Rotor> availableRotors() {
+        return _allRotors;
+    }
+
+    /** Return true iff one of my available rotors is named NAME. */
+    boolean hasRotor(String name) {
+        for (Rotor rotor : _allRotors) {
+            if (rotor.name().equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /** Set my rotor slots to the rotors named ROTORS from my set of
      *  available rotors (ROTORS[0] names the reflector).
      *  Initially, all rotors are set at their 0 setting. */
@@ -65,26 +109,165 @@ class Machine {
         if (numRotors() != rotors.length) {
             throw new EnigmaException("Wrong number of Rotors "
                     + "passed by setting");
-        } else {
-            for (int i = 0; i < rotors.length; i++) {
-                for (int j = 0; j < _allRotors.size(); j++) {
-                    Rotor rotor = _allRotors.get(j);
-                    if (rotor.name().equals(rotors[i])) {
-                        _rotorsInSlot.add(rotor);
-                    }
+        }
+        Rotor[] slots = new Rotor[rotors.length];
+        for (int i = 0; i < rotors.length; i++) {
+            for (Rotor rotor : _allRotors) {
+                if (rotor.name().equals(rotors[i])) {
+                    slots[i] = rotor;
                 }
             }
+            if (slots[i] == null) {
+                throw error("Unknown rotor %s", rotors[i]);
+            }
         }
 
-        if (!getRotor(0).reflecting()) {
+        if (!slots[0].reflecting()) {
             throw new EnigmaException("Rotor 0 is supposed "
                     + "to be the reflector");
         }
 
-        if (!getRotor(numRotors() - 1).rotates()) {
+        if (!slots[numRotors() - 1].rotates()) {
             throw new EnigmaException("The last rotor should "
                     + "be a moving rotor");
         }
+
+        compileSlots(slots);
+    }
+
+    /** Compile the rotors in SLOTS into my per-slot arrays, with every
+     *  rotor at its 0 setting and 0 ring setting. */
+    private void compileSlots(Rotor[] slots) {
+        int n = alphabet().size();
+        _slots = slots;
+        _settings = new int[slots.length];
+        _rings = new int[slots.length];
+        _rotates = new boolean[slots.length];
+        _notchWords = (n + Long.SIZE - 1) / Long.SIZE;
+        _notches = new long[slots.length * _notchWords];
+        _forward = new int[slots.length][];
+        _backward = new int[slots.length][];
+        for (int k = 0; k < slots.length; k += 1) {
+            Rotor rotor = slots[k];
+            _rotates[k] = rotor.rotates();
+            String notches = rotor.notches();
+            for (int i = 0; i < notches.length(); i += 1) {
+                int c = alphabet().toInt(notches.charAt(i));
+                if (c != -1) {
+                    _notches[k * _notchWords + c / Long.SIZE] |= 1L << c;
+                }
+            }
+            compileWiring(k);
+        }
+        compileStepping();
+    }
+
+    /** Tabulate my stepping model for my current rotors: _notchSlots
+     *  lists the slots with moving rotors that have notches, and entry B
+     *  of _stepTable lists the slots that move when, for each J, slot
+     *  _notchSlots[J] is at a notch iff bit J of B is set.  When there are
+     *  more than MAX_NOTCH_SLOTS such slots, _stepTable is null and the
+     *  model is applied at each step instead. */
+    private void compileStepping() {
+        int slots = _slots.length;
+        int count = 0;
+        int[] notchSlots = new int[slots];
+        for (int k = 0; k < slots; k += 1) {
+            boolean notched = false;
+            for (int w = 0; w < _notchWords; w += 1) {
+                notched |= _notches[k * _notchWords + w] != 0;
+            }
+            if (_rotates[k] && notched) {
+                notchSlots[count] = k;
+                count += 1;
+            }
+        }
+        _notchSlots = Arrays.copyOf(notchSlots, count);
+        _atNotch = new boolean[slots];
+        _stepping = new boolean[slots];
+        if (count > MAX_NOTCH_SLOTS) {
+            _stepTable = null;
+            return;
+        }
+        _stepTable = new int[1 << count][];
+        for (int b = 0; b < _stepTable.length; b += 1) {
+            Arrays.fill(_atNotch, false);
+            for (int j = 0; j < count; j += 1) {
+                _atNotch[_notchSlots[j]] = (b & (1 << j)) != 0;
+            }
+            _stepTable[b] = moves();
+        }
+    }
+
+    /** Return the slots that my stepping model moves when the slots at a
+     *  notch are those set in _atNotch, in increasing order. */
+    private int[] moves() {
+        Arrays.fill(_stepping, false);
+        _model.moves(_rotates, _atNotch, _stepping);
+        int[] result = new int[_stepping.length];
+        int count = 0;
+        for (int k = 0; k < _stepping.length; k += 1) {
+            if (_stepping[k]) {
+                if (!_rotates[k]) {
+                    throw error("stepping model %s moves a fixed rotor",
+                                _model);
+                }
+                result[count] = k;
+                count += 1;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /** Largest number of notched moving rotors for which the stepping
+     *  model is tabulated. */
+    static final int MAX_NOTCH_SLOTS = 10;
+
+    /** Return my stepping model. */
+    SteppingModel steppingModel() {
+        return _model;
+    }
+
+    /** Make MODEL my stepping model. */
+    void setSteppingModel(SteppingModel model) {
+        _model = model;
+        if (_slots != null) {
+            compileStepping();
+        }
+    }
+
+    /** Compile the wiring tables of slot K for its ring setting R: with
+     *  the ring turned R positions, the wiring P of the rotor acts as
+     *  P'(x) = P(x - R) + R, so the per-character lookup is unchanged.
+     *  Notches are on the ring and so are unaffected.  The tables are
+     *  shared with every other machine using the same wiring and ring
+     *  setting, and are replaced rather than updated. */
+    private void compileWiring(int k) {
+        Permutation perm = _slots[k].permutation();
+        _forward[k] = perm.forward(_rings[k]);
+        _backward[k] = perm.backward(_rings[k]);
+    }
+
+    /** Set my rotors according to SETTING, and their ring settings
+     *  according to RING, both of which must be strings of numRotors()-1
+     *  characters in my alphabet, as for setRotors(SETTING).  Ring setting
+     *  A (index 0) is the same as having no ring setting. */
+    void setRotors(String setting, String ring) {
+        if (numRotors() - 1 != ring.length()) {
+            throw new EnigmaException("Length is wrong for ring setting.");
+        }
+        setRotors(setting);
+        for (int i = 1; i < numRotors(); i++) {
+            int r = alphabet().toInt(ring.charAt(i - 1));
+            if (r == -1) {
+                throw new EnigmaException("Letter"
+                        + ring.charAt(i - 1) + "not in this alphabet");
+            }
+            if (r != _rings[i]) {
+                _rings[i] = r;
+                compileWiring(i);
+            }
+        }
     }
 
     /** Set my rotors according to SETTING, which must be a string of
@@ -101,11 +284,42 @@ class Machine {
                     throw new EnigmaException("Letter"
                             + letter + "not in this alphabet");
                 }
-                getRotor(i).set(letter);
+                _settings[i] = alphabet().toInt(letter);
             }
         }
     }
 
+    /** Set the rotor in slot K, 0 < K < numRotors(), to SETTING, an index
+     *  in the range 0..alphabet size - 1. */
+    void setRotor(int k, int setting) {
+        _settings[k] = setting;
+    }
+
+    /** Return the current setting of the rotor in slot K, as an index in
+     *  the range 0..alphabet size - 1. */
+    int setting(int k) {
+        return _settings[k];
+    }
+
+    /** Return the ring setting of the rotor in slot K, as an index in
+     *  the range 0..alphabet size - 1. */
+    int ring(int k) {
+        return _rings[k];
+    }
+
+    /** Return the forward wiring of slot K at setting 0, taking its ring
+     *  setting into account, as a table of twice the alphabet size whose
+     *  entry P + S is the result for P at setting S, plus S.  The table
+     *  must not be modified. */
+    int[] forward(int k) {
+        return _forward[k];
+    }
+
+    /** Return the backward wiring of slot K, as for forward(K). */
+    int[] backward(int k) {
+        return _backward[k];
+    }
+
     /** Return the current plugboard's permutation. */
     Permutation plugboard() {
         return _plugBoardPermutation;
@@ -114,6 +328,21 @@ class Machine {
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
         _plugBoardPermutation = plugboard;
+        _plugboard = new int[alphabet().size()];
+        for (int i = 0; i < _plugboard.length; i += 1) {
+            _plugboard[i] = plugboard.permute(i);
+        }
+        int top = 0;
+        for (int i = 0; i < _plugboard.length; i += 1) {
+            top = Math.max(top, alphabet().toChar(i));
+        }
+        _plugIn = new int[top + 1];
+        Arrays.fill(_plugIn, -1);
+        _plugOut = new char[_plugboard.length];
+        for (int i = 0; i < _plugboard.length; i += 1) {
+            _plugIn[alphabet().toChar(i)] = _plugboard[i];
+            _plugOut[i] = alphabet().toChar(_plugboard[i]);
+        }
     }
 
     /** Returns the result of converting the input character C (as an
@@ -121,70 +350,234 @@ class Machine {
      *  the machine. */
     int convert(int c) {
         advanceRotors();
-        if (Main.verbose()) {
-            System.err.printf("[");
+        boolean verbose = Main.verbose();
+        if (verbose) {
+            LineWriter trace = trace();
+            trace.append('[');
             for (int r = 1; r < numRotors(); r += 1) {
-                System.err.printf("%c",
-                        alphabet().toChar(getRotor(r).setting()));
+                trace.append(alphabet().toChar(_settings[r]));
             }
-            System.err.printf("] %c -> ", alphabet().toChar(c));
+            trace.append("] ");
+            trace(c);
         }
-        c = plugboard().permute(c);
-        if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(c));
+        c = _plugboard[c];
+        if (verbose) {
+            trace(c);
         }
         c = applyRotors(c);
-        c = plugboard().permute(c);
-        if (Main.verbose()) {
-            System.err.printf("%c%n", alphabet().toChar(c));
+        c = _plugboard[c];
+        if (verbose) {
+            _trace.append(alphabet().toChar(c)).newLine();
         }
         return c;
     }
 
-    /** Advance all rotors to their next position. */
-    private void advanceRotors() {
-        for (int i = 0; i < numRotors(); i++) {
-            if (i == numRotors() - 1) {
-                getRotor(i).advance();
-            } else if (getRotor(i).rotates() && getRotor(i + 1).atNotch()) {
-                getRotor(i).advance();
-                getRotor(i + 1).advance();
-                i++;
+    /** Return the result of converting C (as an index in the range
+     *  0..alphabet size - 1) with my rotors at their current settings,
+     *  without advancing them. */
+    int map(int c) {
+        return _plugboard[applyRotors(_plugboard[c])];
+    }
+
+    /** Advance my rotors as convert() does before converting a
+     *  character. */
+    void advance() {
+        advanceRotors();
+    }
+
+    /** Advance my rotors as advance() does, and return the number of
+     *  slots that moved, leaving their indices in MOVED[0 .. result-1].
+     *  MOVED must have room for numRotors() entries. */
+    int advance(int[] moved) {
+        if (_stepTable != null) {
+            int[] moves = _stepTable[notchState()];
+            for (int k : moves) {
+                step(k);
+            }
+            System.arraycopy(moves, 0, moved, 0, moves.length);
+            return moves.length;
+        }
+        markStepping();
+        int count = 0;
+        for (int k = 0; k < _stepping.length; k += 1) {
+            if (_stepping[k]) {
+                step(k);
+                moved[count] = k;
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    /** Advance my rotors as advance() does, and return true iff a rotor
+     *  other than the fast one moved. */
+    boolean advanceCarrying() {
+        return advanceRotors();
+    }
+
+    /** Advance all rotors to their next position, as my stepping model
+     *  directs, returning true iff a rotor other than the fast one
+     *  moved. */
+    private boolean advanceRotors() {
+        int last = _settings.length - 1;
+        if (_stepTable != null) {
+            int[] moves = _stepTable[notchState()];
+            for (int k : moves) {
+                step(k);
+            }
+            return moves.length > 0 && moves[0] != last;
+        }
+        markStepping();
+        boolean carried = false;
+        for (int k = 0; k <= last; k += 1) {
+            if (_stepping[k]) {
+                step(k);
+                carried |= k != last;
             }
         }
+        return carried;
+    }
+
+    /** Return the index of the entry of _stepTable for the current
+     *  settings of the slots in _notchSlots. */
+    private int notchState() {
+        int[] notchSlots = _notchSlots;
+        int b = 0;
+        for (int j = 0; j < notchSlots.length; j += 1) {
+            int k = notchSlots[j];
+            int s = _settings[k];
+            b |= (int) (_notches[k * _notchWords + (s >>> 6)] >>> s & 1)
+                << j;
+        }
+        return b;
+    }
+
+    /** Set _stepping to the slots my stepping model moves from the
+     *  current settings. */
+    private void markStepping() {
+        for (int k : _notchSlots) {
+            _atNotch[k] = atNotch(k);
+        }
+        Arrays.fill(_stepping, false);
+        _model.moves(_rotates, _atNotch, _stepping);
+    }
+
+    /** Return true iff the rotor in slot K is at one of its notches. */
+    private boolean atNotch(int k) {
+        int s = _settings[k];
+        return (_notches[k * _notchWords + (s >>> 6)] & (1L << s)) != 0;
+    }
+
+    /** Advance the rotor in slot K one position. */
+    private void step(int k) {
+        int s = _settings[k] + 1;
+        _settings[k] = s == _alphabet.size() ? 0 : s;
     }
 
     /** Return the result of applying the rotors to the character C (as an
      *  index in the range 0..alphabet size - 1). */
     private int applyRotors(int c) {
-        int p = getRotor(numRotors() - 1).convertForward(c);
+        int n = _alphabet.size();
+        int p = c;
 
-        for (int i = numRotors() - 2; i >= 0; i--) {
-            p = getRotor(i).convertForward(p);
+        for (int i = numRotors() - 1; i >= 0; i--) {
+            int s = _settings[i];
+            p = _forward[i][p + s] - s;
+            if (p < 0) {
+                p += n;
+            }
+            trace(p);
         }
 
         for (int i = 1; i < numRotors(); i++) {
-            p = getRotor(i).convertBackward(p);
+            int s = _settings[i];
+            p = _backward[i][p + s] - s;
+            if (p < 0) {
+                p += n;
+            }
+            trace(p);
         }
 
         return p;
     }
 
+    /** Report the intermediate result P in verbose mode. */
+    private void trace(int p) {
+        if (Main.verbose()) {
+            trace().append(alphabet().toChar(p)).append(" -> ");
+        }
+    }
+
+    /** Return the destination of verbose traces. */
+    private LineWriter trace() {
+        if (_trace == null) {
+            _trace = new LineWriter(System.err);
+        }
+        return _trace;
+    }
+
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        String cypheredMSG = "";
-        for (int i = 0; i < msg.length(); i++) {
-            int letter = alphabet().toInt(msg.charAt(i));
-            if (letter == -1) {
-                cypheredMSG += msg.charAt(i);
-            } else {
-                cypheredMSG += alphabet().toChar(convert(letter));
+        char[] cyphered = msg.toCharArray();
+        convert(cyphered, 0, cyphered.length);
+        return new String(cyphered);
+    }
+
+    /** Replace the characters BUF[START .. END-1] by their encoding or
+     *  decoding, updating the state of the rotors accordingly.  Characters
+     *  not in my alphabet are left as they are.  The text is converted a
+     *  block at a time in three passes: first the characters are mapped
+     *  to alphabet indices through the plugboard, by one table lookup
+     *  each; then the rotors are applied, stepping as they go; and then
+     *  the results are mapped back through the plugboard to characters,
+     *  again by one lookup each. */
+    void convert(char[] buf, int start, int end) {
+        if (Main.verbose()) {
+            convertEach(buf, start, end);
+            return;
+        }
+        if (_stage == null) {
+            _stage = new int[BLOCK];
+        }
+        int[] stage = _stage;
+        int[] in = _plugIn;
+        char[] out = _plugOut;
+        for (int from = start; from < end; from += BLOCK) {
+            int len = Math.min(end - from, BLOCK);
+            for (int i = 0; i < len; i += 1) {
+                char ch = buf[from + i];
+                stage[i] = ch < in.length ? in[ch] : -1;
+            }
+            for (int i = 0; i < len; i += 1) {
+                if (stage[i] != -1) {
+                    advanceRotors();
+                    stage[i] = applyRotors(stage[i]);
+                }
+            }
+            for (int i = 0; i < len; i += 1) {
+                if (stage[i] != -1) {
+                    buf[from + i] = out[stage[i]];
+                }
+            }
+        }
+    }
+
+    /** Convert BUF[START .. END-1] as convert(BUF, START, END) does, one
+     *  character at a time. */
+    void convertEach(char[] buf, int start, int end) {
+        for (int i = start; i < end; i++) {
+            int letter = alphabet().toInt(buf[i]);
+            if (letter != -1) {
+                buf[i] = alphabet().toChar(convert(letter));
             }
         }
-        return cypheredMSG;
     }
 
+    /** Number of characters converted per pass by convert(BUF, START,
+     *  END). */
+    static final int BLOCK = 512;
+
     /** Common alphabet of my rotors. */
     private final Alphabet _alphabet;
 
@@ -200,6 +593,59 @@ class Machine {
     /** The plugboard's Permutation. */
     private Permutation _plugBoardPermutation;
 
-    /** The Machine's rotors that are actually being used. */
-    private ArrayList<Rotor> _rotorsInSlot;
+    /** The plugboard's mapping, as a table. */
+    private int[] _plugboard;
+
+    /** Entry C is the alphabet index of character C after the plugboard,
+     *  or -1 if C is not in my alphabet. */
+    private int[] _plugIn;
+
+    /** Entry P is the character for alphabet index P after the
+     *  plugboard. */
+    private char[] _plugOut;
+
+    /** Scratch space for convert(BUF, START, END), allocated when first
+     *  needed. */
+    private int[] _stage;
+
+    /** Destination of verbose traces, created when first needed. */
+    private LineWriter _trace;
+
+    /** The Machine's rotors that are actually being used, by slot.  These
+     *  describe the configuration; the state of the machine is in the
+     *  arrays below. */
+    private Rotor[] _slots;
+
+    /** The current setting of each slot. */
+    private int[] _settings;
+
+    /** The ring setting of each slot. */
+    private int[] _rings;
+
+    /** True for each slot holding a moving rotor. */
+    private boolean[] _rotates;
+
+    /** Notch bitmasks: bit C of word C / 64 of the _notchWords words
+     *  starting at K * _notchWords is set iff slot K has a notch at C. */
+    private long[] _notches;
+
+    /** Number of words per slot in _notches. */
+    private int _notchWords;
+
+    /** Decides which rotors move at each step. */
+    private SteppingModel _model = SteppingModel.LEVER;
+
+    /** The slots of the moving rotors that have notches, and the slots
+     *  moved for each combination of them at a notch, or null if there
+     *  are too many (see compileStepping). */
+    private int[] _notchSlots;
+    private int[][] _stepTable;
+
+    /** Scratch space for applying _model. */
+    private boolean[] _atNotch, _stepping;
+
+    /** Forward and backward wiring of each slot at setting 0, with its
+     *  ring setting applied, repeated twice so that they may be indexed
+     *  by P + setting directly. */
+    private int[][] _forward, _backward;
 }
@@ -0,0 +1,519 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URI;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/** Translates a configured Machine into a Converter specialized for its
+ *  exact slot layout.  The generated class has the stepping logic and the
+ *  forward, reflecting and backward passes unrolled for the layout: the
+ *  alphabet size and which slots hold moving rotors.  The wiring and
+ *  notches of the current rotors, the plugboard and the settings are
+ *  passed to its constructor, with the contiguous run of non-moving rotors
+ *  next to the reflector folded into a single reflecting table.  The class
+ *  is compiled in memory and defined as a hidden class.  Classes are
+ *  cached by layout, so all the machines with the same layout share one
+ *  class whatever their rotors and settings; the MAX_CLASSES layouts used
+ *  most recently are kept.  When no compiler is available, or compilation
+ *  fails, compile() returns a Converter that simply drives the Machine;
+ *  layouts whose compilation failed are remembered and not retried.
+ *  @author Oumar Balde
+ */
+class MachineCompiler {
+
+    /** Not instantiable. */
+    private MachineCompiler() {
+    }
+
+    /** Return a Converter that starts in the current state of M and
+     *  thereafter behaves as M would (M itself is left unchanged by the
+     *  returned Converter, unless compilation is unavailable or M uses
+     *  a stepping model other than SteppingModel.LEVER, which the
+     *  generated code mirrors, in which case the Converter drives M
+     *  directly). */
+    static Converter compile(Machine M) {
+        if (Main.verbose() || M.steppingModel() != SteppingModel.LEVER) {
+            return interpreted(M);
+        }
+        String layout = layout(M);
+        MethodHandle ctor;
+        synchronized (CLASSES) {
+            if (FAILED.contains(layout)) {
+                return interpreted(M);
+            }
+            ctor = CLASSES.get(layout);
+        }
+        if (ctor == null) {
+            long start = System.nanoTime();
+            ctor = define(generate(M));
+            long elapsed = System.nanoTime() - start;
+            synchronized (CLASSES) {
+                _compiles += 1;
+                _compileNanos += elapsed;
+                if (ctor == null) {
+                    FAILED.add(layout);
+                } else {
+                    CLASSES.putIfAbsent(layout, ctor);
+                }
+            }
+            if (ctor == null) {
+                return interpreted(M);
+            }
+        }
+        int n = M.alphabet().size();
+        int slots = M.numRotors();
+        int first = firstMoving(M);
+        int[] settings = new int[slots];
+        int[][] tables = new int[2 + 2 * slots][];
+        long[] masks = new long[slots];
+        boolean[][] flags = new boolean[slots][];
+        tables[0] = new int[n];
+        for (int c = 0; c < n; c += 1) {
+            tables[0][c] = M.plugboard().permute(c);
+        }
+        tables[1] = reflectTable(M, first);
+        for (int k = 0; k < slots; k += 1) {
+            settings[k] = M.setting(k);
+            Rotor rotor = M.getRotor(k);
+            if (k < first) {
+                continue;
+            } else if (rotor.rotates()) {
+                tables[2 + 2 * k] = M.forward(k);
+                tables[3 + 2 * k] = M.backward(k);
+                flags[k] = notches(rotor);
+                for (int i = 0; i < n && i < Long.SIZE; i += 1) {
+                    if (flags[k][i]) {
+                        masks[k] |= 1L << i;
+                    }
+                }
+            } else {
+                tables[2 + 2 * k] = fixedTable(M, k, false);
+                tables[3 + 2 * k] = fixedTable(M, k, true);
+            }
+        }
+        try {
+            return (Converter) ctor.invoke(settings, tables, masks, flags);
+        } catch (Throwable excp) {
+            return interpreted(M);
+        }
+    }
+
+    /** Largest number of generated classes kept. */
+    static final int MAX_CLASSES = 64;
+
+    /** Return true iff compile(M) would reuse a class already generated
+     *  and defined for another machine. */
+    static boolean isCompiled(Machine M) {
+        synchronized (CLASSES) {
+            return CLASSES.containsKey(layout(M));
+        }
+    }
+
+    /** Return true iff compile(M) can return specialized code for M: a
+     *  compiler is available, M uses SteppingModel.LEVER and compiling
+     *  M's layout has not already failed. */
+    static boolean compilable(Machine M) {
+        if (!available() || M.steppingModel() != SteppingModel.LEVER) {
+            return false;
+        }
+        synchronized (CLASSES) {
+            return !FAILED.contains(layout(M));
+        }
+    }
+
+    /** Return the average time, in nanoseconds, that compile() has taken
+     *  to generate and define a class, or ESTIMATE if it has not done so
+     *  yet. */
+    static double compileCost(double estimate) {
+        synchronized (CLASSES) {
+            return _compiles == 0 ? estimate
+                : (double) _compileNanos / _compiles;
+        }
+    }
+
+    /** Return a string identifying the layout of M, which determines the
+     *  class generated for it: its alphabet size, and for each slot,
+     *  whether it holds a moving rotor. */
+    private static String layout(Machine M) {
+        StringBuilder result = new StringBuilder();
+        result.append(M.alphabet().size()).append(' ');
+        for (int k = 0; k < M.numRotors(); k += 1) {
+            result.append(M.getRotor(k).rotates() ? 'M' : 'F');
+        }
+        return result.toString();
+    }
+
+    /** Return the first slot of M holding a moving rotor, or
+     *  M.numRotors() if there is none. */
+    private static int firstMoving(Machine M) {
+        int first = 0;
+        while (first < M.numRotors() && !M.getRotor(first).rotates()) {
+            first += 1;
+        }
+        return first;
+    }
+
+    /** Return the notches of ROTOR: entry I is true iff it has a notch at
+     *  position I. */
+    private static boolean[] notches(Rotor rotor) {
+        Alphabet alpha = rotor.alphabet();
+        boolean[] result = new boolean[alpha.size()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = rotor.notches().indexOf(alpha.toChar(i)) != -1;
+        }
+        return result;
+    }
+
+    /** Return a Converter that drives M itself. */
+    static Converter interpreted(Machine M) {
+        return new Interpreted(M);
+    }
+
+    /** Return true iff compile() can generate specialized code. */
+    static boolean available() {
+        return COMPILER != null;
+    }
+
+    /** Return the Java source of a Converter specialized for the layout
+     *  of M.  Its constructor takes the settings of all slots, by slot;
+     *  the tables of the plugboard, of the reflector folded with the
+     *  non-moving rotors next to it, and the forward and backward tables
+     *  of each other slot K, at indices 0, 1, 2 + 2K and 3 + 2K; and the
+     *  notches of each moving slot, as bit masks when the alphabet has at
+     *  most Long.SIZE letters and as arrays of flags otherwise. */
+    static String generate(Machine M) {
+        int n = M.alphabet().size();
+        int slots = M.numRotors();
+        int first = firstMoving(M);
+
+        StringBuilder src = new StringBuilder();
+        src.append("package enigma;\n");
+        src.append("final class Specialized extends Converter {\n");
+        src.append("  Specialized(int[] s, int[][] t, long[] m, "
+                   + "boolean[][] b) {\n");
+        src.append("    _fixed = s.clone();\n");
+        src.append("    PB = t[0];\n    R = t[1];\n");
+        for (int k = first; k < slots; k += 1) {
+            src.append(String.format("    F%d = t[%d];%n    B%d = t[%d];%n",
+                                     k, 2 + 2 * k, k, 3 + 2 * k));
+            if (M.getRotor(k).rotates()) {
+                src.append(String.format("    _s%d = s[%d];%n", k, k));
+                src.append(String.format("    N%d = %s[%d];%n", k,
+                                         n <= Long.SIZE ? "m" : "b", k));
+            }
+        }
+        src.append("  }\n");
+
+        src.append("  private final int[] _fixed, PB, R");
+        for (int k = first; k < slots; k += 1) {
+            src.append(String.format(", F%d, B%d", k, k));
+        }
+        src.append(";\n");
+        for (int k = first; k < slots; k += 1) {
+            if (M.getRotor(k).rotates()) {
+                src.append(String.format("  private final %s N%d;%n",
+                                         n <= Long.SIZE ? "long" : "boolean[]",
+                                         k));
+                src.append(String.format("  private int _s%d;%n", k));
+            }
+        }
+
+        src.append("  @Override int convert(int c) {\n");
+        for (int k = first; k < slots; k += 1) {
+            if (M.getRotor(k).rotates()) {
+                src.append(String.format("    int s%d = _s%d;%n", k, k));
+            }
+        }
+        stepping(src, M, first, n);
+        passes(src, M, first);
+        src.append("    return PB[p];\n  }\n");
+
+        src.append("  @Override int setting(int k) {\n");
+        src.append("    switch (k) {\n");
+        for (int k = first; k < slots; k += 1) {
+            if (M.getRotor(k).rotates()) {
+                src.append(String.format("    case %d: return _s%d;%n", k, k));
+            }
+        }
+        src.append("    default: return _fixed[k];\n");
+        src.append("    }\n  }\n");
+        src.append("}\n");
+        return src.toString();
+    }
+
+    /** Append to SRC the statements that convert c to p with the rotors
+     *  of M, whose moving slots start at FIRST, in their state sK, not
+     *  including the final pass through the plugboard. */
+    private static void passes(StringBuilder src, Machine M, int first) {
+        int n = M.alphabet().size();
+        src.append("    int p = PB[c];\n");
+        for (int k = M.numRotors() - 1; k >= first; k -= 1) {
+            pass(src, M, k, "F", n);
+        }
+        src.append("    p = R[p];\n");
+        for (int k = first; k < M.numRotors(); k += 1) {
+            pass(src, M, k, "B", n);
+        }
+    }
+
+    /** Append to SRC the statements that advance the moving rotors of M,
+     *  whose slots start at FIRST, for an alphabet of size N.  Mirrors
+     *  Machine.advanceRotors: flag fK is set when slot K steps together
+     *  with its right neighbor, which is then not examined itself. */
+    private static void stepping(StringBuilder src, Machine M, int first,
+                                 int n) {
+        int slots = M.numRotors();
+        for (int k = first; k < slots - 1; k += 1) {
+            if (M.getRotor(k).rotates() && M.getRotor(k + 1).rotates()) {
+                String guard = k - 1 >= first && M.getRotor(k - 1).rotates()
+                    ? String.format("!f%d && ", k - 1) : "";
+                src.append(String.format("    boolean f%d = %s%s;%n",
+                                         k, guard, notchTest(k + 1, n)));
+            }
+        }
+        for (int k = first; k < slots; k += 1) {
+            if (!M.getRotor(k).rotates()) {
+                continue;
+            }
+            String cond;
+            boolean self = k < slots - 1 && M.getRotor(k + 1).rotates();
+            boolean left = k - 1 >= first && M.getRotor(k - 1).rotates();
+            if (k == slots - 1) {
+                cond = null;
+            } else if (self && left) {
+                cond = String.format("f%d || f%d", k, k - 1);
+            } else if (self) {
+                cond = "f" + k;
+            } else if (left) {
+                cond = "f" + (k - 1);
+            } else {
+                continue;
+            }
+            String step = String.format("s%d = s%d == %d ? 0 : s%d + 1; "
+                                        + "_s%d = s%d;",
+                                        k, k, n - 1, k, k, k);
+            if (cond == null) {
+                src.append("    ").append(step).append("\n");
+            } else {
+                src.append(String.format("    if (%s) { %s }%n",
+                                         cond, step));
+            }
+        }
+    }
+
+    /** Return an expression testing whether slot K is at a notch. */
+    private static String notchTest(int k, int n) {
+        if (n <= Long.SIZE) {
+            return String.format("((N%d >>> s%d) & 1L) != 0", k, k);
+        } else {
+            return String.format("N%d[s%d]", k, k);
+        }
+    }
+
+    /** Append to SRC the statements applying the NAME ("F" or "B") table
+     *  of slot K of M to p, for an alphabet of size N. */
+    private static void pass(StringBuilder src, Machine M, int k,
+                             String name, int n) {
+        if (M.getRotor(k).rotates()) {
+            src.append(String.format("    p = %s%d[p + s%d] - s%d; "
+                                     + "if (p < 0) { p += %d; }%n",
+                                     name, k, k, k, n));
+        } else {
+            src.append(String.format("    p = %s%d[p];%n", name, k));
+        }
+    }
+
+    /** Return the composition of slots FIRST-1 down to 0 of M and back,
+     *  that is, the reflector together with the non-moving rotors
+     *  between it and the first moving rotor, at their current
+     *  settings. */
+    private static int[] reflectTable(Machine M, int first) {
+        int n = M.alphabet().size();
+        int[] result = new int[n];
+        for (int c = 0; c < n; c += 1) {
+            int p = c;
+            for (int k = first - 1; k >= 0; k -= 1) {
+                p = shifted(M, k, p, false);
+            }
+            for (int k = 1; k < first; k += 1) {
+                p = shifted(M, k, p, true);
+            }
+            result[c] = p;
+        }
+        return result;
+    }
+
+    /** Return the result of passing P through slot K of M at its current
+     *  setting, backwards iff INVERSE. */
+    private static int shifted(Machine M, int k, int p, boolean inverse) {
+        int[] wiring = inverse ? M.backward(k) : M.forward(k);
+        int s = M.setting(k);
+        int q = wiring[p + s] - s;
+        return q < 0 ? q + M.alphabet().size() : q;
+    }
+
+    /** Return the mapping of slot K of M at its current setting, which
+     *  does not change, backwards iff INVERSE. */
+    private static int[] fixedTable(Machine M, int k, boolean inverse) {
+        int[] result = new int[M.alphabet().size()];
+        for (int p = 0; p < result.length; p += 1) {
+            result[p] = shifted(M, k, p, inverse);
+        }
+        return result;
+    }
+
+    /** Compile SOURCE and return a handle on the constructor of the
+     *  resulting hidden class, or null if that is not possible. */
+    private static MethodHandle define(String source) {
+        if (COMPILER == null) {
+            return null;
+        }
+        try {
+            MemoryFileManager files = new MemoryFileManager(
+                COMPILER.getStandardFileManager(null, null, null));
+            JavaFileObject unit = new SimpleJavaFileObject(
+                URI.create("string:///enigma/Specialized.java"),
+                JavaFileObject.Kind.SOURCE) {
+                    @Override
+                    public CharSequence getCharContent(boolean ignore) {
+                        return source;
+                    }
+                };
+            String classpath = new File(Converter.class.getProtectionDomain()
+                                        .getCodeSource().getLocation()
+                                        .toURI()).getPath();
+            boolean ok = COMPILER.getTask(null, files, null,
+                                          List.of("-classpath", classpath,
+                                                  "-g:none"),
+                                          null, List.of(unit)).call();
+            if (!ok) {
+                return null;
+            }
+            MethodHandles.Lookup lookup =
+                MethodHandles.lookup()
+                .defineHiddenClass(files.bytes(), true);
+            return lookup.findConstructor(lookup.lookupClass(),
+                                          MethodType.methodType(void.class,
+                                                                PARAMETERS))
+                .asType(MethodType.methodType(Converter.class, PARAMETERS));
+        } catch (Exception | LinkageError excp) {
+            return null;
+        }
+    }
+
+    /** A file manager that keeps the single class it is asked to write
+     *  in memory. */
+    private static class MemoryFileManager
+        extends ForwardingJavaFileManager<StandardJavaFileManager> {
+
+        /** A file manager delegating to FILES for reading. */
+        MemoryFileManager(StandardJavaFileManager files) {
+            super(files);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(
+            JavaFileManager.Location location, String className,
+            JavaFileObject.Kind kind, FileObject sibling) {
+            return new SimpleJavaFileObject(
+                URI.create("mem:///" + className + kind.extension), kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        return _out;
+                    }
+                };
+        }
+
+        /** Return the bytes of the class written. */
+        byte[] bytes() {
+            return _out.toByteArray();
+        }
+
+        /** Receives the class file. */
+        private final ByteArrayOutputStream _out =
+            new ByteArrayOutputStream();
+    }
+
+    /** A Converter that drives a Machine directly. */
+    private static class Interpreted extends Converter {
+
+        /** A Converter for M. */
+        Interpreted(Machine M) {
+            _machine = M;
+        }
+
+        @Override
+        int convert(int c) {
+            return _machine.convert(c);
+        }
+
+        @Override
+        int setting(int k) {
+            return _machine.setting(k);
+        }
+
+        @Override
+        void skip(long n) {
+            for (long i = 0; i < n; i += 1) {
+                _machine.advance();
+            }
+        }
+
+        @Override
+        void convert(Alphabet alpha, char[] buf, int start, int end) {
+            if (alpha == _machine.alphabet()) {
+                _machine.convert(buf, start, end);
+            } else {
+                super.convert(alpha, buf, start, end);
+            }
+        }
+
+        /** The machine I drive. */
+        private final Machine _machine;
+    }
+
+    /** The system Java compiler, or null if there is none. */
+    private static final JavaCompiler COMPILER =
+        ToolProvider.getSystemJavaCompiler();
+
+    /** Parameter types of the constructors of generated classes. */
+    private static final Class<?>[] PARAMETERS = {
+        int[].class, int[][].class, long[].class, boolean[][].class
+    };
+
+    /** Constructors of the MAX_CLASSES classes generated most recently
+     *  used, by layout(), least recently used first. */
+    private static final LinkedHashMap<String, MethodHandle> CLASSES =
+        new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, MethodHandle> eldest) {
+                return size() > MAX_CLASSES;
+            }
+        };
+
+    /** The layouts for which compile() failed to define a class
+     *  (guarded by CLASSES). */
+    private static final HashSet<String> FAILED = new HashSet<>();
+
+    /** Number of classes compile() has generated and defined, and the
+     *  total time it took, in nanoseconds (guarded by CLASSES). */
+    private static long _compiles, _compileNanos;
+}
@@ -0,0 +1,147 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the MachineCompiler class.
+ *  @author Oumar Balde
+ */
+public class MachineCompilerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Check that a Converter compiled from a machine with NUMROTORS slots
+     *  and PAWLS pawls, holding ROTORS at SETTING with plugboard CYCLES,
+     *  agrees with the machine itself on a long random message. */
+    private void checkAgainstMachine(int numRotors, int pawls,
+                                     String[] rotors, String setting,
+                                     String cycles) {
+        Machine mach = new Machine(UPPER, numRotors, pawls, navalRotors());
+        mach.insertRotors(rotors);
+        mach.setRotors(setting);
+        mach.setPlugboard(new Permutation(cycles, UPPER));
+        Converter conv = MachineCompiler.compile(mach);
+        Random random = new Random(numRotors * 31 + setting.hashCode());
+        for (int i = 0; i < 20000; i += 1) {
+            int c = random.nextInt(UPPER.size());
+            assertEquals(msg(setting, "character %d", i),
+                         mach.convert(c), conv.convert(c));
+        }
+        for (int k = 0; k < numRotors; k += 1) {
+            assertEquals(mach.setting(k), conv.setting(k));
+        }
+        char[] text = "FROM HIS SHOULDER, HIAWATHA ".repeat(100)
+            .toCharArray();
+        char[] expected = new char[text.length];
+        for (int i = 0; i < text.length; i += 1) {
+            expected[i] = !UPPER.contains(text[i]) ? text[i]
+                : UPPER.toChar(mach.convert(UPPER.toInt(text[i])));
+        }
+        conv.convert(UPPER, text, 0, text.length);
+        assertArrayEquals(expected, text);
+        for (int k = 0; k < numRotors; k += 1) {
+            assertEquals(mach.setting(k), conv.setting(k));
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testNavalLayout() {
+        checkAgainstMachine(5, 3, new String[] {"B", "Beta", "I", "II", "III"},
+                            "AAAA", "");
+        checkAgainstMachine(5, 3, new String[] {"C", "Gamma", "VI", "IV", "V"},
+                            "QDVZ", "(AQ) (EP) (TD) (KC)");
+    }
+
+    @Test
+    public void testDoubleNotches() {
+        checkAgainstMachine(6, 4,
+                            new String[] {"B", "Beta", "VI", "VII", "VIII",
+                                          "I"},
+                            "ALYQZ", "(MN)");
+    }
+
+    @Test
+    public void testInterleavedFixedRotor() {
+        checkAgainstMachine(5, 3, new String[] {"B", "I", "Beta", "II", "III"},
+                            "XKDE", "(HZ)");
+    }
+
+    @Test
+    public void testSpecializedWhenAvailable() {
+        if (!MachineCompiler.available()) {
+            return;
+        }
+        Machine mach = navalMachine();
+        mach.insertRotors(new String[] {"B", "Beta", "I", "II", "III"});
+        mach.setRotors("AAAA");
+        mach.setPlugboard(new Permutation("", UPPER));
+        Converter conv = MachineCompiler.compile(mach);
+        assertNotSame(MachineCompiler.interpreted(mach).getClass(),
+                      conv.getClass());
+        assertEquals("ILBDAAMTAZ", conv.convert(UPPER, "HELLOWORLD"));
+        assertEquals(0, mach.setting(4));
+    }
+
+    @Test
+    public void testClassesSharedByLayout() {
+        if (!MachineCompiler.available()) {
+            return;
+        }
+        Machine mach = navalMachine();
+        Main.setUp(mach, "* B Beta I II III AAAA");
+        Converter conv = MachineCompiler.compile(mach);
+        Machine other = navalMachine();
+        Main.setUp(other, "* C Gamma V IV VI QRST BCDE (AZ) (QP)");
+        assertTrue(MachineCompiler.isCompiled(other));
+        assertTrue(MachineCompiler.compileCost(-1) > 0);
+        Converter otherConv = MachineCompiler.compile(other);
+        assertSame(conv.getClass(), otherConv.getClass());
+        assertEquals(other.copy().convert("HELLOWORLD"),
+                     otherConv.convert(UPPER, "HELLOWORLD"));
+        Machine smaller = new Machine(UPPER, 4, 2, navalRotors());
+        Main.setUp(smaller, "* B Beta I II AAA");
+        assertFalse(MachineCompiler.isCompiled(smaller));
+    }
+
+    @Test
+    public void testFailedLayoutNotRetried() {
+        if (!MachineCompiler.available()) {
+            return;
+        }
+        int slots = 600;
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      UPPER)));
+        String[] names = new String[slots];
+        names[0] = "B";
+        for (int k = 1; k < slots; k += 1) {
+            names[k] = "R" + k;
+            rotors.add(new MovingRotor(names[k], new Permutation(
+                                           NAVALA.get("I"), UPPER), "Q"));
+        }
+        Machine mach = new Machine(UPPER, slots, slots - 1, rotors);
+        mach.insertRotors(names);
+        mach.setPlugboard(new Permutation("", UPPER));
+        assertTrue(MachineCompiler.compilable(mach));
+        Converter conv = MachineCompiler.compile(mach);
+        assertSame(MachineCompiler.interpreted(mach).getClass(),
+                   conv.getClass());
+        assertFalse(MachineCompiler.compilable(mach));
+        assertEquals(Engines.Engine.TABLES,
+                     Engines.use(mach, Engines.Engine.COMPILED).engine());
+    }
+
+}
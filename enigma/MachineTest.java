@@ -77,4 +77,73 @@ public class MachineTest {
                 mach.convert("FROMHISSHOULDERHIAWATHA"));
     }
 
+    @Test
+    public void testReinsertRotors() {
+        Machine mach = mach1();
+        mach.insertRotors(new String[] { "B", "Beta", "I", "IV", "III" });
+        assertEquals(ROTORS.get("I"), mach.getRotor(2));
+        assertEquals(ROTORS.get("III"), mach.getRotor(4));
+        assertEquals(0, mach.setting(4));
+    }
+
+    @Test
+    public void testSettingsWrap() {
+        Machine mach = mach1();
+        mach.setPlugboard(new Permutation("", AZ));
+        mach.setRotors("AAAZ");
+        mach.convert(0);
+        assertEquals(0, mach.setting(4));
+    }
+
+    @Test
+    public void testRingSettings() {
+        Machine mach = TestUtils.navalMachine();
+        mach.insertRotors(new String[] { "B", "Beta", "I", "II", "III" });
+        mach.setPlugboard(new Permutation("", AZ));
+        mach.setRotors("AAAA");
+        assertEquals("BDZGO", mach.convert("AAAAA"));
+        mach.setRotors("AAAA", "ABBB");
+        assertEquals("EWTYX", mach.convert("AAAAA"));
+        assertEquals(1, mach.ring(2));
+        mach.setRotors("AADU", "ABBB");
+        mach.convert("AAAAA");
+        assertEquals(1, mach.setting(2));
+        assertEquals(5, mach.setting(3));
+        assertEquals(25, mach.setting(4));
+    }
+
+    @Test
+    public void testCopyIsIndependent() {
+        Machine mach = TestUtils.navalMachine();
+        Main.setUp(mach, "* B Beta I II III AAAA BRZX (TD)");
+        mach.convert("HELLO");
+        Machine copy = mach.copy();
+        String expected = mach.convert("WORLD");
+        copy.setRotors("AAAA", "CCCC");
+        copy.setRotors("QQQQ");
+        mach.setRotors("AAAA");
+        mach.convert("HELLO");
+        Machine again = mach.copy();
+        assertEquals(expected, again.convert("WORLD"));
+        assertEquals(expected, mach.convert("WORLD"));
+    }
+
+    @Test
+    public void testBufferMatchesEach() {
+        Machine mach = TestUtils.navalMachine();
+        Main.setUp(mach, "* B Beta I II III AXLE BRZX (TD) (KC) (JZ)");
+        Machine each = mach.copy();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 3 * Machine.BLOCK + 7; i += 1) {
+            text.append(i % 11 == 0 ? ' ' : (char) ('A' + i * 7 % 26));
+        }
+        text.append("a\u00e9~");
+        char[] staged = text.toString().toCharArray();
+        char[] single = staged.clone();
+        mach.convert(staged, 3, staged.length);
+        each.convertEach(single, 3, single.length);
+        assertArrayEquals(single, staged);
+        assertEquals(each.convert("HELLO"), mach.convert("HELLO"));
+    }
+
 }
@@ -1,8 +1,16 @@
 package enigma;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.Reader;
 
 import java.util.Scanner;
 import java.util.List;
@@ -30,14 +38,70 @@ public final class Main {
     public static void main(String... args) {
         try {
             CommandArgs options =
-                new CommandArgs("--verbose --=(.*){1,3}", args);
-            if (!options.ok()) {
+                new CommandArgs("--verbose --compiled "
+                                + "--engine=(auto|tables|compiled|state"
+                                + "|composed) "
+                                + "--calibrate "
+                                + "--pipeline=(spin|yield|park) --stats "
+                                + "--indicators --depth --interactive "
+                                + "--windows --cascade --warmup=(.+) "
+                                + "--warmup-keys=([1-9][0-9]*) "
+                                + "--cache=([1-9][0-9]*) "
+                                + "--=(.*){1,3}", args);
+            if (!options.ok() || !compatible(options)) {
                 throw error("Usage: java enigma.Main [--verbose] "
-                            + "[INPUT [OUTPUT]]");
+                            + "[--engine=auto|tables|compiled|state"
+                            + "|composed | --compiled] [--calibrate] "
+                            + "[--pipeline=spin|yield|park "
+                            + "| --indicators | --depth "
+                            + "| --interactive [--windows] | --cascade] "
+                            + "[--warmup=LOG [--warmup-keys=N]] "
+                            + "[--cache=KB] "
+                            + "[--stats] CONFIG [INPUT [OUTPUT]]");
             }
 
             _verbose = options.contains("--verbose");
-            new Main(options.get("--")).process();
+            if (options.contains("--compiled")) {
+                _engine = Engines.Engine.COMPILED;
+            } else if (options.contains("--engine")
+                       && !options.getFirst("--engine").equals("auto")) {
+                _engine = Engines.Engine.valueOf(
+                    options.getFirst("--engine").toUpperCase());
+            }
+            _calibrate = options.contains("--calibrate");
+            if (options.contains("--pipeline")) {
+                _pipeline = Pipeline.WaitStrategy.valueOf(
+                    options.getFirst("--pipeline").toUpperCase());
+            }
+            _stats = options.contains("--stats");
+            _indicators = options.contains("--indicators");
+            _depth = options.contains("--depth");
+            _interactive = options.contains("--interactive");
+            _windows = options.contains("--windows");
+            _cascade = options.contains("--cascade");
+            _warmupLog = options.getFirst("--warmup");
+            if (options.contains("--warmup-keys")) {
+                _warmupKeys =
+                    Integer.parseInt(options.getFirst("--warmup-keys"));
+            }
+            Main main = new Main(options.get("--"));
+            ResultCache cache = null;
+            if (options.contains("--cache")) {
+                cache = new ResultCache(
+                    Long.parseLong(options.getFirst("--cache")) * 1024);
+                main.useCache(cache);
+            }
+            try {
+                main.process();
+            } finally {
+                main.close();
+            }
+            if (_stats) {
+                System.err.println(PermutationPool.stats());
+                if (cache != null) {
+                    System.err.println(cache.stats());
+                }
+            }
             return;
         } catch (EnigmaException excp) {
             System.err.printf("Error: %s%n", excp.getMessage());
@@ -45,104 +109,346 @@ public final class Main {
         System.exit(1);
     }
 
+    /** Return true iff OPTIONS name at most one of the modes --pipeline,
+     *  --indicators, --depth, --interactive and --cascade, and do not ask
+     *  for --cache with a mode other than --cascade, since only the
+     *  sequential conversion of messages consults the cache. */
+    static boolean compatible(CommandArgs options) {
+        int modes = 0;
+        for (String mode : MODES) {
+            if (options.contains(mode)) {
+                modes += 1;
+            }
+        }
+        boolean sequential = modes == 0
+            || modes == 1 && options.contains("--cascade");
+        return modes <= 1 && (sequential || !options.contains("--cache"));
+    }
+
+    /** Options selecting a way of processing the input other than the
+     *  usual one, of which at most one may be given. */
+    private static final String[] MODES = {
+        "--pipeline", "--indicators", "--depth", "--interactive", "--cascade"
+    };
+
     /** Open the necessary files for non-option arguments ARGS (see comment
       *  on main). */
     Main(List<String> args) {
         _config = getInput(args.get(0));
 
         if (args.size() > 1) {
-            _input = getInput(args.get(1));
+            _keys = getReader(args.get(1));
+            _expected = Math.max(new File(args.get(1)).length(), 1);
+        } else if (_interactive) {
+            _keys = new InputStreamReader(System.in);
         } else {
-            _input = new Scanner(System.in);
+            _keys = new InputStreamReader(decompressed(System.in, "input"));
         }
+        _input = new Lexer(_keys);
 
         if (args.size() > 2) {
             _output = getOutput(args.get(2));
+            _ownsOutput = true;
         } else {
             _output = System.out;
         }
+        _lines = new LineWriter(_output);
+    }
+
+    /** A Main reading its configuration from CONFIG and messages from
+     *  INPUT, and writing to OUTPUT. */
+    Main(Scanner config, Lexer input, PrintStream output) {
+        _config = config;
+        _input = input;
+        _output = output;
+        _lines = new LineWriter(_output);
+    }
+
+    /** Return a Scanner reading from the file named NAME, decompressing
+     *  it if need be. */
+    static Scanner getInput(String name) {
+        return new Scanner(getReader(name));
     }
 
-    /** Return a Scanner reading from the file named NAME. */
-    private Scanner getInput(String name) {
+    /** Return a Reader reading from the file named NAME, decompressing it
+     *  if need be. */
+    static Reader getReader(String name) {
         try {
-            return new Scanner(new File(name));
+            return new InputStreamReader(
+                decompressed(new FileInputStream(name), name));
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
+    /** Return IN, named NAME, decompressed if it is compressed. */
+    private static InputStream decompressed(InputStream in, String name) {
+        try {
+            return CompressedStreams.input(in);
+        } catch (IOException excp) {
+            throw error("could not read %s: %s", name, excp.getMessage());
+        }
+    }
+
+    /** Return a PrintStream writing to the file named NAME, compressing
+     *  its contents if NAME ends in ".gz". */
     private PrintStream getOutput(String name) {
         try {
-            return new PrintStream(new File(name));
+            return new PrintStream(new BufferedOutputStream(
+                CompressedStreams.output(new FileOutputStream(name), name),
+                CompressedStreams.BUFFER_SIZE));
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
+    /** Look up the conversions of messages in CACHE before converting
+     *  them, and add those not found.  Has no effect when tracing, or with
+     *  --pipeline, --indicators, --depth or --interactive. */
+    void useCache(ResultCache cache) {
+        _cache = cache;
+    }
+
+    /** Stop any warm-up, close my inputs (which stops any threads
+     *  decompressing them), and close the output file, if I opened one. */
+    void close() {
+        if (_warmup != null) {
+            _warmup.stop(System.err);
+        }
+        _config.close();
+        if (_keys != null) {
+            try {
+                _keys.close();
+            } catch (IOException excp) {
+                /* Ignore. */
+            }
+        }
+        if (_ownsOutput) {
+            _output.close();
+            if (_output.checkError()) {
+                throw error("could not write output");
+            }
+        }
+    }
+
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
      *  results to _output. */
-    private void process() {
+    void process() {
+        Machine machine = readConfig(_config);
+        _alphabet = machine.alphabet();
+        if (_warmupLog != null && !_interactive) {
+            int threads = Runtime.getRuntime().availableProcessors() - 1;
+            _warmup = new Warmup(machine, new File(_warmupLog), _warmupKeys,
+                                 (M) -> choice(M, _expected).converter(),
+                                 Math.max(threads, 1));
+            _warmup.start(System.err);
+        }
+        if (_interactive) {
+            Runnable restore = Keyboard.rawTerminal();
+            try {
+                new Keyboard(_keys, machine, _output, System.err,
+                             _windows).run();
+            } finally {
+                if (restore != null) {
+                    restore.run();
+                }
+            }
+            return;
+        }
+        if (_indicators) {
+            BufferedWriter output =
+                new BufferedWriter(new OutputStreamWriter(_output));
+            int bad = new IndicatorBatch(_input, machine,
+                                         this::choiceFor, output,
+                                         System.err,
+                                         Runtime.getRuntime()
+                                         .availableProcessors()).run();
+            if (bad > 0) {
+                throw error("%d bad indicators", bad);
+            }
+            return;
+        }
+        if (_depth) {
+            new DepthBatch(_input, machine, new BufferedWriter(
+                               new OutputStreamWriter(_output))).run();
+            return;
+        }
+        if (_pipeline != null) {
+            BufferedWriter output =
+                new BufferedWriter(new OutputStreamWriter(_output));
+            Pipeline pipeline = new Pipeline(_input, machine,
+                                             this::converterFor, output,
+                                             _pipeline);
+            pipeline.run();
+            if (_stats) {
+                System.err.println(pipeline.stats());
+            }
+            return;
+        }
 
-        Machine machine = readConfig();
-        String setupLine = _input.nextLine();
-        String msg = "";
-        setUp(machine, setupLine);
+        Converter converter = null;
+        ArrayList<Machine> stages = new ArrayList<>();
+        if (_cache != null && !_verbose) {
+            _configId = ResultCache.configId(machine);
+        } else {
+            _cache = null;
+        }
 
-        while (_input.hasNextLine()) {
-            String nextLine = _input.nextLine();
-            if (nextLine.contains("*")) {
-                setUp(machine, nextLine);
-            } else {
-                msg = machine.convert(
-                        nextLine.replaceAll(" ", ""));
-                printMessageLine(msg);
+        try {
+            while (_input.next()) {
+                if (_input.isSetting() && _cascade) {
+                    if (converter != null) {
+                        stages.clear();
+                        converter = null;
+                    }
+                    Machine stage = machine.copy();
+                    setUp(stage, _input);
+                    stages.add(stage);
+                    if (_cache != null) {
+                        _context = (stages.size() == 1 ? _configId : _context)
+                            + '\n' + _input.text();
+                        _position = 0;
+                    }
+                } else if (_input.isSetting()) {
+                    setUp(machine, _input);
+                    converter = converterFor(machine);
+                    if (_cache != null) {
+                        _context = _configId + '\n' + _input.text();
+                        _position = 0;
+                    }
+                } else {
+                    if (converter == null && !stages.isEmpty()) {
+                        converter = new Cascade(stages);
+                    }
+                    if (converter == null) {
+                        throw _input.error(0,
+                                           "message without a configuration");
+                    }
+                    printMessageLine(converter, _input.buffer(),
+                                     _input.start(), _input.end());
+                }
             }
+        } finally {
+            _lines.flush();
+        }
+    }
+
+    /** Convert the message in LINE[START .. END-1] with CONVERTER, ignoring
+     *  blanks, and print the result in groups of five. */
+    private void printMessageLine(Converter converter, char[] line,
+                                  int start, int end) {
+        if (_msg.length < end - start) {
+            _msg = new char[end - start];
+            _grouped = new char[_msg.length + _msg.length / GROUP];
+        }
+        int len = stripBlanks(line, start, end, _msg);
+        if (_cache != null) {
+            printCached(converter, len);
+            return;
+        }
+        converter.convert(_alphabet, _msg, 0, len);
+        _lines.append(_grouped, 0, formatMessage(_msg, len, _grouped))
+            .newLine();
+    }
+
+    /** Print the conversion of the message _msg[0 .. LEN-1] by CONVERTER,
+     *  as printMessageLine does, taking it from _cache if it is there, in
+     *  which case CONVERTER is only stepped past the message. */
+    private void printCached(Converter converter, int len) {
+        ResultCache.Key key =
+            ResultCache.key(_context, _position, _msg, 0, len);
+        int letters = 0;
+        for (int i = 0; i < len; i += 1) {
+            if (_alphabet.contains(_msg[i])) {
+                letters += 1;
+            }
+        }
+        String output = _cache.get(key);
+        if (output != null) {
+            converter.skip(letters);
+        } else {
+            converter.convert(_alphabet, _msg, 0, len);
+            output = new String(_grouped, 0,
+                                formatMessage(_msg, len, _grouped));
+            _cache.put(key, output);
+        }
+        _position += letters;
+        _lines.append(output).newLine();
+    }
+
+    /** Return a Converter for M in its current state, using the engine
+     *  given by --engine, or else the one expected to convert the input
+     *  fastest. */
+    private Converter converterFor(Machine M) {
+        return choiceFor(M, _expected).converter();
+    }
+
+    /** Return the choice of engine for M in its current state, as for
+     *  converterFor, when it is expected to convert LENGTH characters,
+     *  reporting it if --stats was given. */
+    private Engines.Choice choiceFor(Machine M, long length) {
+        Engines.Choice choice = choice(M, length);
+        if (_stats) {
+            System.err.println(choice);
         }
+        return choice;
     }
 
-    /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
-    private Machine readConfig() {
+    /** Return the choice of engine for M in its current state, expected
+     *  to convert LENGTH characters (see converterFor). */
+    private Engines.Choice choice(Machine M, long length) {
+        return _engine == null
+            ? Engines.choose(M, length, _calibrate)
+            : Engines.use(M, _engine);
+    }
+
+    /** Return an Enigma machine configured from the contents of
+     *  configuration file CONFIG. */
+    static Machine readConfig(Scanner config) {
         try {
-            String chars = _config.nextLine();
+            String chars = config.nextLine();
             if (chars.contains("*") || chars.contains("(")
                     || chars.contains(")")) {
                 throw new EnigmaException("Wrong alphabet formatting");
             }
-            _alphabet = new Alphabet(chars);
+            Alphabet alphabet = new Alphabet(chars);
 
-            Scanner lineScanner = new Scanner(_config.nextLine());
+            Scanner lineScanner = new Scanner(config.nextLine());
             int numRotors = lineScanner.nextInt();
             int pawls = lineScanner.nextInt();
+            SteppingModel model = lineScanner.hasNext()
+                ? SteppingModel.forName(lineScanner.next())
+                : SteppingModel.LEVER;
 
             ArrayList<Rotor> allRotors = new ArrayList<Rotor>();
-            while (_config.hasNext()) {
-                allRotors.add(readRotor());
+            while (config.hasNext()) {
+                allRotors.add(readRotor(config, alphabet));
             }
 
-            return new Machine(_alphabet, numRotors, pawls, allRotors);
+            Machine machine =
+                new Machine(alphabet, numRotors, pawls, allRotors);
+            machine.setSteppingModel(model);
+            return machine;
 
         } catch (NoSuchElementException excp) {
             throw error("configuration file truncated");
         }
     }
 
-    /** Return a rotor, reading its description from _config. */
-    private Rotor readRotor() {
+    /** Return a rotor on ALPHABET, reading its description from CONFIG. */
+    private static Rotor readRotor(Scanner config, Alphabet alphabet) {
         try {
 
-            String name = _config.next();
-            String rotorType = _config.next();
+            String name = config.next();
+            String rotorType = config.next();
             String cycles = "";
 
-            while (_config.hasNext("\\(.*\\)")) {
-                cycles += _config.next();
+            while (config.hasNext("\\(.*\\)")) {
+                cycles += config.next();
             }
 
-            Permutation perm = new Permutation(cycles, _alphabet);
+            Permutation perm = PermutationPool.intern(cycles, alphabet);
 
             if (rotorType.charAt(0) == 'M') {
                 String notches = "";
@@ -163,58 +469,92 @@ public final class Main {
         }
     }
 
+    /** Return true iff LINE is a setting line rather than a message, that
+     *  is, iff its first non-blank character is '*'. */
+    static boolean isSettingLine(String line) {
+        for (int i = 0; i < line.length(); i += 1) {
+            if (!Character.isWhitespace(line.charAt(i))) {
+                return line.charAt(i) == '*';
+            }
+        }
+        return false;
+    }
+
     /** Set M according to the specification given on SETTINGS,
      *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
-
-        try {
-            String[] settingArr = settings.split(" ");
+    static void setUp(Machine M, String settings) {
+        setUp(M, Lexer.of(settings));
+    }
 
-            if (settingArr.length - 1 < M.numRotors()) {
-                throw new EnigmaException("Wrong input format");
-            }
-            if (!settingArr[0].equals("*")) {
-                throw new EnigmaException("Input should begin with '*'");
-            }
+    /** Set M according to the current line of LINE, which must have the
+     *  format specified in the assignment, optionally followed by a ring
+     *  setting (in the same form as the rotor setting) before the
+     *  plugboard cycles. */
+    static void setUp(Machine M, Lexer line) {
+        int numRotors = M.numRotors();
+        if (!line.isSetting()) {
+            throw line.error(0, "setting line must begin with '*'");
+        }
+        if (line.tokenLength(0) != 1) {
+            throw line.error(0, "'*' must be followed by a blank");
+        }
+        if (line.numTokens() < numRotors + 2) {
+            throw line.error(line.numTokens(),
+                             "expected %d rotor names and a setting",
+                             numRotors);
+        }
 
-            String cycles = "";
-            String[] rotorNames = new String[M.numRotors()];
-            for (int i = 1; i <= M.numRotors(); i++) {
-                rotorNames[i - 1] = settingArr[i];
+        String[] rotorNames = new String[numRotors];
+        for (int i = 1; i <= numRotors; i++) {
+            rotorNames[i - 1] = line.token(i);
+            if (!M.hasRotor(rotorNames[i - 1])) {
+                throw line.error(i, "unknown rotor %s", rotorNames[i - 1]);
             }
-
-
+        }
+        try {
             M.insertRotors(rotorNames);
+        } catch (EnigmaException excp) {
+            throw line.error(1, "%s", excp.getMessage());
+        }
 
-            int movingRotors = 0; int fixedRotors = 0;
-            for (int i = 0; i < M.numRotors(); i++) {
-                if (M.getRotor(i).rotates()) {
-                    movingRotors++;
-                } else {
-                    fixedRotors++;
-                }
+        int movingRotors = 0;
+        for (int i = 0; i < numRotors; i++) {
+            if (M.getRotor(i).rotates()) {
+                movingRotors++;
             }
+        }
+        if (movingRotors != M.numPawls()) {
+            throw line.error(1, "wrong number of moving/non-moving rotors");
+        }
 
-            if (movingRotors != M.numPawls()
-                    || fixedRotors != M.numRotors() - M.numPawls()) {
-                throw new EnigmaException("Wrong number of "
-                        + "moving/non-moving rotors");
+        int settingToken = numRotors + 1;
+        int ringToken = settingToken + 1;
+        boolean hasRing = ringToken < line.numTokens()
+            && !line.tokenStartsWith(ringToken, '(');
+        try {
+            M.setRotors(line.token(settingToken));
+        } catch (EnigmaException excp) {
+            throw line.error(settingToken, "%s", excp.getMessage());
+        }
+        if (hasRing) {
+            try {
+                M.setRotors(line.token(settingToken), line.token(ringToken));
+            } catch (EnigmaException excp) {
+                throw line.error(ringToken, "%s", excp.getMessage());
             }
+        }
 
-            for (int i = M.numRotors() + 2; i < settingArr.length; i++) {
-                cycles += settingArr[i];
+        int cycleToken = hasRing ? ringToken + 1 : ringToken;
+        String cycles = "";
+        if (line.numTokens() > cycleToken) {
+            for (int i = cycleToken; i < line.numTokens(); i++) {
+                if (!line.tokenStartsWith(i, '(')) {
+                    throw line.error(i, "plugboard cycle expected");
+                }
             }
-            Permutation plugboard = new Permutation(cycles, _alphabet);
-
-            M.setRotors(settingArr[M.numRotors() + 1]);
-            M.setPlugboard(plugboard);
-            M.insertRotors(rotorNames);
-        } catch (ArrayIndexOutOfBoundsException excp) {
-            throw error("Wrong input format");
-        } catch (EnigmaException excp) {
-            throw error("Wrong input format");
+            cycles = line.rest(cycleToken);
         }
-
+        M.setPlugboard(PermutationPool.intern(cycles, M.alphabet()));
     }
 
     /** Return true iff verbose option specified. */
@@ -222,24 +562,63 @@ public final class Main {
         return _verbose;
     }
 
-    /** Print MSG in groups of five (except that the last group may
+    /** Return MSG in groups of five (except that the last group may
      *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        msg = msg.replace(" ", "");
-        String result = "";
-        while (msg.length() > 5) {
-            result += msg.substring(0, 5) + " ";
-            msg = msg.substring(5);
+    static String formatMessage(String msg) {
+        char[] letters = msg.replace(" ", "").toCharArray();
+        char[] result = new char[letters.length + letters.length / GROUP];
+        return new String(result, 0,
+                          formatMessage(letters, letters.length, result));
+    }
+
+    /** Copy the non-blank characters of SRC[START .. END-1], in order, to
+     *  the start of DST, returning their number.  DST may be SRC. */
+    static int stripBlanks(char[] src, int start, int end, char[] dst) {
+        int len = 0;
+        for (int i = start; i < end; i += 1) {
+            if (src[i] != ' ') {
+                dst[len] = src[i];
+                len += 1;
+            }
+        }
+        return len;
+    }
+
+    /** Copy MSG[0 .. LEN-1] into RESULT in groups of five (except that the
+     *  last group may have fewer letters), returning the length of the
+     *  text written.  RESULT must have room for LEN + LEN / 5
+     *  characters. */
+    static int formatMessage(char[] msg, int len, char[] result) {
+        int k = 0;
+        for (int i = 0; i < len; i += 1) {
+            if (i > 0 && i % GROUP == 0) {
+                result[k] = ' ';
+                k += 1;
+            }
+            result[k] = msg[i];
+            k += 1;
         }
-        result += msg;
-        _output.println(result);
+        return k;
     }
 
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
+    /** Number of letters in each group of output. */
+    static final int GROUP = 5;
+
     /** Source of input messages. */
-    private Scanner _input;
+    private Lexer _input;
+
+    /** The characters read by _input, which are read directly as keys
+     *  by --interactive. */
+    private Reader _keys;
+
+    /** The message being converted, without blanks. */
+    private char[] _msg = new char[0];
+
+    /** The converted message, in groups. */
+    private char[] _grouped = new char[0];
 
     /** Source of machine configuration. */
     private Scanner _config;
@@ -247,6 +626,71 @@ public final class Main {
     /** File for encoded/decoded messages. */
     private PrintStream _output;
 
+    /** Number of characters of input expected: the size of the input
+     *  file, or a guess when reading the standard input. */
+    private long _expected = EXPECTED_INPUT;
+
+    /** Number of characters expected on the standard input. */
+    static final long EXPECTED_INPUT = 1 << 16;
+
+    /** True iff _output is a file I opened, to be closed when done. */
+    private boolean _ownsOutput;
+
+    /** Writes lines to _output. */
+    private LineWriter _lines;
+
+    /** The warm-up started for --warmup, or null. */
+    private Warmup _warmup;
+
+    /** Cache of conversions given by useCache, or null. */
+    private ResultCache _cache;
+
+    /** Identifies my configuration in _cache keys. */
+    private String _configId;
+
+    /** The configuration and current setting line (or lines, for a
+     *  cascade), as they figure in _cache keys. */
+    private String _context;
+
+    /** Number of letters converted since the current setting. */
+    private long _position;
+
     /** True if --verbose specified. */
     private static boolean _verbose;
+
+    /** The engine given by --engine or --compiled, or null to choose
+     *  one automatically. */
+    private static Engines.Engine _engine;
+
+    /** True if --calibrate specified. */
+    private static boolean _calibrate;
+
+    /** The wait strategy given by --pipeline, or null if absent. */
+    private static Pipeline.WaitStrategy _pipeline;
+
+    /** True if --stats specified. */
+    private static boolean _stats;
+
+    /** True if --indicators specified. */
+    private static boolean _indicators;
+
+    /** True if --depth specified. */
+    private static boolean _depth;
+
+    /** True if --interactive specified. */
+    private static boolean _interactive;
+
+    /** True if --windows specified. */
+    private static boolean _windows;
+
+    /** True if --cascade specified: consecutive setting lines then set up
+     *  the stages of a cascade (see Cascade), through which the following
+     *  messages pass in order. */
+    private static boolean _cascade;
+
+    /** The key-usage log given by --warmup, or null if absent. */
+    private static String _warmupLog;
+
+    /** Number of settings warmed, given by --warmup-keys. */
+    private static int _warmupKeys = Warmup.KEYS;
 }
@@ -87,6 +87,36 @@ class Permutation {
         return _alphabet.toChar(permIndex);
     }
 
+    /** Return a table of 2 * size() entries whose entry I is the result
+     *  of applying this permutation with its letters turned RING positions
+     *  around the alphabet to I (modulo the size), that is P(I - RING) +
+     *  RING.  The tables are built when first needed and shared by all
+     *  callers, who must not modify them. */
+    synchronized int[] forward(int ring) {
+        if (_forward == null) {
+            _forward = new int[size()][];
+            _backward = new int[size()][];
+        }
+        if (_forward[ring] == null) {
+            int[] forward = new int[2 * size()];
+            int[] backward = new int[forward.length];
+            for (int i = 0; i < forward.length; i += 1) {
+                forward[i] = wrap(permute(i - ring) + ring);
+                backward[i] = wrap(invert(i - ring) + ring);
+            }
+            _forward[ring] = forward;
+            _backward[ring] = backward;
+        }
+        return _forward[ring];
+    }
+
+    /** Return the table for the inverse of this permutation, as for
+     *  forward(RING). */
+    synchronized int[] backward(int ring) {
+        forward(ring);
+        return _backward[ring];
+    }
+
     /** Return the alphabet used to initialize this Permutation. */
     Alphabet alphabet() {
         return _alphabet;
@@ -117,4 +147,8 @@ class Permutation {
      * Cycles of this permutation.
      */
     private String _cycles;
+
+    /** Tables returned by forward() and backward(), by ring setting, or
+     *  null where not yet built. */
+    private int[][] _forward, _backward;
 }
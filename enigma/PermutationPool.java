@@ -0,0 +1,145 @@
+package enigma;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+
+import static enigma.EnigmaException.*;
+
+/** A pool of canonical Permutations, so that machines built from the same
+ *  wirings (in however many configurations) share one Permutation per
+ *  distinct wiring, and with it the wiring tables compiled from it.  Cycle
+ *  descriptions are normalized before lookup: whitespace and fixed points
+ *  are dropped, each cycle starts with its first letter in alphabet order,
+ *  and cycles are in the order of their first letters.  Entries are held
+ *  weakly, and are reclaimed once no machine uses them.
+ *  @author Oumar Balde
+ */
+class PermutationPool {
+
+    /** Not instantiable. */
+    private PermutationPool() {
+    }
+
+    /** Return the canonical Permutation described by CYCLES (as for the
+     *  Permutation constructor) on ALPHABET. */
+    static synchronized Permutation intern(String cycles,
+                                           Alphabet alphabet) {
+        purge();
+        String normal = normalize(cycles, alphabet);
+        String key = alphabet.chars() + "\n" + normal;
+        _lookups += 1;
+        Entry entry = POOL.get(key);
+        Permutation result = entry == null ? null : entry.get();
+        if (result != null) {
+            _hits += 1;
+            return result;
+        }
+        result = new Permutation(normal, alphabet);
+        POOL.put(key, new Entry(key, result));
+        return result;
+    }
+
+    /** Return the number of distinct permutations in the pool. */
+    static synchronized int size() {
+        purge();
+        return POOL.size();
+    }
+
+    /** Return a description of the pool's size and hit rate. */
+    static synchronized String stats() {
+        return String.format("permutation pool: %d entries, %d lookups, "
+                             + "%.1f%% hits", size(), _lookups,
+                             100.0 * _hits / Math.max(1, _lookups));
+    }
+
+    /** Return CYCLES on ALPHABET in normal form. */
+    static String normalize(String cycles, Alphabet alphabet) {
+        int n = alphabet.size();
+        int[] next = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            next[i] = -1;
+        }
+        int first = -1, prev = -1;
+        for (int i = 0; i < cycles.length(); i += 1) {
+            char ch = cycles.charAt(i);
+            if (Character.isWhitespace(ch)) {
+                continue;
+            } else if (ch == '(' && first == -1 && prev == -1) {
+                prev = -2;
+            } else if (ch == ')' && prev != -1) {
+                if (prev >= 0) {
+                    next[prev] = first;
+                }
+                first = prev = -1;
+            } else {
+                int c = alphabet.toInt(ch);
+                if (prev == -1 || c == -1 || next[c] != -1 || c == first
+                    || c == prev) {
+                    throw error("bad permutation cycles: %s", cycles);
+                }
+                if (prev == -2) {
+                    first = c;
+                } else {
+                    next[prev] = c;
+                }
+                prev = c;
+            }
+        }
+        if (prev != -1) {
+            throw error("bad permutation cycles: %s", cycles);
+        }
+
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < n; i += 1) {
+            if (next[i] == -1 || next[i] == i) {
+                continue;
+            }
+            boolean least = true;
+            for (int c = next[i]; c != i; c = next[c]) {
+                least &= c > i;
+            }
+            if (least) {
+                result.append('(');
+                int c = i;
+                do {
+                    result.append(alphabet.toChar(c));
+                    c = next[c];
+                } while (c != i);
+                result.append(')');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Remove the entries of reclaimed Permutations. */
+    private static void purge() {
+        for (Object ref = QUEUE.poll(); ref != null; ref = QUEUE.poll()) {
+            Entry entry = (Entry) ref;
+            if (POOL.get(entry.key) == entry) {
+                POOL.remove(entry.key);
+            }
+        }
+    }
+
+    /** A weak reference to a pooled Permutation. */
+    private static class Entry extends WeakReference<Permutation> {
+        /** A reference to PERM, pooled under KEY. */
+        Entry(String key, Permutation perm) {
+            super(perm, QUEUE);
+            this.key = key;
+        }
+
+        /** The key of this entry. */
+        final String key;
+    }
+
+    /** Pooled permutations by alphabet and normalized cycles. */
+    private static final HashMap<String, Entry> POOL = new HashMap<>();
+    /** Entries whose Permutations have been reclaimed. */
+    private static final ReferenceQueue<Permutation> QUEUE =
+        new ReferenceQueue<>();
+    /** Number of calls to intern(), and of those that found an existing
+     *  entry. */
+    private static long _lookups, _hits;
+}
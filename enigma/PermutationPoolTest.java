@@ -0,0 +1,85 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Scanner;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the PermutationPool class.
+ *  @author Oumar Balde
+ */
+public class PermutationPoolTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A small configuration. */
+    private static final String CONFIG =
+        UPPER_STRING + "\n 5 3\n"
+        + " I MQ (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + " II ME (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)\n"
+        + " III MV (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+        + " Beta N (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+        + " B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+        + "     (RX) (SZ) (TV)\n";
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testNormalize() {
+        assertEquals("(AELTPHQXRU)(BKNW)(DFG)",
+                     PermutationPool.normalize("(KNWB) (S) ( FGD)"
+                                               + "(UAELTPHQXR)", UPPER));
+        assertEquals("", PermutationPool.normalize(" ", UPPER));
+        for (String bad : new String[] { "(AB", "(ABA)", "(AB)(BC)",
+                                         "AB", "(A(B))", "(a)" }) {
+            try {
+                PermutationPool.normalize(bad, UPPER);
+                fail("accepted " + bad);
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    @Test
+    public void testSharedAcrossConfigs() {
+        Machine m1 = Main.readConfig(new Scanner(CONFIG));
+        Machine m2 = Main.readConfig(new Scanner(CONFIG));
+        Main.setUp(m1, "* B Beta I II III AAAA BBBB (TD) (KC)");
+        Main.setUp(m2, "* B Beta I II III QWER BBBB (CK) (DT)");
+        assertNotSame(m1.getRotor(3), m2.getRotor(3));
+        assertSame(m1.getRotor(3).permutation(),
+                   m2.getRotor(3).permutation());
+        assertSame(m1.plugboard(), m2.plugboard());
+        for (int k = 0; k < m1.numRotors(); k += 1) {
+            assertSame(m1.forward(k), m2.forward(k));
+            assertSame(m1.backward(k), m2.backward(k));
+        }
+        assertTrue(PermutationPool.stats().contains("% hits"));
+    }
+
+    @Test
+    public void testReclaimed() {
+        ArrayList<Permutation> held = new ArrayList<>();
+        for (int i = 0; i < 26; i += 1) {
+            held.add(PermutationPool.intern(String.format(
+                "(Z%c)", (char) ('A' + i % 25)), UPPER));
+        }
+        int size = PermutationPool.size();
+        held.clear();
+        for (int i = 0; i < 50 && PermutationPool.size() >= size; i += 1) {
+            System.gc();
+        }
+        assertTrue(PermutationPool.size() < size);
+    }
+
+}
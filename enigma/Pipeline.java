@@ -0,0 +1,344 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+import static enigma.EnigmaException.*;
+
+/** Runs the reading, converting and writing of messages on three threads.
+ *  The stages share a ring of preallocated, reusable line slots, each stage
+ *  following the one before it around the ring: the reader fills free
+ *  slots from a Lexer, the cipher converts and groups filled slots in
+ *  place, strictly in input order, and the writer (the calling thread)
+ *  writes converted slots and frees them.  Each link between two stages is
+ *  thus a single-producer, single-consumer queue.  Each stage keeps count
+ *  of the time it spends waiting for its neighbors, from which stats()
+ *  reports how busy each stage was.
+ *  @author Oumar Balde
+ */
+class Pipeline {
+
+    /** Ways for a stage to wait for its neighbor. */
+    enum WaitStrategy {
+        /** Busy-spin. */
+        SPIN,
+        /** Spin briefly, then yield the processor. */
+        YIELD,
+        /** Spin briefly, then sleep for a short time. */
+        PARK;
+
+        /** Wait a little, this being the ATTEMPT'th time in a row. */
+        void idle(int attempt) {
+            if (this == SPIN || attempt < SPINS) {
+                Thread.onSpinWait();
+            } else if (this == YIELD) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+
+        /** Number of spins before yielding or parking. */
+        private static final int SPINS = 100;
+
+        /** Duration of one park, in nanoseconds. */
+        private static final long PARK_NANOS = 20_000;
+    }
+
+    /** Default number of slots in the ring. */
+    static final int DEFAULT_SLOTS = 1024;
+
+    /** A pipeline reading from INPUT and writing to OUTPUT, that applies
+     *  setting lines to MACHINE and converts messages with the Converter
+     *  CONVERTERS returns for MACHINE after each setting line.  Stages
+     *  wait for each other according to WAIT. */
+    Pipeline(Lexer input, Machine machine,
+             Function<Machine, Converter> converters, Writer output,
+             WaitStrategy wait) {
+        this(input, machine, converters, output, wait, DEFAULT_SLOTS);
+    }
+
+    /** As for the other constructor, but with a ring of SLOTS slots, where
+     *  SLOTS is a power of 2. */
+    Pipeline(Lexer input, Machine machine,
+             Function<Machine, Converter> converters, Writer output,
+             WaitStrategy wait, int slots) {
+        if (Integer.bitCount(slots) != 1) {
+            throw error("number of slots must be a power of 2");
+        }
+        _input = input;
+        _machine = machine;
+        _converters = converters;
+        _output = output;
+        _wait = wait;
+        _ring = new Slot[slots];
+        for (int i = 0; i < slots; i += 1) {
+            _ring[i] = new Slot();
+        }
+        _mask = slots - 1;
+    }
+
+    /** Process all input, returning when the last line has been written.
+     *  Errors in any stage are reported (as EnigmaExceptions) after all
+     *  output for the lines preceding the erroneous one.  If the reader or
+     *  cipher stage dies of some other Throwable, the writer stops with an
+     *  error rather than waiting for it. */
+    void run() {
+        Thread reader = new Thread(this::read, "enigma-reader");
+        Thread cipher = new Thread(this::cipher, "enigma-cipher");
+        for (Thread stage : new Thread[] { reader, cipher }) {
+            stage.setDaemon(true);
+            stage.setUncaughtExceptionHandler((thread, excp) -> {
+                _failure = thread.getName() + ": " + excp;
+                _halted = true;
+            });
+        }
+        _startTime = System.nanoTime();
+        reader.start();
+        cipher.start();
+        try {
+            write();
+        } finally {
+            _halted = true;
+            _totalTime = System.nanoTime() - _startTime;
+        }
+    }
+
+    /** Return a description of how busy each stage was, and of how full
+     *  the ring was on average as seen by the cipher and writer stages. */
+    String stats() {
+        return String.format("reader %3.0f%% busy, cipher %3.0f%% busy "
+                             + "(%.1f lines queued), writer %3.0f%% busy "
+                             + "(%.1f lines queued), %d lines",
+                             busy(_readerWait), busy(_cipherWait),
+                             (double) _cipherBacklog / Math.max(1, _ciphered),
+                             busy(_writerWait),
+                             (double) _writerBacklog / Math.max(1, _taken),
+                             _written);
+    }
+
+    /** Return the percentage of the run not spent in WAITNANOS. */
+    private double busy(long waitNanos) {
+        return _totalTime == 0 ? 0
+            : 100.0 * (_totalTime - waitNanos) / _totalTime;
+    }
+
+    /** The reader stage: fill slots from _input until it is exhausted. */
+    private void read() {
+        long seq = 0;
+        boolean configured = false;
+        try {
+            while (true) {
+                long start = System.nanoTime();
+                for (int i = 0; seq - _writeSeq >= _ring.length; i += 1) {
+                    if (_halted) {
+                        return;
+                    }
+                    _wait.idle(i);
+                }
+                _readerWait += System.nanoTime() - start;
+                Slot slot = _ring[(int) seq & _mask];
+                slot.clear();
+                if (!_input.next()) {
+                    slot.kind = Slot.END;
+                } else if (_input.isSetting()) {
+                    slot.kind = Slot.SETTING;
+                    slot.line = _input.line();
+                    slot.setting = _input.text();
+                    configured = true;
+                } else if (!configured) {
+                    throw _input.error(0, "message without a configuration");
+                } else {
+                    slot.kind = Slot.MESSAGE;
+                    slot.fill(_input.buffer(), _input.start(), _input.end());
+                }
+                _readSeq = seq + 1;
+                seq += 1;
+                if (slot.kind == Slot.END) {
+                    return;
+                }
+            }
+        } catch (RuntimeException excp) {
+            fail(seq, excp);
+            _readSeq = seq + 1;
+        }
+    }
+
+    /** The cipher stage: apply slots to _machine in order. */
+    private void cipher() {
+        Converter converter = null;
+        Alphabet alpha = _machine.alphabet();
+        for (long seq = 0; true; seq += 1) {
+            long start = System.nanoTime();
+            for (int i = 0; seq >= _readSeq; i += 1) {
+                if (_halted) {
+                    return;
+                }
+                _wait.idle(i);
+            }
+            _cipherWait += System.nanoTime() - start;
+            _cipherBacklog += _readSeq - seq;
+            _ciphered += 1;
+            Slot slot = _ring[(int) seq & _mask];
+            try {
+                if (slot.kind == Slot.SETTING) {
+                    Main.setUp(_machine, Lexer.of(slot.setting, slot.line));
+                    converter = _converters.apply(_machine);
+                } else if (slot.kind == Slot.MESSAGE) {
+                    converter.convert(alpha, slot.text, 0, slot.length);
+                    slot.group();
+                }
+            } catch (RuntimeException excp) {
+                slot.kind = Slot.ERROR;
+                slot.error = asEnigma(excp);
+            }
+            _cipherSeq = seq + 1;
+            if (slot.kind == Slot.END || slot.kind == Slot.ERROR) {
+                return;
+            }
+        }
+    }
+
+    /** The writer stage: write converted slots to _output in order. */
+    private void write() {
+        String newline = System.lineSeparator();
+        try {
+            for (long seq = 0; true; seq += 1) {
+                long start = System.nanoTime();
+                for (int i = 0; seq >= _cipherSeq; i += 1) {
+                    if (_halted) {
+                        _output.flush();
+                        throw error("pipeline stopped: %s", _failure);
+                    }
+                    _wait.idle(i);
+                }
+                _writerWait += System.nanoTime() - start;
+                _writerBacklog += _cipherSeq - seq;
+                _taken += 1;
+                Slot slot = _ring[(int) seq & _mask];
+                if (slot.kind == Slot.MESSAGE) {
+                    _output.write(slot.grouped, 0, slot.groupedLength);
+                    _output.write(newline);
+                    _written += 1;
+                } else if (slot.kind == Slot.END) {
+                    _output.flush();
+                    return;
+                } else if (slot.kind == Slot.ERROR) {
+                    _output.flush();
+                    throw slot.error;
+                }
+                _writeSeq = seq + 1;
+            }
+        } catch (IOException excp) {
+            throw error("could not write output: %s", excp.getMessage());
+        }
+    }
+
+    /** Record EXCP as the result of slot SEQ. */
+    private void fail(long seq, RuntimeException excp) {
+        Slot slot = _ring[(int) seq & _mask];
+        slot.clear();
+        slot.kind = Slot.ERROR;
+        slot.error = asEnigma(excp);
+    }
+
+    /** Return EXCP as an EnigmaException, describing it if it is some
+     *  other, unanticipated, kind of exception. */
+    private static EnigmaException asEnigma(RuntimeException excp) {
+        if (excp instanceof EnigmaException) {
+            return (EnigmaException) excp;
+        }
+        return error("internal error in %s: %s",
+                     Thread.currentThread().getName(), excp);
+    }
+
+    /** One line of input and its conversion. */
+    private static class Slot {
+        /** Kinds of slot. */
+        static final int END = 0, SETTING = 1, MESSAGE = 2, ERROR = 3;
+
+        /** Initial capacity of a slot, in characters. */
+        static final int INITIAL_SIZE = 256;
+
+        /** Reset me to hold nothing. */
+        void clear() {
+            kind = END;
+            setting = null;
+            error = null;
+            length = groupedLength = 0;
+        }
+
+        /** Set my text to the non-blank characters of
+         *  LINE[START .. END-1]. */
+        void fill(char[] line, int start, int end) {
+            if (text.length < end - start) {
+                text = new char[end - start];
+                grouped = new char[text.length + text.length / Main.GROUP];
+            }
+            length = Main.stripBlanks(line, start, end, text);
+        }
+
+        /** Set my grouped text from my text. */
+        void group() {
+            groupedLength = Main.formatMessage(text, length, grouped);
+        }
+
+        /** What this slot holds. */
+        int kind;
+        /** Line number and text of a setting line. */
+        int line;
+        /** Text of a setting line. */
+        String setting;
+        /** The message, without blanks, and its length. */
+        char[] text = new char[INITIAL_SIZE];
+        /** Number of characters in text. */
+        int length;
+        /** The converted message in groups, and its length. */
+        char[] grouped = new char[INITIAL_SIZE + INITIAL_SIZE / Main.GROUP];
+        /** Number of characters in grouped. */
+        int groupedLength;
+        /** The error this slot reports. */
+        EnigmaException error;
+    }
+
+    /** Source of lines. */
+    private final Lexer _input;
+    /** The machine to which lines are applied. */
+    private final Machine _machine;
+    /** Supplies a Converter for _machine after each setting line. */
+    private final Function<Machine, Converter> _converters;
+    /** Destination of converted messages. */
+    private final Writer _output;
+    /** How stages wait for each other. */
+    private final WaitStrategy _wait;
+
+    /** The ring of slots, and a mask selecting a slot from a sequence
+     *  number. */
+    private final Slot[] _ring;
+    /** Mask selecting a slot from a sequence number. */
+    private final int _mask;
+
+    /** Number of slots filled by the reader, converted by the cipher and
+     *  written by the writer. */
+    private volatile long _readSeq, _cipherSeq, _writeSeq;
+    /** Set when the writer finishes, to stop the other stages, or when
+     *  one of those dies, to stop the writer. */
+    private volatile boolean _halted;
+    /** Describes the death of the reader or cipher stage, if any. */
+    private volatile String _failure;
+
+    /** Nanoseconds each stage spent waiting (each written only by its
+     *  stage, and read after it finishes). */
+    private volatile long _readerWait, _cipherWait, _writerWait;
+    /** Sums over slots of the number of slots queued for the cipher and
+     *  for the writer when each slot was taken. */
+    private volatile long _cipherBacklog, _writerBacklog;
+    /** Number of slots taken by the cipher and by the writer. */
+    private volatile long _ciphered, _taken;
+    /** Start time and total running time of the pipeline. */
+    private long _startTime, _totalTime;
+    /** Number of message lines written. */
+    private long _written;
+}
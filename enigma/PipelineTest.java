@@ -0,0 +1,117 @@
+package enigma;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Pipeline class.
+ *  @author Oumar Balde
+ */
+public class PipelineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the output of a pipeline with SLOTS slots waiting with WAIT
+     *  on INPUT. */
+    private String run(String input, int slots,
+                       Pipeline.WaitStrategy wait) {
+        StringWriter output = new StringWriter();
+        new Pipeline(new Lexer(new StringReader(input)), navalMachine(),
+                     MachineCompiler::interpreted, output, wait, slots).run();
+        return output.toString().replace(System.lineSeparator(), "\n");
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testOrderAcrossWraparound() {
+        StringBuilder input = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        Machine mach = navalMachine();
+        for (int i = 0; i < 100; i += 1) {
+            String setting = String.format("* B Beta I II III A%cAA (AQ)",
+                                           (char) ('A' + i % 26));
+            input.append(setting).append('\n');
+            Main.setUp(mach, setting);
+            for (int j = 0; j < 3; j += 1) {
+                String msg = "HELLO WORLD" + i + j;
+                input.append(msg).append('\n');
+                expected.append(Main.formatMessage(mach.convert(
+                    msg.replace(" ", "")))).append('\n');
+            }
+        }
+        for (Pipeline.WaitStrategy wait : Pipeline.WaitStrategy.values()) {
+            assertEquals(wait.toString(), expected.toString(),
+                         run(input.toString(), 4, wait));
+        }
+    }
+
+    @Test
+    public void testErrorAfterOutput() {
+        StringWriter output = new StringWriter();
+        Pipeline pipe =
+            new Pipeline(new Lexer(new StringReader(
+                "* B Beta I II III AAAA\nHELLO WORLD\n* B Beta I II\nX\n")),
+                navalMachine(), MachineCompiler::interpreted, output,
+                Pipeline.WaitStrategy.YIELD, 2);
+        try {
+            pipe.run();
+            fail("missing error");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().startsWith("line 3,"));
+        }
+        assertEquals("ILBDA AMTAZ", output.toString().trim());
+    }
+
+    @Test
+    public void testUnexpectedExceptionReported() {
+        StringWriter output = new StringWriter();
+        int[] calls = new int[1];
+        Pipeline pipe =
+            new Pipeline(new Lexer(new StringReader(
+                "* B Beta I II III AAAA\nHELLO WORLD\n* B Beta I II III "
+                + "AAAA\nX\n")),
+                navalMachine(), (M) -> {
+                    calls[0] += 1;
+                    if (calls[0] == 1) {
+                        return MachineCompiler.interpreted(M);
+                    }
+                    throw new IllegalStateException("no converter");
+                }, output, Pipeline.WaitStrategy.YIELD, 2);
+        try {
+            pipe.run();
+            fail("missing error");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("no converter"));
+        }
+        assertEquals("ILBDA AMTAZ", output.toString().trim());
+    }
+
+    @Test
+    public void testDeadStageStopsWriter() {
+        StringWriter output = new StringWriter();
+        Pipeline pipe =
+            new Pipeline(new Lexer(new StringReader(
+                "* B Beta I II III AAAA\nHELLO WORLD\n")),
+                navalMachine(), (M) -> {
+                    throw new AssertionError("dead");
+                }, output, Pipeline.WaitStrategy.PARK, 2);
+        try {
+            pipe.run();
+            fail("missing error");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("dead"));
+        }
+    }
+
+}
@@ -0,0 +1,291 @@
+package enigma;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/** A bounded cache of converted messages.  The conversion of a message is
+ *  a function of the configuration, the setting line (or lines, for a
+ *  cascade), the number of letters converted since that setting, which
+ *  fixes the rotors' state, and the message itself.  Each entry is filed
+ *  under the 128-bit MurmurHash3 (x64 variant) of all of these, and holds
+ *  the output as a String (Latin-1 text is stored one byte per character).
+ *  With 128-bit keys, the chance that two different inputs share a key is
+ *  negligible, so entries do not keep the inputs themselves.
+ *
+ *  Entries are kept in SEGMENTS access-ordered maps, chosen by key and each
+ *  locked separately, and the least recently used entries of a segment are
+ *  evicted once its share of the size bound is exceeded.  The size of an
+ *  entry is estimated as its length plus ENTRY_OVERHEAD bytes.
+ *  @author Oumar Balde
+ */
+class ResultCache {
+
+    /** Number of independently locked segments. */
+    static final int SEGMENTS = 16;
+
+    /** Estimated bytes per entry besides the characters of its output. */
+    static final int ENTRY_OVERHEAD = 96;
+
+    /** A cache holding at most about MAXBYTES bytes of entries. */
+    ResultCache(long maxBytes) {
+        _segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i += 1) {
+            _segments[i] = new Segment(maxBytes / SEGMENTS);
+        }
+        _maxBytes = maxBytes;
+    }
+
+    /** A 128-bit hash of a conversion. */
+    static final class Key {
+
+        /** The key whose high and low halves are HI and LO. */
+        Key(long hi, long lo) {
+            _hi = hi;
+            _lo = lo;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) obj;
+            return _hi == key._hi && _lo == key._lo;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) _lo;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%016x%016x", _hi, _lo);
+        }
+
+        /** High and low halves. */
+        private final long _hi, _lo;
+    }
+
+    /** Return the key of the conversion of the characters MSG[START ..
+     *  END-1] after POSITION letters have been converted since the
+     *  setting described, together with its configuration, by CONTEXT. */
+    static Key key(String context, long position, char[] msg,
+                   int start, int end) {
+        Murmur hash = new Murmur();
+        for (int i = 0; i < context.length(); i += 1) {
+            hash.add(context.charAt(i));
+        }
+        for (int shift = 0; shift < Long.SIZE; shift += Character.SIZE) {
+            hash.add((char) (position >>> shift));
+        }
+        for (int i = start; i < end; i += 1) {
+            hash.add(msg[i]);
+        }
+        return hash.finish();
+    }
+
+    /** Return a string identifying the configuration of M: its alphabet,
+     *  slots, pawls and stepping model, and all the rotors it can use. */
+    static String configId(Machine M) {
+        StringBuilder config = new StringBuilder(M.alphabet().chars());
+        config.append(' ').append(M.numRotors()).append(' ')
+            .append(M.numPawls()).append(' ').append(M.steppingModel());
+        for (Rotor rotor : M.availableRotors()) {
+            config.append('\n').append(rotor.name()).append(' ')
+                .append(rotor.getClass().getSimpleName()).append(' ')
+                .append(rotor.notches()).append(' ')
+                .append(rotor.permutation().cycles());
+        }
+        char[] chars = config.toString().toCharArray();
+        return key("", 0, chars, 0, chars.length).toString();
+    }
+
+    /** Return the output cached under KEY, or null if there is none. */
+    String get(Key key) {
+        Segment segment = segment(key);
+        String result;
+        synchronized (segment) {
+            result = segment.get(key);
+        }
+        if (result == null) {
+            _misses.increment();
+        } else {
+            _hits.increment();
+        }
+        return result;
+    }
+
+    /** Cache OUTPUT under KEY, evicting the least recently used entries
+     *  as needed. */
+    void put(Key key, String output) {
+        Segment segment = segment(key);
+        long size = size(output);
+        if (size > segment._budget) {
+            return;
+        }
+        synchronized (segment) {
+            String old = segment.put(key, output);
+            segment._bytes += size - (old == null ? 0 : size(old));
+            Iterator<String> eldest = segment.values().iterator();
+            while (segment._bytes > segment._budget) {
+                segment._bytes -= size(eldest.next());
+                eldest.remove();
+                _evictions.increment();
+            }
+        }
+    }
+
+    /** Return the number of lookups that found an entry. */
+    long hits() {
+        return _hits.sum();
+    }
+
+    /** Return the number of lookups that found none. */
+    long misses() {
+        return _misses.sum();
+    }
+
+    /** Return the number of entries evicted. */
+    long evictions() {
+        return _evictions.sum();
+    }
+
+    /** Return the fraction of lookups that found an entry. */
+    double hitRate() {
+        long hits = hits();
+        return (double) hits / Math.max(1, hits + misses());
+    }
+
+    /** Return the estimated size of my entries, in bytes. */
+    long bytes() {
+        long result = 0;
+        for (Segment segment : _segments) {
+            synchronized (segment) {
+                result += segment._bytes;
+            }
+        }
+        return result;
+    }
+
+    /** Return a summary of my use. */
+    String stats() {
+        return String.format("result cache: %d hits, %d misses, %.1f%% hits, "
+                             + "%d evictions, %d of %d bytes", hits(),
+                             misses(), 100 * hitRate(), evictions(), bytes(),
+                             _maxBytes);
+    }
+
+    /** Return the estimated size of an entry holding OUTPUT. */
+    private static long size(String output) {
+        return output.length() + ENTRY_OVERHEAD;
+    }
+
+    /** Return the segment holding KEY. */
+    private Segment segment(Key key) {
+        return _segments[(int) ((key._hi >>> 1) % SEGMENTS)];
+    }
+
+    /** The entries of one segment, least recently used first. */
+    private static class Segment extends LinkedHashMap<Key, String> {
+
+        /** An empty segment holding up to BUDGET bytes. */
+        Segment(long budget) {
+            super(16, 0.75f, true);
+            _budget = budget;
+        }
+
+        /** Largest total size of my entries. */
+        private final long _budget;
+        /** Total size of my entries. */
+        private long _bytes;
+    }
+
+    /** Computes MurmurHash3 (x64, 128 bits, seed 0) of a sequence of
+     *  characters, each taken as two bytes, low byte first. */
+    private static class Murmur {
+
+        /** Add C to the characters hashed. */
+        void add(char c) {
+            if (_count < 4) {
+                _k1 |= (long) c << (Character.SIZE * _count);
+            } else {
+                _k2 |= (long) c << (Character.SIZE * (_count - 4));
+            }
+            _count += 1;
+            _length += 2;
+            if (_count == 8) {
+                _h1 ^= mix1(_k1);
+                _h1 = Long.rotateLeft(_h1, 27) + _h2;
+                _h1 = _h1 * 5 + 0x52dce729;
+                _h2 ^= mix2(_k2);
+                _h2 = Long.rotateLeft(_h2, 31) + _h1;
+                _h2 = _h2 * 5 + 0x38495ab5;
+                _k1 = _k2 = 0;
+                _count = 0;
+            }
+        }
+
+        /** Return the hash of the characters added. */
+        Key finish() {
+            if (_count > 4) {
+                _h2 ^= mix2(_k2);
+            }
+            if (_count > 0) {
+                _h1 ^= mix1(_k1);
+            }
+            _h1 ^= _length;
+            _h2 ^= _length;
+            _h1 += _h2;
+            _h2 += _h1;
+            _h1 = fmix(_h1);
+            _h2 = fmix(_h2);
+            _h1 += _h2;
+            _h2 += _h1;
+            return new Key(_h1, _h2);
+        }
+
+        /** Return the mix of the first half K of a block. */
+        private static long mix1(long k) {
+            return Long.rotateLeft(k * C1, 31) * C2;
+        }
+
+        /** Return the mix of the second half K of a block. */
+        private static long mix2(long k) {
+            return Long.rotateLeft(k * C2, 33) * C1;
+        }
+
+        /** Return the finalization of half-hash H. */
+        private static long fmix(long h) {
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            return h;
+        }
+
+        /** Multipliers. */
+        private static final long C1 = 0x87c37b91114253d5L,
+            C2 = 0x4cf5ad432745937fL;
+
+        /** The two halves of the hash. */
+        private long _h1, _h2;
+        /** The two halves of the block being filled. */
+        private long _k1, _k2;
+        /** Number of characters in the block being filled. */
+        private int _count;
+        /** Number of bytes hashed. */
+        private long _length;
+    }
+
+    /** The segments. */
+    private final Segment[] _segments;
+    /** The size bound, in bytes. */
+    private final long _maxBytes;
+    /** Counts of lookups that found an entry and that did not, and of
+     *  evictions. */
+    private final LongAdder _hits = new LongAdder(),
+        _misses = new LongAdder(), _evictions = new LongAdder();
+}
@@ -0,0 +1,143 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Scanner;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ResultCache class.
+ *  @author Oumar Balde
+ */
+public class ResultCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the key of MSG at POSITION under CONTEXT. */
+    private static ResultCache.Key key(String context, long position,
+                                       String msg) {
+        char[] chars = msg.toCharArray();
+        return ResultCache.key(context, position, chars, 0, chars.length);
+    }
+
+    /** Return the output of Main on INPUT, using CACHE if not null. */
+    private static String run(String input, ResultCache cache) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Main main = new Main(new Scanner(navalConfig()),
+                             new Lexer(new StringReader(input)),
+                             new PrintStream(output));
+        if (cache != null) {
+            main.useCache(cache);
+        }
+        main.process();
+        return output.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testKeys() {
+        assertEquals(key("ctx", 5, "HELLO"), key("ctx", 5, "HELLO"));
+        assertEquals(key("ctx", 5, "HELLO").toString(),
+                     key("ctx", 5, "HELLO").toString());
+        assertFalse(key("ctx", 5, "HELLO").equals(key("ctx", 6, "HELLO")));
+        assertFalse(key("ctx", 5, "HELLO").equals(key("ctY", 5, "HELLO")));
+        assertFalse(key("ctx", 5, "HELLO").equals(key("ctx", 5, "HELLP")));
+        assertFalse(key("ctx", 5, "HELLO").equals(key("ctxH", 5, "ELLO")));
+        assertEquals(32, key("", 0, "").toString().length());
+        Machine mach = navalMachine();
+        assertEquals(ResultCache.configId(mach),
+                     ResultCache.configId(navalMachine()));
+        mach.setSteppingModel(SteppingModel.ODOMETER);
+        assertFalse(ResultCache.configId(mach).equals(
+                        ResultCache.configId(navalMachine())));
+    }
+
+    @Test
+    public void testEviction() {
+        int entry = 10 + ResultCache.ENTRY_OVERHEAD;
+        ResultCache cache = new ResultCache(
+            (long) ResultCache.SEGMENTS * 3 * entry);
+        ArrayList<ResultCache.Key> keys = new ArrayList<>();
+        for (int i = 0; i < 200; i += 1) {
+            ResultCache.Key key = key("c", i, "MSG");
+            keys.add(key);
+            cache.put(key, String.format("%010d", i));
+            assertEquals(String.format("%010d", i), cache.get(key));
+            assertEquals(String.format("%010d", 0),
+                         cache.get(keys.get(0)));
+        }
+        assertTrue(cache.evictions() > 0);
+        assertTrue(cache.bytes() <= (long) ResultCache.SEGMENTS * 3 * entry);
+        assertEquals(400, cache.hits());
+        int kept = 0;
+        for (ResultCache.Key key : keys) {
+            if (cache.get(key) != null) {
+                kept += 1;
+            }
+        }
+        assertTrue(kept <= ResultCache.SEGMENTS * 3);
+        assertTrue(kept > ResultCache.SEGMENTS);
+        cache.put(key("c", 0, "HUGE"),
+                  "X".repeat(ResultCache.SEGMENTS * 3 * entry));
+        assertNull(cache.get(key("c", 0, "HUGE")));
+    }
+
+    @Test
+    public void testConcurrentUse() throws Exception {
+        ResultCache cache = new ResultCache(1 << 14);
+        AtomicInteger wrong = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t += 1) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 20000; i += 1) {
+                    ResultCache.Key key = key("c", i % 500, "M");
+                    String output = cache.get(key);
+                    if (output == null) {
+                        cache.put(key, Integer.toString(i % 500));
+                    } else if (!output.equals(Integer.toString(i % 500))) {
+                        wrong.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, wrong.get());
+        assertEquals(80000, cache.hits() + cache.misses());
+        assertTrue(cache.bytes() <= 1 << 14);
+    }
+
+    @Test
+    public void testMainSkipsRepeats() {
+        String message = "HELLO WORLD\nSTATUS NORMAL ALL QUIET\n";
+        String input = "* B Beta I II III AAAA (TD)\n" + message + message
+            + "* B Beta I II III AAAA (TD)\n" + message + message
+            + "* C Gamma IV II I ZAQE\n" + message
+            + "* B Beta I II III AAAA (TD)\n" + message;
+        String expected = run(input, null);
+        ResultCache cache = new ResultCache(1 << 16);
+        assertEquals(expected, run(input, cache));
+        assertEquals(6, cache.hits());
+        assertEquals(6, cache.misses());
+        assertEquals(expected, run(input, cache));
+        assertEquals(18, cache.hits());
+        assertEquals(cache.hits(), 0.75 * (cache.hits() + cache.misses()),
+                     1e-9);
+    }
+
+}
@@ -0,0 +1,339 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Scanner;
+
+import static enigma.EnigmaException.*;
+
+/** Hands out ranges of a key space to search workers connecting over a
+ *  loopback socket, and collects their best candidates.  The protocol is
+ *  line-based.  A worker starts by sending READY.  The coordinator answers
+ *  "RANGE START END", giving it keys START .. END-1, or STOP.  The worker
+ *  searches its range a chunk at a time, sending "CAND SCORE INDEX" for
+ *  each key that enters its own top list, followed by "AT POS" once it has
+ *  searched everything before POS.  The coordinator answers "LIMIT END"
+ *  to go on with the current range, or with a new RANGE or STOP once the
+ *  current range is finished.
+ *
+ *  When no unassigned ranges are left, an idle worker steals the upper
+ *  half of what remains of the busiest worker's range, by lowering that
+ *  worker's LIMIT the next time it reports.  The range of a worker whose
+ *  connection fails is returned to the pool from its last reported
+ *  position.  Unsearched ranges and the best candidates so far may be
+ *  saved to a checkpoint file, from which a later search resumes.
+ *  @author Oumar Balde
+ */
+class SearchCoordinator {
+
+    /** A coordinator for job JOB (any one-line description that must be
+     *  the same for a checkpoint to be used), covering keys 0 .. SIZE-1
+     *  for workers that search CHUNK keys between reports, and keeping the
+     *  TOP best candidates.  The search is initially split into about
+     *  SPLITS ranges.  If CHECKPOINT is non-null, the search resumes from
+     *  it if it exists and was written for the same job, and it is
+     *  updated as the search progresses. */
+    SearchCoordinator(String job, long size, int chunk, int top,
+                      int splits, File checkpoint) {
+        _job = job;
+        _size = size;
+        _chunk = chunk;
+        _best = new TopCandidates(top);
+        _checkpoint = checkpoint;
+        if (checkpoint == null || !resume()) {
+            long step = Math.max(chunk, (size + splits - 1) / splits);
+            for (long start = 0; start < size; start += step) {
+                _pool.add(new long[] {
+                    start, Math.min(size, start + step)
+                });
+            }
+            _remaining = size;
+        }
+        try {
+            _server = new ServerSocket(0, 0,
+                                       InetAddress.getLoopbackAddress());
+        } catch (IOException excp) {
+            throw error("could not listen: %s", excp.getMessage());
+        }
+        Thread acceptor = new Thread(this::accept, "search-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /** Return the loopback port on which I accept workers. */
+    int port() {
+        return _server.getLocalPort();
+    }
+
+    /** Wait up to MILLIS milliseconds for the search to finish, returning
+     *  true iff it has. */
+    synchronized boolean await(long millis) {
+        long deadline = System.currentTimeMillis() + millis;
+        try {
+            while (_remaining > 0) {
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    return false;
+                }
+                wait(wait);
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    /** Return the number of keys not yet searched. */
+    synchronized long remaining() {
+        return _remaining;
+    }
+
+    /** Return the best candidates found so far. */
+    synchronized TopCandidates best() {
+        TopCandidates result = new TopCandidates(_best.size() + 1);
+        for (int k = 0; k < _best.size(); k += 1) {
+            result.offer(_best.score(k), _best.index(k));
+        }
+        return result;
+    }
+
+    /** Stop accepting workers, saving a final checkpoint. */
+    void close() {
+        synchronized (this) {
+            saveCheckpoint();
+            _closed = true;
+            notifyAll();
+        }
+        try {
+            _server.close();
+        } catch (IOException excp) {
+            /* Ignore. */
+        }
+    }
+
+    /** Accept workers until my server socket is closed. */
+    private void accept() {
+        while (true) {
+            try {
+                Socket socket = _server.accept();
+                Thread thread = new Thread(() -> serve(new Assignment(),
+                                                       socket),
+                                           "search-handler");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException excp) {
+                return;
+            }
+        }
+    }
+
+    /** Converse with the worker on SOCKET, recording its range in
+     *  WORK. */
+    private void serve(Assignment work, Socket socket) {
+        try (socket) {
+            BufferedReader in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream()));
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+            for (String line = in.readLine(); line != null;
+                 line = in.readLine()) {
+                Scanner words = new Scanner(line);
+                String command = words.next();
+                if (command.equals("CAND")) {
+                    long score = words.nextLong();
+                    long index = words.nextLong();
+                    synchronized (this) {
+                        _best.offer(score, index);
+                    }
+                } else if (command.equals("READY")) {
+                    out.println(next(work));
+                } else if (command.equals("AT")) {
+                    out.println(advance(work, words.nextLong()));
+                }
+            }
+        } catch (IOException | RuntimeException excp) {
+            /* Treated as the worker's death. */
+        } finally {
+            release(work);
+        }
+    }
+
+    /** Record that the worker holding WORK has searched up to POS,
+     *  returning its next instruction. */
+    private synchronized String advance(Assignment work, long pos) {
+        if (pos > work.pos && pos <= work.limit) {
+            _remaining -= pos - work.pos;
+            work.pos = pos;
+        }
+        if (_remaining == 0) {
+            notifyAll();
+        }
+        long now = System.currentTimeMillis();
+        if (now - _lastSaved >= CHECKPOINT_MILLIS) {
+            saveCheckpoint();
+            _lastSaved = now;
+        }
+        if (work.pos < work.limit) {
+            return "LIMIT " + work.limit;
+        }
+        return next(work);
+    }
+
+    /** Return an instruction giving a new range to the idle worker
+     *  holding WORK, waiting for one if need be. */
+    private synchronized String next(Assignment work) {
+        _active.remove(work);
+        work.pos = work.limit = 0;
+        try {
+            while (_remaining > 0 && !_closed) {
+                if (!_pool.isEmpty()) {
+                    long[] range = _pool.remove();
+                    return assign(work, range[0], range[1]);
+                }
+                Assignment victim = null;
+                for (Assignment other : _active) {
+                    if (victim == null || other.left() > victim.left()) {
+                        victim = other;
+                    }
+                }
+                if (victim != null && victim.left() >= 2 * _chunk) {
+                    long end = victim.limit;
+                    victim.limit = victim.pos + _chunk
+                        + (victim.left() - _chunk) / 2;
+                    return assign(work, victim.limit, end);
+                }
+                wait();
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+        return "STOP";
+    }
+
+    /** Give keys START .. END-1 to WORK, returning the instruction that
+     *  does so. */
+    private String assign(Assignment work, long start, long end) {
+        work.pos = start;
+        work.limit = end;
+        _active.add(work);
+        return "RANGE " + start + " " + end;
+    }
+
+    /** Return the unsearched part of WORK's range to the pool. */
+    private synchronized void release(Assignment work) {
+        _active.remove(work);
+        if (work.pos < work.limit) {
+            _pool.add(new long[] { work.pos, work.limit });
+            work.pos = work.limit;
+        }
+        notifyAll();
+    }
+
+    /** Write the unsearched ranges and best candidates to _checkpoint, if
+     *  it is non-null. */
+    private void saveCheckpoint() {
+        if (_checkpoint == null) {
+            return;
+        }
+        File temp = new File(_checkpoint.getPath() + ".tmp");
+        try (PrintWriter out = new PrintWriter(temp)) {
+            out.println(_job);
+            out.println(_size);
+            for (long[] range : _pool) {
+                out.printf("range %d %d%n", range[0], range[1]);
+            }
+            for (Assignment work : _active) {
+                if (work.pos < work.limit) {
+                    out.printf("range %d %d%n", work.pos, work.limit);
+                }
+            }
+            for (int k = 0; k < _best.size(); k += 1) {
+                out.printf("cand %d %d%n", _best.score(k), _best.index(k));
+            }
+        } catch (FileNotFoundException excp) {
+            throw error("could not write %s", temp);
+        }
+        try {
+            Files.move(temp.toPath(), _checkpoint.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("could not write %s", _checkpoint);
+        }
+    }
+
+    /** Restore my state from _checkpoint, returning false if it does not
+     *  exist or was written for another job. */
+    private boolean resume() {
+        if (!_checkpoint.exists()) {
+            return false;
+        }
+        try (Scanner in = new Scanner(_checkpoint)) {
+            if (!in.nextLine().equals(_job)
+                || Long.parseLong(in.nextLine()) != _size) {
+                return false;
+            }
+            while (in.hasNext()) {
+                String kind = in.next();
+                long a = in.nextLong(), b = in.nextLong();
+                if (kind.equals("range")) {
+                    _pool.add(new long[] { a, b });
+                    _remaining += b - a;
+                } else {
+                    _best.offer(a, b);
+                }
+            }
+            return true;
+        } catch (IOException | RuntimeException excp) {
+            throw error("bad checkpoint file %s", _checkpoint);
+        }
+    }
+
+    /** The range held by one worker. */
+    private static class Assignment {
+        /** Return the number of keys left in this range. */
+        long left() {
+            return limit - pos;
+        }
+
+        /** The next key to be searched, and the end of the range. */
+        long pos, limit;
+    }
+
+    /** Minimum time between checkpoints, in milliseconds. */
+    static final long CHECKPOINT_MILLIS = 1000;
+
+    /** Description of the job. */
+    private final String _job;
+    /** Number of keys in the search. */
+    private final long _size;
+    /** Number of keys workers search between reports. */
+    private final int _chunk;
+    /** Best candidates reported. */
+    private final TopCandidates _best;
+    /** Checkpoint file, or null. */
+    private final File _checkpoint;
+    /** Socket on which workers connect. */
+    private final ServerSocket _server;
+    /** Unassigned ranges, as {START, END} pairs. */
+    private final ArrayDeque<long[]> _pool = new ArrayDeque<>();
+    /** Ranges held by connected workers. */
+    private final ArrayList<Assignment> _active = new ArrayList<>();
+    /** Number of keys not yet searched. */
+    private long _remaining;
+    /** Time of the last checkpoint. */
+    private long _lastSaved;
+    /** True once I have been closed. */
+    private boolean _closed;
+}
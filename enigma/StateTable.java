@@ -0,0 +1,192 @@
+package enigma;
+
+import java.lang.ref.SoftReference;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** A Converter that looks up each conversion in a table covering every
+ *  state of a machine's moving rotors: one row per state, giving the
+ *  substitution the machine performs in that state, and the state that
+ *  follows it.  Converting a character is then two array accesses, at the
+ *  cost of tables whose size grows as the alphabet size to the power of
+ *  the number of moving rotors, plus one.  Tables depend only on the
+ *  rotors, ring settings, settings of the non-moving rotors and plugboard,
+ *  and are cached (softly) for reuse by machines that share those.
+ *  @author Oumar Balde
+ */
+class StateTable extends Converter {
+
+    /** Largest number of table entries built. */
+    static final long MAX_ENTRIES = 1 << 26;
+
+    /** Return the number of bytes of tables needed for M, or -1 if M's
+     *  moving rotors are not all to the right of its other rotors, or the
+     *  tables would have more than MAX_ENTRIES entries. */
+    static long memory(Machine M) {
+        int first = firstMoving(M);
+        if (first == -1) {
+            return -1;
+        }
+        long n = M.alphabet().size();
+        long entries = n + 1;
+        for (int k = first; k < M.numRotors(); k += 1) {
+            entries *= n;
+            if (entries > MAX_ENTRIES) {
+                return -1;
+            }
+        }
+        return entries * Integer.BYTES;
+    }
+
+    /** Return true iff tables for M have already been built and are still
+     *  cached. */
+    static boolean isBuilt(Machine M) {
+        SoftReference<Tables> ref = CACHE.get(key(M));
+        return ref != null && ref.get() != null;
+    }
+
+    /** A Converter that starts in the current state of M and thereafter
+     *  behaves as M would, leaving M unchanged.  memory(M) must not be
+     *  -1. */
+    StateTable(Machine M) {
+        _n = M.alphabet().size();
+        _first = firstMoving(M);
+        _settings = new int[M.numRotors()];
+        for (int k = 0; k < _settings.length; k += 1) {
+            _settings[k] = M.setting(k);
+        }
+        String key = key(M);
+        SoftReference<Tables> ref = CACHE.get(key);
+        Tables tables = ref == null ? null : ref.get();
+        if (tables == null) {
+            tables = build(M);
+            CACHE.put(key, new SoftReference<>(tables));
+        }
+        _table = tables.table;
+        _next = tables.next;
+        _state = encode(_settings);
+    }
+
+    @Override
+    int convert(int c) {
+        _state = _next[_state];
+        return _table[_state * _n + c];
+    }
+
+    @Override
+    void skip(long n) {
+        for (long i = 0; i < n; i += 1) {
+            _state = _next[_state];
+        }
+    }
+
+    @Override
+    int setting(int k) {
+        if (k < _first) {
+            return _settings[k];
+        }
+        int state = _state;
+        for (int i = _settings.length - 1; i > k; i -= 1) {
+            state /= _n;
+        }
+        return state % _n;
+    }
+
+    /** Return the state number of a machine whose rotors have SETTINGS,
+     *  by slot. */
+    private int encode(int[] settings) {
+        int state = 0;
+        for (int k = _first; k < settings.length; k += 1) {
+            state = state * _n + settings[k];
+        }
+        return state;
+    }
+
+    /** Return the tables for M. */
+    private Tables build(Machine M) {
+        Machine machine = M.copy();
+        int states = 1;
+        for (int k = _first; k < _settings.length; k += 1) {
+            states *= _n;
+        }
+        Tables result = new Tables();
+        result.table = new int[states * _n];
+        result.next = new int[states];
+        int[] settings = _settings.clone();
+        for (int s = 0; s < states; s += 1) {
+            int state = s;
+            for (int k = settings.length - 1; k >= _first; k -= 1) {
+                machine.setRotor(k, state % _n);
+                state /= _n;
+            }
+            for (int c = 0; c < _n; c += 1) {
+                result.table[s * _n + c] = machine.map(c);
+            }
+            machine.advance();
+            for (int k = _first; k < settings.length; k += 1) {
+                settings[k] = machine.setting(k);
+            }
+            result.next[s] = encode(settings);
+        }
+        return result;
+    }
+
+    /** Return the first slot of the contiguous run of moving rotors that
+     *  ends M's slots, or -1 if some rotor to its left also moves. */
+    private static int firstMoving(Machine M) {
+        int first = M.numRotors();
+        while (first > 0 && M.getRotor(first - 1).rotates()) {
+            first -= 1;
+        }
+        for (int k = 0; k < first; k += 1) {
+            if (M.getRotor(k).rotates()) {
+                return -1;
+            }
+        }
+        return first;
+    }
+
+    /** Return a key identifying the tables for M.  Rotors are identified
+     *  by their wiring and notches as well as their names, since a
+     *  configuration may reuse a name for a differently wired rotor. */
+    private static String key(Machine M) {
+        StringBuilder key = new StringBuilder(M.alphabet().chars());
+        int first = firstMoving(M);
+        for (int k = 0; k < M.numRotors(); k += 1) {
+            Rotor rotor = M.getRotor(k);
+            key.append(' ').append(rotor.name())
+                .append('/').append(rotor.permutation().cycles())
+                .append('/').append(rotor.notches())
+                .append('/').append(M.ring(k));
+            if (k < first) {
+                key.append('/').append(M.setting(k));
+            }
+        }
+        return key.append(' ').append(M.plugboard().cycles())
+            .append(' ').append(M.steppingModel()).toString();
+    }
+
+    /** The tables for one configuration. */
+    private static class Tables {
+        /** Entry S * N + C is the conversion of C in state S, where N is
+         *  the alphabet size. */
+        int[] table;
+        /** Entry S is the state following state S. */
+        int[] next;
+    }
+
+    /** Tables built so far, by key(). */
+    private static final ConcurrentHashMap<String, SoftReference<Tables>>
+        CACHE = new ConcurrentHashMap<>();
+
+    /** Size of the alphabet. */
+    private final int _n;
+    /** First moving slot. */
+    private final int _first;
+    /** Settings of all slots at creation; those of the slots before _first
+     *  never change. */
+    private final int[] _settings;
+    /** The tables in use. */
+    private final int[] _table, _next;
+    /** The current state. */
+    private int _state;
+}
@@ -0,0 +1,95 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** A rule deciding which rotors of a machine move at each key press,
+ *  from which slots hold moving rotors and which of those are at one of
+ *  their notches.  A Machine does not apply the rule directly: when its
+ *  rotors are inserted, it tabulates the rule's answer for every
+ *  combination of notches that can matter, so that a step costs a few
+ *  notch lookups and one table lookup whatever the model (see
+ *  Machine.advance).
+ *  @author Oumar Balde
+ */
+interface SteppingModel {
+
+    /** Set MOVES[K] to true iff slot K moves at the next key press, for a
+     *  machine whose slot K holds a moving rotor iff ROTATES[K], which is
+     *  at one of its notches iff AT_NOTCH[K].  Slot 0 holds the reflector
+     *  and the last slot the fast rotor, and MOVES is initially all
+     *  false.  Only moving rotors may move. */
+    void moves(boolean[] rotates, boolean[] atNotch, boolean[] moves);
+
+    /** The default: each moving rotor whose right neighbor is at a notch
+     *  steps together with that neighbor, scanning from the left and
+     *  passing over a neighbor once it has stepped, and the fast rotor
+     *  always steps. */
+    SteppingModel LEVER = Builtin.LEVER;
+
+    /** Each moving rotor whose right neighbor is at a notch steps together
+     *  with that neighbor, every pawl acting independently, and the fast
+     *  rotor always steps. */
+    SteppingModel PAWLS = Builtin.PAWLS;
+
+    /** Gear-driven, like an odometer: the fast rotor always steps, and a
+     *  moving rotor steps when its right neighbor steps from a notch.
+     *  There is no double stepping. */
+    SteppingModel ODOMETER = Builtin.ODOMETER;
+
+    /** Return the built-in model named NAME, ignoring case. */
+    static SteppingModel forName(String name) {
+        for (Builtin model : Builtin.values()) {
+            if (model.name().equalsIgnoreCase(name)) {
+                return model;
+            }
+        }
+        throw error("unknown stepping model %s", name);
+    }
+
+    /** The built-in models. */
+    enum Builtin implements SteppingModel {
+        LEVER {
+            @Override
+            public void moves(boolean[] rotates, boolean[] atNotch,
+                              boolean[] moves) {
+                int last = rotates.length - 1;
+                int i = 0;
+                while (i < last) {
+                    if (rotates[i] && atNotch[i + 1]) {
+                        moves[i] = moves[i + 1] = true;
+                        i += 2;
+                    } else {
+                        i += 1;
+                    }
+                }
+                moves[last] = true;
+            }
+        },
+
+        PAWLS {
+            @Override
+            public void moves(boolean[] rotates, boolean[] atNotch,
+                              boolean[] moves) {
+                int last = rotates.length - 1;
+                for (int i = 0; i < last; i += 1) {
+                    if (rotates[i] && rotates[i + 1] && atNotch[i + 1]) {
+                        moves[i] = moves[i + 1] = true;
+                    }
+                }
+                moves[last] = true;
+            }
+        },
+
+        ODOMETER {
+            @Override
+            public void moves(boolean[] rotates, boolean[] atNotch,
+                              boolean[] moves) {
+                int last = rotates.length - 1;
+                moves[last] = true;
+                for (int i = last - 1; i >= 0; i -= 1) {
+                    moves[i] = rotates[i] && moves[i + 1] && atNotch[i + 1];
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,195 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.Scanner;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for SteppingModel and the way Machine
+ *  applies it.
+ *  @author Oumar Balde
+ */
+public class SteppingModelTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the letters in the windows of M. */
+    private static String windows(Machine M) {
+        StringBuilder result = new StringBuilder();
+        for (int k = 1; k < M.numRotors(); k += 1) {
+            result.append(UPPER.toChar(M.setting(k)));
+        }
+        return result.toString();
+    }
+
+    /** Return a naval machine of SLOTS slots with PAWLS pawls, using
+     *  MODEL, set up by SETTING. */
+    private static Machine naval(int slots, int pawls, SteppingModel model,
+                                 String setting) {
+        Machine result = new Machine(UPPER, slots, pawls, navalRotors());
+        result.setSteppingModel(model);
+        Main.setUp(result, setting);
+        return result;
+    }
+
+    /** Return the windows of M after each of STEPS steps, separated by
+     *  blanks. */
+    private static String steps(Machine M, int steps) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < steps; i += 1) {
+            M.advance();
+            result.append(i == 0 ? "" : " ").append(windows(M));
+        }
+        return result.toString();
+    }
+
+    /** Advance SETTINGS, for slots that move iff ROTATES and have the
+     *  notches NOTCHES (by slot and letter), as Machine did before it
+     *  used stepping models. */
+    private static void leverStep(int[] settings, boolean[] rotates,
+                                  boolean[][] notches) {
+        int last = settings.length - 1;
+        int i = 0;
+        while (i < last) {
+            if (rotates[i] && notches[i + 1][settings[i + 1]]) {
+                settings[i] = (settings[i] + 1) % UPPER.size();
+                settings[i + 1] = (settings[i + 1] + 1) % UPPER.size();
+                i += 2;
+            } else {
+                i += 1;
+            }
+        }
+        if (i == last) {
+            settings[last] = (settings[last] + 1) % UPPER.size();
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testLeverMatchesGreedyScan() {
+        Random random = new Random(48);
+        for (int slots : new int[] { 5, 8, Machine.MAX_NOTCH_SLOTS + 6 }) {
+            ArrayList<Rotor> rotors = new ArrayList<>();
+            String[] names = new String[slots];
+            boolean[] rotates = new boolean[slots];
+            boolean[][] notches = new boolean[slots][UPPER.size()];
+            names[0] = "R";
+            rotors.add(new Reflector("R", new Permutation(
+                                         "(AB) (CD) (EF) (GH) (IJ) (KL) (MN) "
+                                         + "(OP) (QR) (ST) (UV) (WX) (YZ)",
+                                         UPPER)));
+            names[1] = "F";
+            rotors.add(new FixedRotor("F", new Permutation("", UPPER)));
+            for (int k = 2; k < slots; k += 1) {
+                String notch = "";
+                for (int c = 0; c < UPPER.size(); c += 1) {
+                    if (random.nextInt(4) == 0) {
+                        notch += UPPER.toChar(c);
+                        notches[k][c] = true;
+                    }
+                }
+                names[k] = "M" + k;
+                rotates[k] = true;
+                rotors.add(new MovingRotor(names[k],
+                                           new Permutation("", UPPER),
+                                           notch));
+            }
+            Machine mach = new Machine(UPPER, slots, slots - 2, rotors);
+            mach.insertRotors(names);
+            mach.setPlugboard(new Permutation("", UPPER));
+            int[] settings = new int[slots];
+            for (int trial = 0; trial < 2000; trial += 1) {
+                if (trial % 100 == 0) {
+                    for (int k = 1; k < slots; k += 1) {
+                        settings[k] = random.nextInt(UPPER.size());
+                        mach.setRotor(k, settings[k]);
+                    }
+                }
+                leverStep(settings, rotates, notches);
+                mach.advance();
+                for (int k = 0; k < slots; k += 1) {
+                    assertEquals(msg("lever", "slots %d, trial %d, slot %d",
+                                     slots, trial, k),
+                                 settings[k], mach.setting(k));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testOdometer() {
+        Machine mach = naval(5, 3, SteppingModel.ODOMETER,
+                             "* B Beta I II III ADEA");
+        assertEquals("ADEB ADEC", steps(mach, 2));
+        mach.setRotors("ADEU");
+        assertEquals("ADEV AEFW AEFX", steps(mach, 3));
+        mach.setRotors("AQEV");
+        assertEquals("ARFW", steps(mach, 1));
+        Machine lever = naval(5, 3, SteppingModel.LEVER,
+                              "* B Beta I II III ADEA");
+        assertEquals("AEFB AEFC", steps(lever, 2));
+    }
+
+    @Test
+    public void testPawls() {
+        String setting = "* B Beta I II III IV ABEVA";
+        assertEquals("ACFVB",
+                     steps(naval(6, 4, SteppingModel.LEVER, setting), 1));
+        assertEquals("ACFWB",
+                     steps(naval(6, 4, SteppingModel.PAWLS, setting), 1));
+    }
+
+    @Test
+    public void testPluggedModel() {
+        SteppingModel fastOnly =
+            (rotates, atNotch, moves) -> moves[moves.length - 1] = true;
+        Machine mach = naval(5, 3, fastOnly, "* B Beta I II III AQEV");
+        assertEquals("AQEW AQEX", steps(mach, 2));
+        Machine copy = mach.copy();
+        assertEquals(steps(mach, 40), steps(copy, 40));
+        SteppingModel broken =
+            (rotates, atNotch, moves) -> moves[1] = true;
+        try {
+            naval(5, 3, broken, "* B Beta I II III AAAA");
+            fail("fixed rotor moved");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void testConfigurationAndEngines() {
+        Machine mach = Main.readConfig(new Scanner(
+            UPPER_STRING + "\n 5 3 odometer\n"
+            + "I MQ " + NAVALA.get("I") + "\nII ME " + NAVALA.get("II")
+            + "\nIII MV " + NAVALA.get("III") + "\nBeta N "
+            + NAVALA.get("Beta") + "\nB R " + NAVALA.get("B")));
+        assertSame(SteppingModel.ODOMETER, mach.steppingModel());
+        Main.setUp(mach, "* B Beta I II III AAAA (TD)");
+        String text = UPPER_STRING.repeat(30);
+        String expected = mach.copy().convert(text);
+        for (Engines.Engine engine : Engines.Engine.values()) {
+            Converter conv = Engines.use(mach.copy(), engine).converter();
+            assertEquals(engine.toString(), expected,
+                         conv.convert(UPPER, text));
+        }
+        try {
+            Main.readConfig(new Scanner(UPPER_STRING + "\n 5 3 gears\n"));
+            fail("unknown stepping model accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+}
@@ -1,5 +1,9 @@
 package enigma;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.HashMap;
 
 /** Utility definitions for use in unit tests.
@@ -126,4 +130,74 @@ class TestUtils {
         NAVALZ_MAP.put("Gamma", "EGTPLBOVFSINCUJZDXMRQAYWHK");
     }
 
+    /** Notches of the moving naval rotors, as in testing/correct. */
+    static final HashMap<String, String> NAVAL_NOTCHES = new HashMap<>();
+    static {
+        NAVAL_NOTCHES.put("I", "Q");
+        NAVAL_NOTCHES.put("II", "E");
+        NAVAL_NOTCHES.put("III", "V");
+        NAVAL_NOTCHES.put("IV", "J");
+        NAVAL_NOTCHES.put("V", "Z");
+        NAVAL_NOTCHES.put("VI", "ZM");
+        NAVAL_NOTCHES.put("VII", "ZM");
+        NAVAL_NOTCHES.put("VIII", "ZM");
+    }
+
+    /** Return a fresh, unconfigured 5-slot, 3-pawl machine holding all
+     *  the naval rotors of NAVALA. */
+    static Machine navalMachine() {
+        return new Machine(UPPER, 5, 3, navalRotors());
+    }
+
+    /** Return a fresh naval machine, as for navalMachine(), set up by
+     *  SETTING. */
+    static Machine navalMachine(String setting) {
+        Machine result = navalMachine();
+        Main.setUp(result, setting);
+        return result;
+    }
+
+    /** Return fresh copies of all the naval rotors of NAVALA. */
+    static ArrayList<Rotor> navalRotors() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (String name : NAVALA.keySet()) {
+            Permutation perm = new Permutation(NAVALA.get(name), UPPER);
+            if (NAVAL_NOTCHES.containsKey(name)) {
+                rotors.add(new MovingRotor(name, perm,
+                                           NAVAL_NOTCHES.get(name)));
+            } else if (name.equals("B") || name.equals("C")) {
+                rotors.add(new Reflector(name, perm));
+            } else {
+                rotors.add(new FixedRotor(name, perm));
+            }
+        }
+        return rotors;
+    }
+
+    /** Return the text of a configuration file describing the machine
+     *  returned by navalMachine(). */
+    static String navalConfig() {
+        StringBuilder result = new StringBuilder(UPPER_STRING + "\n5 3\n");
+        for (String name : NAVALA.keySet()) {
+            result.append(name).append(' ');
+            if (NAVAL_NOTCHES.containsKey(name)) {
+                result.append('M').append(NAVAL_NOTCHES.get(name));
+            } else if (name.equals("B") || name.equals("C")) {
+                result.append('R');
+            } else {
+                result.append('N');
+            }
+            result.append(' ').append(NAVALA.get(name)).append('\n');
+        }
+        return result.toString();
+    }
+
+    /** Return a temporary file, deleted on exit, containing TEXT. */
+    static File tempFile(String text) throws IOException {
+        File file = File.createTempFile("enigma", ".tmp");
+        file.deleteOnExit();
+        Files.write(file.toPath(), text.getBytes());
+        return file;
+    }
+
 }
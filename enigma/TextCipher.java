@@ -0,0 +1,66 @@
+package enigma;
+
+/** Converts a stream of text a piece at a time, keeping the rotor state
+ *  and the position within the current group between pieces.  Characters
+ *  of the alphabet are converted; others are passed through.  When
+ *  grouping, blanks are dropped and the remaining characters of each line
+ *  are written in groups of five, as Main does.
+ *  @author Oumar Balde
+ */
+class TextCipher {
+
+    /** A cipher converting the characters of ALPHA with CONVERTER,
+     *  grouping its output iff GROUPED. */
+    TextCipher(Converter converter, Alphabet alpha, boolean grouped) {
+        _converter = converter;
+        _alphabet = alpha;
+        _grouped = grouped;
+    }
+
+    /** Return the space needed in the output of transform() for LEN
+     *  characters of input. */
+    static int outputSize(int len) {
+        return len + len / Main.GROUP + 1;
+    }
+
+    /** Convert SRC[START .. END-1] into DST starting at DSTSTART, returning
+     *  the number of characters written, which is at most
+     *  outputSize(END - START). */
+    int transform(char[] src, int start, int end, char[] dst,
+                  int dstStart) {
+        int k = dstStart;
+        for (int i = start; i < end; i += 1) {
+            char ch = src[i];
+            if (_grouped) {
+                if (ch == ' ') {
+                    continue;
+                } else if (ch == '\n' || ch == '\r') {
+                    _column = 0;
+                } else {
+                    if (_column > 0 && _column % Main.GROUP == 0) {
+                        dst[k] = ' ';
+                        k += 1;
+                    }
+                    _column += 1;
+                }
+            }
+            int letter = _alphabet.toInt(ch);
+            dst[k] = letter == -1 ? ch
+                : _alphabet.toChar(_converter.convert(letter));
+            k += 1;
+        }
+        return k - dstStart;
+    }
+
+    /** The conversion to apply. */
+    private final Converter _converter;
+
+    /** Alphabet of characters to convert. */
+    private final Alphabet _alphabet;
+
+    /** True iff output is grouped. */
+    private final boolean _grouped;
+
+    /** Number of characters written on the current line when grouping. */
+    private int _column;
+}
@@ -0,0 +1,63 @@
+package enigma;
+
+/** The highest-scoring keys offered so far, up to a fixed number of them,
+ *  best first.  Of keys with equal scores, those with smaller indices come
+ *  first.  A key offered more than once (always with the same score) is
+ *  kept only once.
+ *  @author Oumar Balde
+ */
+class TopCandidates {
+
+    /** An empty set of at most CAPACITY > 0 candidates. */
+    TopCandidates(int capacity) {
+        _scores = new long[capacity];
+        _indices = new long[capacity];
+    }
+
+    /** Consider key INDEX with score SCORE, returning true iff it is now
+     *  one of mine (and was not before). */
+    boolean offer(long score, long index) {
+        int k = _size;
+        while (k > 0 && better(score, index, _scores[k - 1],
+                               _indices[k - 1])) {
+            k -= 1;
+        }
+        if (k == _scores.length || k > 0 && _indices[k - 1] == index) {
+            return false;
+        }
+        int last = Math.min(_size, _scores.length - 1);
+        System.arraycopy(_scores, k, _scores, k + 1, last - k);
+        System.arraycopy(_indices, k, _indices, k + 1, last - k);
+        _scores[k] = score;
+        _indices[k] = index;
+        _size = last + 1;
+        return true;
+    }
+
+    /** Return the number of candidates I hold. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the score of my K'th best candidate. */
+    long score(int k) {
+        return _scores[k];
+    }
+
+    /** Return the key index of my K'th best candidate. */
+    long index(int k) {
+        return _indices[k];
+    }
+
+    /** Return true iff a key INDEX0 scoring SCORE0 ranks ahead of a key
+     *  INDEX1 scoring SCORE1. */
+    private static boolean better(long score0, long index0,
+                                  long score1, long index1) {
+        return score0 > score1 || score0 == score1 && index0 < index1;
+    }
+
+    /** Scores and key indices of my candidates, best first. */
+    private final long[] _scores, _indices;
+    /** Number of candidates held. */
+    private int _size;
+}
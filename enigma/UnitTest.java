@@ -16,7 +16,28 @@ public class UnitTest {
         }
         System.exit(textui.runClasses(PermutationTest.class,
                 MovingRotorTest.class,
-                MachineTest.class));
+                MachineTest.class,
+                EnigmaProcessorTest.class,
+                MachineCompilerTest.class,
+                LexerTest.class,
+                PipelineTest.class,
+                AllocationTest.class,
+                EnigmaStreamTest.class,
+                IndicatorBatchTest.class,
+                KeySearchTest.class,
+                PermutationPoolTest.class,
+                CompressedStreamsTest.class,
+                EnginesTest.class,
+                DepthBatchTest.class,
+                CycleCatalogTest.class,
+                KeySheetTest.class,
+                AnalyticsTest.class,
+                KeyboardTest.class,
+                ConfigRegistryTest.class,
+                CascadeTest.class,
+                SteppingModelTest.class,
+                WarmupTest.class,
+                ResultCacheTest.class));
     }
 
 }
@@ -0,0 +1,259 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static enigma.EnigmaException.*;
+
+/** Prepares, in the background, the settings used most often according
+ *  to a key-usage log, so that the first messages under them do not pay
+ *  for building their engines' classes and tables, or run in code the
+ *  JIT compiler has not yet seen.  Each line of the log is a setting line,
+ *  optionally preceded by the number of times it was used (1 if absent);
+ *  a setting appearing on several lines is counted once per use, and blank
+ *  lines are ignored.  The most used settings are then set up, each on a
+ *  worker thread, given a Converter (whose classes and tables are cached
+ *  for later machines with the same setting), and made to convert a short
+ *  random sample.
+ *
+ *  Nothing is shared with the caller but those caches, so messages can be
+ *  converted as usual while warm-up proceeds; one processor is left free
+ *  for them.  Errors in the log, or in one of its settings, are reported
+ *  and do not stop anything else.
+ *  @author Oumar Balde
+ */
+class Warmup {
+
+    /** Default number of settings warmed. */
+    static final int KEYS = 64;
+
+    /** Number of characters converted under each setting warmed. */
+    static final int SAMPLE = 1 << 14;
+
+    /** Warm-up of the KEYS settings of LOG used most, as set up on copies
+     *  of M, converting with the Converters returned by CONVERTERS on
+     *  THREADS threads. */
+    Warmup(Machine M, File log, int keys,
+           Function<Machine, Converter> converters, int threads) {
+        _machine = M.copy();
+        _log = log;
+        _limit = keys;
+        _converters = converters;
+        _workers = Executors.newFixedThreadPool(threads, (task) -> {
+            Thread thread = new Thread(task, "enigma-warmup");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** Start warming up, writing the outcome to REPORT when it is
+     *  complete.  Returns the completion of the warm-up, which is never
+     *  exceptional. */
+    CompletableFuture<Warmup> start(PrintStream report) {
+        _started = System.nanoTime();
+        return CompletableFuture.supplyAsync(this::rank, _workers)
+            .thenCompose((keys) -> {
+                CompletableFuture<?>[] tasks =
+                    new CompletableFuture<?>[keys.size()];
+                for (int i = 0; i < tasks.length; i += 1) {
+                    Key key = keys.get(i);
+                    tasks[i] = CompletableFuture.runAsync(() -> warm(key),
+                                                          _workers);
+                }
+                return CompletableFuture.allOf(tasks);
+            }).handle((ignored, excp) -> {
+                _elapsed = System.nanoTime() - _started;
+                if (excp != null) {
+                    Throwable cause =
+                        excp.getCause() == null ? excp : excp.getCause();
+                    _error = cause.getMessage();
+                }
+                _workers.shutdown();
+                report(report);
+                return this;
+            });
+    }
+
+    /** Stop warming up, writing the progress made to REPORT unless the
+     *  outcome has already been reported.  The progress is reported
+     *  before the workers are stopped, so that the failure of the tasks
+     *  they then reject is not reported as the outcome. */
+    void stop(PrintStream report) {
+        report(report);
+        _workers.shutdownNow();
+    }
+
+    /** Write my outcome, or my progress so far, to REPORT, the first time
+     *  I am called. */
+    private synchronized void report(PrintStream report) {
+        if (!_reported) {
+            _reported = true;
+            report.println(this);
+            report.flush();
+        }
+    }
+
+    /** Return the number of distinct settings in the log, once read. */
+    int keys() {
+        return _keys;
+    }
+
+    /** Return the number of settings warmed so far. */
+    int warmed() {
+        return _warmed.get();
+    }
+
+    /** Return the number of settings that could not be warmed. */
+    int failed() {
+        return _failed.get();
+    }
+
+    /** Return the fraction of all uses in the log accounted for by the
+     *  settings warmed so far. */
+    double coverage() {
+        return _uses == 0 ? 0.0 : (double) _warmedUses.get() / _uses;
+    }
+
+    /** Return true iff warm-up is complete. */
+    boolean done() {
+        return _elapsed >= 0;
+    }
+
+    @Override
+    public String toString() {
+        long elapsed = done() ? _elapsed : System.nanoTime() - _started;
+        StringBuilder result = new StringBuilder(
+            String.format("warm-up: %d of %d keys (%.1f%% of %d uses) "
+                          + "in %.1f ms", warmed(), _keys, 100 * coverage(),
+                          _uses, elapsed / 1e6));
+        if (failed() > 0) {
+            result.append(String.format(", %d bad", failed()));
+        }
+        if (_error != null) {
+            result.append(", stopped: ").append(_error);
+        }
+        if (!done()) {
+            result.append(", unfinished");
+        }
+        return result.toString();
+    }
+
+    /** A setting and the number of times it was used. */
+    private static class Key {
+        /** The setting line. */
+        private String setting;
+        /** Its number of uses. */
+        private long uses;
+    }
+
+    /** Read the log, and return the settings to warm, most used first. */
+    private List<Key> rank() {
+        LinkedHashMap<String, Key> keys = new LinkedHashMap<>();
+        long uses = 0;
+        try (BufferedReader log = new BufferedReader(new InputStreamReader(
+                 CompressedStreams.input(new FileInputStream(_log))))) {
+            int lineNum = 0;
+            for (String line = log.readLine(); line != null;
+                 line = log.readLine()) {
+                lineNum += 1;
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                long count = 1;
+                int star = line.indexOf('*');
+                if (star > 0) {
+                    try {
+                        count = Long.parseLong(line.substring(0, star)
+                                               .trim());
+                    } catch (NumberFormatException excp) {
+                        star = -1;
+                    }
+                }
+                if (star < 0 || count <= 0) {
+                    throw error("%s: line %d: bad key-usage entry", _log,
+                                lineNum);
+                }
+                String setting =
+                    line.substring(star).replaceAll("\\s+", " ");
+                Key key = keys.get(setting);
+                if (key == null) {
+                    key = new Key();
+                    key.setting = setting;
+                    keys.put(setting, key);
+                }
+                key.uses += count;
+                uses += count;
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", _log);
+        }
+        ArrayList<Key> result = new ArrayList<>(keys.values());
+        result.sort((x, y) -> Long.compare(y.uses, x.uses));
+        _keys = result.size();
+        _uses = uses;
+        return result.subList(0, Math.min(_limit, result.size()));
+    }
+
+    /** Set up a machine for KEY, and convert a sample with it. */
+    private void warm(Key key) {
+        try {
+            Machine machine = _machine.copy();
+            Main.setUp(machine, key.setting);
+            Converter converter = _converters.apply(machine);
+            Alphabet alphabet = machine.alphabet();
+            Random random = new Random(key.setting.hashCode());
+            char[] sample = new char[SAMPLE];
+            for (int i = 0; i < sample.length; i += 1) {
+                sample[i] = alphabet.toChar(random.nextInt(alphabet.size()));
+            }
+            converter.convert(alphabet, sample, 0, sample.length);
+            _warmed.incrementAndGet();
+            _warmedUses.addAndGet(key.uses);
+        } catch (EnigmaException excp) {
+            _failed.incrementAndGet();
+        }
+    }
+
+    /** The machine copied for each setting. */
+    private final Machine _machine;
+    /** The key-usage log. */
+    private final File _log;
+    /** Largest number of settings warmed. */
+    private final int _limit;
+    /** Supplies the Converters warmed. */
+    private final Function<Machine, Converter> _converters;
+    /** Runs the warm-up. */
+    private final ExecutorService _workers;
+    /** Counts of settings warmed and failed so far. */
+    private final AtomicInteger _warmed = new AtomicInteger(),
+        _failed = new AtomicInteger();
+    /** Number of uses of the settings warmed so far. */
+    private final AtomicLong _warmedUses = new AtomicLong();
+    /** Number of distinct settings in the log. */
+    private volatile int _keys;
+    /** Total number of uses in the log. */
+    private volatile long _uses;
+    /** Time at which warm-up started, in nanoseconds. */
+    private volatile long _started;
+    /** Duration of the warm-up in nanoseconds, or -1 while it runs. */
+    private volatile long _elapsed = -1;
+    /** Why the warm-up stopped early, or null. */
+    private volatile String _error;
+    /** True once the outcome has been reported. */
+    private boolean _reported;
+}
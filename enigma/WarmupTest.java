@@ -0,0 +1,125 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Function;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Warmup class.
+ *  @author Oumar Balde
+ */
+public class WarmupTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Converters using state tables. */
+    private static final Function<Machine, Converter> STATE =
+        (M) -> Engines.use(M, Engines.Engine.STATE).converter();
+
+    /** Run a warm-up of the KEYS settings most used in a log containing
+     *  LOG, with CONVERTERS, returning it once complete, and putting its
+     *  report in REPORT. */
+    private static Warmup warm(String log, int keys,
+                               Function<Machine, Converter> converters,
+                               ByteArrayOutputStream report)
+        throws Exception {
+        Warmup warmup = new Warmup(navalMachine(), tempFile(log), keys,
+                                   converters, 2);
+        return warmup.start(new PrintStream(report)).get();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testRanksAndCovers() throws Exception {
+        String log = "3 * B Beta III IV I AXLE (HQ) (EX)\n"
+            + "*   B Beta III   IV I AXLE (HQ) (EX)\n\n"
+            + "10 * C Gamma V II I WARM (AZ)\n"
+            + "  1 * B Gamma II V III COLD\n";
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        Warmup warmup = warm(log, 2, STATE, report);
+        assertTrue(warmup.done());
+        assertEquals(3, warmup.keys());
+        assertEquals(2, warmup.warmed());
+        assertEquals(0, warmup.failed());
+        assertEquals(14.0 / 15, warmup.coverage(), 1e-9);
+        assertTrue(report.toString(),
+                   report.toString().startsWith(
+                       "warm-up: 2 of 3 keys (93.3% of 15 uses) in "));
+        assertTrue(StateTable.isBuilt(
+                       navalMachine("* C Gamma V II I WARM (AZ)")));
+        assertTrue(StateTable.isBuilt(
+                       navalMachine("* B Beta III IV I AXLE (HQ) (EX)")));
+        assertFalse(StateTable.isBuilt(
+                        navalMachine("* B Gamma II V III COLD")));
+    }
+
+    @Test
+    public void testBadSettings() throws Exception {
+        String log = "2 * B Beta I II XI AAAA\n* B Beta I II III AAAA\n";
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        Warmup warmup = warm(log, Warmup.KEYS, STATE, report);
+        assertEquals(1, warmup.warmed());
+        assertEquals(1, warmup.failed());
+        assertTrue(report.toString(),
+                   report.toString().contains("(33.3% of 3 uses)"));
+        assertTrue(report.toString(), report.toString().contains(", 1 bad"));
+    }
+
+    @Test
+    public void testBadLog() throws Exception {
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        Warmup warmup = warm("* B Beta I II III AAAA\nx * B Beta I II III\n",
+                             Warmup.KEYS, STATE, report);
+        assertTrue(warmup.done());
+        assertEquals(0, warmup.warmed());
+        assertTrue(report.toString(),
+                   report.toString().contains("line 2: bad key-usage"));
+        File missing = tempFile("");
+        missing.delete();
+        report.reset();
+        warmup = new Warmup(navalMachine(), missing, 1, STATE, 1);
+        warmup.start(new PrintStream(report)).get();
+        assertTrue(report.toString(),
+                   report.toString().contains("could not read"));
+    }
+
+    @Test
+    public void testConvertsDuringWarmup() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Function<Machine, Converter> blocked = (M) -> {
+            try {
+                release.await();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+            }
+            return MachineCompiler.interpreted(M);
+        };
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        Warmup warmup = new Warmup(navalMachine(),
+                                   tempFile("* B Beta I II III AAAA\n"),
+                                   1, blocked, 1);
+        warmup.start(new PrintStream(report));
+        String setting = "* B Beta I II III AAAA (TD)";
+        String converted = navalMachine(setting).convert("HELLOWORLD");
+        assertEquals("HELLOWORLD", navalMachine(setting).convert(converted));
+        assertFalse(warmup.done());
+        warmup.stop(new PrintStream(report));
+        release.countDown();
+        assertTrue(report.toString(),
+                   report.toString().trim().endsWith(", unfinished"));
+    }
+
+}